@@ -0,0 +1,185 @@
+package teaselib.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import teaselib.Body;
+import teaselib.Config;
+import teaselib.State;
+import teaselib.Toys;
+import teaselib.core.debug.DebugHost;
+import teaselib.core.debug.DebugPersistence;
+import teaselib.core.debug.DebugStorage;
+import teaselib.core.util.QualifiedName;
+import teaselib.test.TestScript;
+
+public class StateImplLazyRestoreTest {
+    static class CountingPersistence extends DebugPersistence {
+        final AtomicInteger reads = new AtomicInteger();
+
+        CountingPersistence(DebugStorage storage) {
+            super(storage);
+        }
+
+        @Override
+        public boolean has(QualifiedName name) {
+            reads.incrementAndGet();
+            return super.has(name);
+        }
+
+        @Override
+        public String get(QualifiedName name) {
+            reads.incrementAndGet();
+            return super.get(name);
+        }
+    }
+
+    enum Inventory {
+        Item0,
+        Item1,
+        Item2,
+        Item3,
+        Item4,
+        Item5,
+        Item6,
+        Item7,
+        Item8,
+        Item9
+    }
+
+    private final DebugStorage storage = new DebugStorage();
+    private final CountingPersistence persistence = new CountingPersistence(storage);
+    private final TestScript script;
+
+    public StateImplLazyRestoreTest() throws IOException {
+        script = new TestScript(new DebugHost(), persistence, storage);
+        script.teaseLib.freezeTime();
+    }
+
+    private void persistStates() {
+        StateImpl state = (StateImpl) script.teaseLib.stateMaps.state(TeaseLib.DefaultDomain, Toys.Ball_Stretcher);
+        state.applyAttributes(Inventory.Item0);
+        state.applyTo(Body.OnBalls).over(1, TimeUnit.HOURS);
+    }
+
+    private StateMaps restoredStateMaps() {
+        StateMaps stateMaps = new StateMaps(script.teaseLib);
+        persistence.reads.set(0);
+        return stateMaps;
+    }
+
+    @Test
+    public void testUnpersistedStatesAreNotRestored() {
+        StateMaps stateMaps = restoredStateMaps();
+        for (Inventory item : Inventory.values()) {
+            stateMaps.state(TeaseLib.DefaultDomain, item);
+        }
+        // Only checked whether the state has been persisted, to schedule it for auto-removal
+        assertEquals(Inventory.values().length, persistence.reads.get());
+    }
+
+    @Test
+    public void testLazilyRestoredStatesMatchEagerlyRestoredStates() {
+        persistStates();
+
+        StateMaps lazy = restoredStateMaps();
+        script.teaseLib.config.set(Config.Debug.RestoreStatesEagerly, Boolean.toString(true));
+        StateMaps eager = restoredStateMaps();
+
+        StateImpl lazyState = (StateImpl) lazy.state(TeaseLib.DefaultDomain, Toys.Ball_Stretcher);
+        StateImpl eagerState = (StateImpl) eager.state(TeaseLib.DefaultDomain, Toys.Ball_Stretcher);
+
+        assertTrue(lazyState.applied());
+        assertEquals(eagerState.applied(), lazyState.applied());
+        assertEquals(eagerState.duration().start(TimeUnit.SECONDS), lazyState.duration().start(TimeUnit.SECONDS));
+        assertEquals(eagerState.duration().limit(TimeUnit.SECONDS), lazyState.duration().limit(TimeUnit.SECONDS));
+        assertEquals(eagerState.peers(), lazyState.peers());
+        assertEquals(eagerState.getAttributes(), lazyState.getAttributes());
+        assertTrue(lazyState.is(Body.OnBalls));
+        assertTrue(lazyState.is(Inventory.Item0));
+        assertTrue(lazy.state(TeaseLib.DefaultDomain, Body.OnBalls).applied());
+    }
+
+    @Test
+    public void testLazilyRestoredStatesWithoutPersistedPeersAreRemovedLikeEagerlyRestoredStates() {
+        persistStates();
+        storage.keySet().removeIf(name -> name.toString().toLowerCase().contains("onballs.state"));
+        storage.keySet().forEach(k -> System.out.println("KEY " + k + "=" + storage.get(k)));
+
+        // Restoring removes the state from persistence
+        assertFalse(restoredStateMaps().state(TeaseLib.DefaultDomain, Toys.Ball_Stretcher).applied());
+        assertFalse(restoredStateMaps().state(TeaseLib.DefaultDomain, Toys.Ball_Stretcher).applied());
+
+        persistStates();
+        storage.keySet().removeIf(name -> name.toString().toLowerCase().contains("onballs.state"));
+        script.teaseLib.config.set(Config.Debug.RestoreStatesEagerly, Boolean.toString(true));
+        assertFalse(restoredStateMaps().state(TeaseLib.DefaultDomain, Toys.Ball_Stretcher).applied());
+    }
+
+    @Test
+    public void testChangingUnrestoredStatesKeepsPersistedFields() {
+        persistStates();
+
+        StateMaps stateMaps = restoredStateMaps();
+        State state = stateMaps.state(TeaseLib.DefaultDomain, Toys.Ball_Stretcher);
+        state.applyTo(Body.OnBalls).over(2, TimeUnit.HOURS);
+
+        StateImpl restored = (StateImpl) restoredStateMaps().state(TeaseLib.DefaultDomain, Toys.Ball_Stretcher);
+        assertEquals(2, restored.duration().limit(TimeUnit.HOURS));
+        assertTrue(restored.getAttributes().contains(Inventory.Item0));
+        assertTrue(restored.peers().contains(Body.OnBalls));
+    }
+
+    @Test
+    public void testPreloadedStatesDontAccessPersistence() {
+        persistStates();
+
+        StateMaps stateMaps = restoredStateMaps();
+        List<Object> workingSet = new ArrayList<>(Arrays.asList(Inventory.values()));
+        workingSet.add(Toys.Ball_Stretcher);
+        workingSet.add(Body.OnBalls);
+        stateMaps.preload(TeaseLib.DefaultDomain, workingSet);
+        assertTrue(persistence.reads.get() > 0);
+
+        persistence.reads.set(0);
+        for (Object item : workingSet) {
+            State state = stateMaps.state(TeaseLib.DefaultDomain, item);
+            state.applied();
+            state.duration();
+            ((StateImpl) state).getAttributes();
+        }
+        assertEquals(0, persistence.reads.get());
+        assertFalse(stateMaps.state(TeaseLib.DefaultDomain, Inventory.Item0).applied());
+    }
+
+    @Test
+    public void testIdentityDoesntRestorePersistedFields() {
+        persistStates();
+
+        StateMaps stateMaps = restoredStateMaps();
+        State state = stateMaps.state(TeaseLib.DefaultDomain, Toys.Ball_Stretcher);
+        // Checking for auto-removal restores the duration, but not the peers
+        assertTrue(state.toString(), state.toString().endsWith(" peers=?"));
+        State other = stateMaps.state(TeaseLib.DefaultDomain, Body.OnBalls);
+
+        persistence.reads.set(0);
+        assertEquals(state, stateMaps.state(TeaseLib.DefaultDomain, Toys.Ball_Stretcher));
+        assertEquals(state.hashCode(), stateMaps.state(TeaseLib.DefaultDomain, Toys.Ball_Stretcher).hashCode());
+        assertFalse(state.equals(other));
+        state.toString();
+        assertEquals(0, persistence.reads.get());
+
+        ((StateImpl) state).peers();
+        assertTrue(state.toString(), state.toString().contains(" peers=["));
+    }
+}
@@ -76,11 +76,11 @@ public class StateMapsTestRemember extends StateMaps {
         state(TEST_DOMAIN, Toys.Wrist_Restraints).applyTo(Posture.WristsTiedBehindBack, Body.CantJerkOff);
         state(TEST_DOMAIN, Toys.Chastity_Device).applyTo(Body.OnPenis, Body.CantJerkOff).over(24, TimeUnit.HOURS);
 
-        assertEquals(9, storage.size());
+        assertEquals(9, StateStorage.size(storage));
 
         state(TEST_DOMAIN, Toys.Chastity_Device).remove();
 
-        assertEquals(0, storage.size());
+        assertEquals(0, StateStorage.size(storage));
 
         assertFalse(state(TEST_DOMAIN, Toys.Chastity_Device).applied());
         assertFalse(state(TEST_DOMAIN, Body.OnPenis).applied());
@@ -108,11 +108,11 @@ public class StateMapsTestRemember extends StateMaps {
         assertTrue(state(TEST_DOMAIN, Body.OnPenis).applied());
         assertTrue(state(TEST_DOMAIN, Body.CantJerkOff).applied());
 
-        assertEquals(9, storage.size());
+        assertEquals(9, StateStorage.size(storage));
 
         state(TEST_DOMAIN, Toys.Chastity_Device).remove();
 
-        assertEquals(0, storage.size());
+        assertEquals(0, StateStorage.size(storage));
 
         assertFalse(state(TEST_DOMAIN, Toys.Chastity_Device).applied());
         assertFalse(state(TEST_DOMAIN, Body.OnPenis).applied());
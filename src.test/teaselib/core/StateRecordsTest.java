@@ -0,0 +1,270 @@
+package teaselib.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import teaselib.Body;
+import teaselib.Material;
+import teaselib.State;
+import teaselib.Toys;
+import teaselib.core.debug.DebugHost;
+import teaselib.core.debug.DebugPersistence;
+import teaselib.core.debug.DebugStorage;
+import teaselib.core.util.Persist;
+import teaselib.core.util.QualifiedName;
+import teaselib.test.TestScript;
+
+public class StateRecordsTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static final QualifiedName OnNipplesDuration = name("Body", "OnNipples.state.duration");
+    private static final QualifiedName OnNipplesPeers = name("Body", "OnNipples.state.peers");
+
+    private static QualifiedName name(String namespace, String name) {
+        return QualifiedName.of(TeaseLib.DefaultDomain, namespace, name);
+    }
+
+    private static List<Integer> ids(String record) {
+        List<Integer> ids = new ArrayList<>();
+        StateRecords.forEachId(record, ids::add);
+        return ids;
+    }
+
+    @Test
+    public void testDurationEncoding() {
+        for (long value : new long[] { 0, 1, 1_600_000_000L, -1, State.INDEFINITELY, Long.MIN_VALUE }) {
+            String record = StateRecords.duration(value, State.INDEFINITELY - value);
+            assertTrue(StateRecords.isEncoded(record));
+            assertEquals(23, record.length());
+            assertEquals(value, StateRecords.start(record));
+            assertEquals(State.INDEFINITELY - value, StateRecords.limit(record));
+        }
+    }
+
+    @Test
+    public void testLegacyDurationConversion() {
+        String record = StateRecords.fromLegacyDuration("1600000000 INDEFINITELY");
+        assertEquals(1_600_000_000L, StateRecords.start(record));
+        assertEquals(State.INDEFINITELY, StateRecords.limit(record));
+
+        assertEquals(State.TEMPORARY, StateRecords.limit(StateRecords.fromLegacyDuration("0 TEMPORARY")));
+        assertEquals(1800, StateRecords.limit(StateRecords.fromLegacyDuration("0 1800")));
+    }
+
+    @Test
+    public void testIdEncoding() {
+        assertEquals(Arrays.asList(0, 35, 36, 1297, Integer.MAX_VALUE),
+                ids(StateRecords.ids(new int[] { 0, 35, 36, 1297, Integer.MAX_VALUE })));
+        assertEquals(Collections.emptyList(), ids(StateRecords.ids(new int[] {})));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidIds() {
+        ids(StateRecords.Marker + "1,,2");
+    }
+
+    @Test
+    public void testIdsAreInternedOnce() {
+        DebugStorage storage = new DebugStorage();
+        StateIds ids = new StateIds(new DebugPersistence(storage));
+        String peer = Persist.persist(Toys.Nipple_Clamps);
+        int id = ids.intern(peer);
+        assertEquals(id, ids.intern(peer));
+        // The value and the number of ids
+        assertEquals(2, storage.size());
+
+        StateIds restored = new StateIds(new DebugPersistence(storage));
+        assertEquals(id, restored.intern(peer));
+        assertEquals(Toys.Nipple_Clamps, restored.get(id).value());
+        assertEquals(id + 1, restored.intern(Persist.persist(Body.OnNipples)));
+
+        storage.clear();
+        assertEquals(id, ids.intern(peer));
+        assertEquals(peer, storage.get(StateIds.name(id)));
+    }
+
+    @Test
+    public void testMissingIdsDontHideLaterIds() {
+        DebugStorage storage = new DebugStorage();
+        StateIds ids = new StateIds(new DebugPersistence(storage));
+        ids.intern(Persist.persist(Toys.Nipple_Clamps));
+        ids.intern(Persist.persist(Body.OnNipples));
+        int id = ids.intern(Persist.persist(Material.Metal));
+        storage.remove(StateIds.name(1));
+
+        StateIds restored = new StateIds(new DebugPersistence(storage));
+        assertEquals(id, restored.intern(Persist.persist(Material.Metal)));
+        assertEquals(id + 1, restored.intern(Persist.persist(Material.Leather)));
+    }
+
+    @Test
+    public void testUndefinedIdsAreSkipped() {
+        TestScript script = TestScript.getOne();
+        script.state(Body.OnNipples).applyTo(Toys.Nipple_Clamps, Toys.Chains).over(30, TimeUnit.MINUTES);
+        String peer = Persist.persist(Toys.Nipple_Clamps);
+        assertTrue(script.storage.entrySet()
+                .removeIf(entry -> StateIds.isId(entry.getKey()) && peer.equals(entry.getValue())));
+
+        State restored = new StateMaps(script.teaseLib).state(TeaseLib.DefaultDomain, Body.OnNipples);
+        assertTrue(restored.applied());
+        assertFalse(restored.is(Toys.Nipple_Clamps));
+        assertTrue(restored.is(Toys.Chains));
+        assertTrue(restored.is(script.namespace));
+    }
+
+    @Test
+    public void testStatesArePersistedAsCompactRecords() {
+        TestScript script = TestScript.getOne();
+        script.teaseLib.freezeTime();
+        script.state(Body.OnNipples).applyTo(Toys.Nipple_Clamps).over(30, TimeUnit.MINUTES);
+
+        assertTrue(StateRecords.isEncoded(script.storage.get(OnNipplesDuration)));
+        String peers = script.storage.get(OnNipplesPeers);
+        assertTrue(StateRecords.isEncoded(peers));
+        assertFalse(peers.contains(Toys.Nipple_Clamps.name()));
+
+        State restored = new StateMaps(script.teaseLib).state(TeaseLib.DefaultDomain, Body.OnNipples);
+        assertTrue(restored.applied());
+        assertTrue(restored.is(Toys.Nipple_Clamps));
+        assertTrue(restored.is(script.namespace));
+        assertEquals(30, restored.duration().limit(TimeUnit.MINUTES));
+    }
+
+    private static void putLegacyStates(DebugStorage storage, long now) {
+        storage.put(name("Body", "OnNipples.state.applied"), DebugPersistence.TRUE);
+        storage.put(OnNipplesDuration, now + " 1800");
+        storage.put(OnNipplesPeers, Persist.persistValues(Collections.singletonList(Toys.Nipple_Clamps)));
+        storage.put(name("Body", "OnNipples.state.attributes"),
+                Persist.persistValues(Arrays.asList(Material.Metal, Material.Leather)));
+
+        storage.put(name("Toys", "Nipple_Clamps.state.applied"), DebugPersistence.TRUE);
+        storage.put(name("Toys", "Nipple_Clamps.state.duration"), now + " 1800");
+        storage.put(name("Toys", "Nipple_Clamps.state.peers"),
+                Persist.persistValues(Collections.singletonList(Body.OnNipples)));
+    }
+
+    private static void assertLegacyStates(TestScript script) {
+        State onNipples = script.teaseLib.stateMaps.state(TeaseLib.DefaultDomain, Body.OnNipples);
+        assertTrue(onNipples.applied());
+        assertEquals(30, onNipples.duration().limit(TimeUnit.MINUTES));
+        assertTrue(onNipples.is(Toys.Nipple_Clamps));
+        assertTrue(onNipples.is(Material.Metal));
+        assertTrue(onNipples.is(Material.Leather));
+
+        State nippleClamps = script.teaseLib.stateMaps.state(TeaseLib.DefaultDomain, Toys.Nipple_Clamps);
+        assertTrue(nippleClamps.applied());
+        assertEquals(30, nippleClamps.duration().limit(TimeUnit.MINUTES));
+        assertTrue(nippleClamps.is(Body.OnNipples));
+    }
+
+    @Test
+    public void testLegacyRecordsAreReadable() {
+        TestScript script = TestScript.getOne();
+        script.teaseLib.freezeTime();
+        putLegacyStates(script.storage, script.teaseLib.getTime(TimeUnit.SECONDS));
+
+        assertLegacyStates(script);
+    }
+
+    private static Properties properties(DebugStorage storage) {
+        Properties properties = new Properties();
+        for (Entry<QualifiedName, String> entry : storage.entrySet()) {
+            properties.setProperty(entry.getKey().toString(), entry.getValue());
+        }
+        return properties;
+    }
+
+    private static void putAll(DebugStorage storage, Properties properties) {
+        for (String key : properties.stringPropertyNames()) {
+            int separator = key.indexOf('.');
+            storage.put(QualifiedName.of(TeaseLib.DefaultDomain, key.substring(0, separator),
+                    key.substring(separator + 1)), properties.getProperty(key));
+        }
+    }
+
+    @Test
+    public void testMigration() throws IOException {
+        DebugStorage legacy = new DebugStorage();
+        putLegacyStates(legacy, TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()));
+        Properties body = new Properties();
+        Properties toys = new Properties();
+        for (Entry<QualifiedName, String> entry : legacy.entrySet()) {
+            Properties file = entry.getKey().namespace.equals("Body") ? body : toys;
+            file.setProperty(entry.getKey().toString(), entry.getValue());
+        }
+
+        DebugStorage table = new DebugStorage();
+        StateIds ids = new StateIds(new DebugPersistence(table));
+        assertEquals(3, new StateRecordMigration(body, ids).migrate());
+        assertEquals(2, new StateRecordMigration(toys, ids).migrate());
+        assertEquals(0, new StateRecordMigration(body, ids).migrate());
+        // Nipple clamps, body part and two materials, interned once in the global table along with the id count
+        assertEquals(5, table.size());
+        assertTrue(body.stringPropertyNames().stream().noneMatch(key -> key.startsWith(StateIds.Namespace)));
+
+        DebugStorage migrated = new DebugStorage();
+        putAll(migrated, body);
+        putAll(migrated, toys);
+        assertTrue(StateRecords.isEncoded(migrated.get(OnNipplesDuration)));
+        assertTrue(StateRecords.isEncoded(migrated.get(OnNipplesPeers)));
+        migrated.putAll(table);
+
+        TestScript script = new TestScript(new DebugHost(), new DebugPersistence(migrated), migrated);
+        script.teaseLib.freezeTime();
+        assertLegacyStates(script);
+    }
+
+    @Test
+    public void testMigrationOfFilesAddsIdsToTheIdTable() throws IOException {
+        DebugStorage legacy = new DebugStorage();
+        putLegacyStates(legacy, TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()));
+        Path folder = temporaryFolder.getRoot().toPath();
+        Path settings = folder.resolve("settings.properties");
+        try (OutputStream outputStream = Files.newOutputStream(settings)) {
+            properties(legacy).store(outputStream, null);
+        }
+        Path idTable = folder.resolve("states.properties");
+
+        assertEquals(5, StateRecordMigration.migrate(idTable, Collections.singletonList(settings)));
+        assertTrue(Files.exists(settings.resolveSibling("settings.properties.backup")));
+
+        Properties migratedSettings = new Properties();
+        try (InputStream inputStream = Files.newInputStream(settings)) {
+            migratedSettings.load(inputStream);
+        }
+        Properties table = new Properties();
+        try (InputStream inputStream = Files.newInputStream(idTable)) {
+            table.load(inputStream);
+        }
+        assertEquals(5, table.size());
+
+        DebugStorage migrated = new DebugStorage();
+        putAll(migrated, migratedSettings);
+        for (String key : table.stringPropertyNames()) {
+            migrated.put(new QualifiedName(QualifiedName.NONE, StateIds.Namespace,
+                    key.substring(StateIds.Namespace.length() + 1)), table.getProperty(key));
+        }
+        TestScript script = new TestScript(new DebugHost(), new DebugPersistence(migrated), migrated);
+        script.teaseLib.freezeTime();
+        assertLegacyStates(script);
+    }
+}
@@ -2,6 +2,8 @@ package teaselib.core;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import org.junit.Before;
@@ -63,7 +65,9 @@ public class StateScopeTests {
         assertTrue(somethingOnNipples.applied());
         assertTrue(peerStorage.available());
         String value = peerStorage.value();
-        assertTrue(value.contains(Toys.Nipple_Clamps.name()));
+        List<Object> peers = new ArrayList<>();
+        StateRecords.forEachId(value, id -> peers.add(script.teaseLib.stateMaps.ids.get(id).value()));
+        assertTrue(peers.contains(Toys.Nipple_Clamps));
         assertFalse(somethingOnNipples.expired());
     }
 
@@ -0,0 +1,23 @@
+package teaselib.core;
+
+import java.util.Map;
+
+import teaselib.core.util.QualifiedName;
+
+/**
+ * Inspects the persisted state records of tests.
+ * 
+ * @author Citizen-Cane
+ *
+ */
+final class StateStorage {
+    private StateStorage() {
+    }
+
+    /**
+     * @return The number of state record entries, without the interned values the records refer to.
+     */
+    static long size(Map<QualifiedName, String> storage) {
+        return storage.keySet().stream().filter(name -> !StateIds.isId(name)).count();
+    }
+}
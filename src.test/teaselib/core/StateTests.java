@@ -20,7 +20,6 @@ import teaselib.test.TestScript;
 import teaselib.util.Item;
 
 public class StateTests {
-
     @Test
     public void testLocalState() {
         TestScript script = TestScript.getOne();
@@ -36,7 +35,7 @@ public class StateTests {
         assertTrue(somethingOnNipples.expired());
         assertFalse(somethingOnNipples.applied());
 
-        assertEquals(0, script.storage.size());
+        assertEquals(0, StateStorage.size(script.storage));
     }
 
     @Test
@@ -47,13 +46,13 @@ public class StateTests {
         State somethingOnNipples = script.state(Body.OnNipples);
         assertTrue(somethingOnNipples.expired());
         assertFalse(somethingOnNipples.applied());
-        assertEquals(0, script.storage.size());
+        assertEquals(0, StateStorage.size(script.storage));
 
         somethingOnNipples.applyTo(Toys.Nipple_Clamps).over(30, TimeUnit.MINUTES);
         assertTrue(somethingOnNipples.applied());
         assertFalse(somethingOnNipples.expired());
         assertEquals(30, somethingOnNipples.duration().remaining(TimeUnit.MINUTES));
-        assertEquals(7, script.storage.size());
+        assertEquals(7, StateStorage.size(script.storage));
 
         // Assert that when a state is applied then
         // the namespace of the script is applied to that state
@@ -84,7 +83,7 @@ public class StateTests {
         assertEquals(0, ((StateProxy) script.state(script.namespace)).peers().size());
 
         somethingOnNipples.remove();
-        assertEquals(0, script.storage.size());
+        assertEquals(0, StateStorage.size(script.storage));
 
         assertFalse(somethingOnNipples.is(script.namespace));
         assertFalse(somethingOnNipples.is(Toys.Nipple_Clamps));
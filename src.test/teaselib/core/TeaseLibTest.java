@@ -2,10 +2,18 @@ package teaselib.core;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import org.junit.Test;
 
+import teaselib.Message;
 import teaselib.test.TestScript;
 
 public class TeaseLibTest {
@@ -34,4 +42,103 @@ public class TeaseLibTest {
         long actual = teaseLib.getTime(TimeUnit.SECONDS);
         assertEquals(expected, actual);
     }
+
+    @Test
+    public void testVirtualTimeAdvancesOnAllThreads() throws Exception {
+        TestScript script = TestScript.getOne();
+        TeaseLib teaseLib = script.teaseLib;
+        script.debugger.useVirtualTime();
+        assertTrue(teaseLib.isTimeVirtual());
+
+        long start = teaseLib.getTime(TimeUnit.SECONDS);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> sleeping = executor.submit(() -> teaseLib.sleep(1, TimeUnit.HOURS));
+            sleeping.get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdown();
+        }
+        teaseLib.sleep(1, TimeUnit.HOURS);
+        assertEquals(start + 2 * 60 * 60, teaseLib.getTime(TimeUnit.SECONDS));
+
+        script.debugger.resumeTime();
+        assertFalse(teaseLib.isTimeVirtual());
+    }
+
+    @Test
+    public void testVirtualTimeRendersMessageDelaysInstantly() {
+        TestScript script = TestScript.getOne();
+        TeaseLib teaseLib = script.teaseLib;
+        script.debugger.useVirtualTime();
+
+        List<Long> timeAdvances = Collections.synchronizedList(new ArrayList<>());
+        teaseLib.addTimeAdvancedListener(e -> timeAdvances.add(e.teaseLib.getTime(TimeUnit.MILLISECONDS)));
+
+        long start = teaseLib.getTime(TimeUnit.SECONDS);
+        long wallClock = System.currentTimeMillis();
+        Message message = new Message(script.actor);
+        message.add("Some text.");
+        message.add(Message.Delay120s);
+        message.add("Some more text.");
+        message.add(Message.Delay120s);
+        script.say(message);
+        script.completeAll();
+
+        assertTrue(teaseLib.getTime(TimeUnit.SECONDS) - start >= 240);
+        assertTrue(System.currentTimeMillis() - wallClock < TimeUnit.SECONDS.toMillis(60));
+
+        List<Long> sorted = new ArrayList<>(timeAdvances);
+        Collections.sort(sorted);
+        assertEquals(sorted, timeAdvances);
+    }
+
+    @Test
+    public void testVirtualTimeOverlapsConcurrentSleepers() throws Exception {
+        TestScript script = TestScript.getOne();
+        TeaseLib teaseLib = script.teaseLib;
+        script.debugger.useVirtualTime();
+
+        long start = teaseLib.getTime(TimeUnit.SECONDS);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<?>> sleepers = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                sleepers.add(executor.submit(() -> teaseLib.sleep(1, TimeUnit.HOURS)));
+            }
+            for (Future<?> sleeper : sleepers) {
+                sleeper.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(start + 60 * 60, teaseLib.getTime(TimeUnit.SECONDS));
+        script.debugger.resumeTime();
+    }
+
+    @Test
+    public void testVirtualTimeWakesSleepersInDeadlineOrder() throws Exception {
+        TestScript script = TestScript.getOne();
+        TeaseLib teaseLib = script.teaseLib;
+        script.debugger.useVirtualTime();
+
+        long start = teaseLib.getTime(TimeUnit.MINUTES);
+        List<Long> woken = Collections.synchronizedList(new ArrayList<>());
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            List<Future<?>> sleepers = new ArrayList<>();
+            for (long minutes : new long[] { 30, 10, 20 }) {
+                sleepers.add(executor.submit(() -> {
+                    teaseLib.sleep(minutes, TimeUnit.MINUTES);
+                    woken.add(teaseLib.getTime(TimeUnit.MINUTES) - start);
+                }));
+            }
+            for (Future<?> sleeper : sleepers) {
+                sleeper.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(Arrays.asList(10L, 20L, 30L), woken);
+        script.debugger.resumeTime();
+    }
 }
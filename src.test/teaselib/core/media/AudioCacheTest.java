@@ -0,0 +1,170 @@
+package teaselib.core.media;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import teaselib.core.Audio;
+import teaselib.core.ResourceLoader;
+import teaselib.core.debug.NullAudioSink;
+
+public class AudioCacheTest {
+    private static final float SampleRate = 8000;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static final Audio Host = new Audio() {
+        @Override
+        public void load() {
+            // Ignore
+        }
+
+        @Override
+        public void play() {
+            // Ignore
+        }
+
+        @Override
+        public void stop() {
+            // Ignore
+        }
+    };
+
+    private static int writeClip(File file, double seconds) throws IOException {
+        file.getParentFile().mkdirs();
+        AudioFormat format = new AudioFormat(SampleRate, 8, 1, true, false);
+        byte[] samples = new byte[(int) (SampleRate * seconds)];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (byte) (Math.sin(i * 2 * Math.PI * 440 / SampleRate) * 100);
+        }
+        try (AudioInputStream audio = new AudioInputStream(new ByteArrayInputStream(samples), format,
+                samples.length)) {
+            AudioSystem.write(audio, AudioFileFormat.Type.WAVE, file);
+        }
+        return samples.length;
+    }
+
+    @Test
+    public void testShortClipsAreCachedAndPlayedOnOpenLines() throws Exception {
+        File assets = temporaryFolder.newFolder("assets");
+        int bytes = writeClip(new File(assets, "sounds/bell.wav"), 0.5);
+        NullAudioSink sink = new NullAudioSink();
+
+        try (ResourceLoader resources = new ResourceLoader(assets, "/");
+                AudioCache audioCache = new AudioCache(sink, 1024 * 1024)) {
+            Audio first = audioCache.audio(resources, "sounds/bell.wav", () -> Host);
+            Audio second = audioCache.audio(resources, "sounds/bell.wav", () -> Host);
+            assertNotSame(Host, first);
+            assertNotSame(Host, second);
+            assertEquals(1, audioCache.misses());
+            assertEquals(1, audioCache.hits());
+            assertEquals(bytes, audioCache.size());
+            assertEquals(1, sink.opened());
+
+            first.load();
+            first.play();
+            second.play();
+            assertEquals(1, sink.opened());
+            assertEquals(2L * bytes, sink.written());
+            assertEquals(2, audioCache.plays());
+            assertTrue(audioCache.maxStartLatency(TimeUnit.NANOSECONDS) >= audioCache
+                    .averageStartLatency(TimeUnit.NANOSECONDS));
+            long started = 0;
+            for (long count : audioCache.startLatencyHistogram()) {
+                started += count;
+            }
+            assertEquals(2, started);
+        }
+        assertEquals(sink.opened(), sink.closed());
+    }
+
+    @Test
+    public void testLongClipsArePlayedByTheHost() throws Exception {
+        File assets = temporaryFolder.newFolder("assets");
+        writeClip(new File(assets, "sounds/long.wav"), AudioCache.MaxClipSeconds + 1);
+        NullAudioSink sink = new NullAudioSink();
+
+        try (ResourceLoader resources = new ResourceLoader(assets, "/");
+                AudioCache audioCache = new AudioCache(sink, 1024 * 1024)) {
+            assertSame(Host, audioCache.audio(resources, "sounds/long.wav", () -> Host));
+            assertSame(Host, audioCache.audio(resources, "sounds/long.wav", () -> Host));
+            assertEquals(1, audioCache.misses());
+            assertEquals(0, audioCache.hits());
+            assertEquals(0, audioCache.size());
+            assertEquals(0, sink.opened());
+        }
+    }
+
+    @Test
+    public void testDisabledCacheUsesHost() throws Exception {
+        File assets = temporaryFolder.newFolder("assets");
+        writeClip(new File(assets, "sounds/bell.wav"), 0.5);
+        NullAudioSink sink = new NullAudioSink();
+
+        try (ResourceLoader resources = new ResourceLoader(assets, "/");
+                AudioCache audioCache = new AudioCache(sink, 0)) {
+            assertSame(Host, audioCache.audio(resources, "sounds/bell.wav", () -> Host));
+            assertEquals(0, audioCache.misses());
+        }
+    }
+
+    @Test
+    public void testLeastRecentlyUsedClipsAreEvicted() throws Exception {
+        File assets = temporaryFolder.newFolder("assets");
+        int bytes = writeClip(new File(assets, "sounds/tick.wav"), 1);
+        writeClip(new File(assets, "sounds/tock.wav"), 1);
+
+        try (ResourceLoader resources = new ResourceLoader(assets, "/");
+                AudioCache audioCache = new AudioCache(new NullAudioSink(), bytes + bytes / 2)) {
+            audioCache.audio(resources, "sounds/tick.wav", () -> Host);
+            audioCache.audio(resources, "sounds/tock.wav", () -> Host);
+            assertEquals(bytes, audioCache.size());
+
+            audioCache.audio(resources, "sounds/tock.wav", () -> Host);
+            assertEquals(1, audioCache.hits());
+            audioCache.audio(resources, "sounds/tick.wav", () -> Host);
+            assertEquals(1, audioCache.hits());
+            assertEquals(3, audioCache.misses());
+        }
+    }
+
+    @Test
+    public void testInterruptedPlaybackReleasesLine() throws Exception {
+        File assets = temporaryFolder.newFolder("assets");
+        writeClip(new File(assets, "sounds/bell.wav"), 0.5);
+        NullAudioSink sink = new NullAudioSink();
+
+        try (ResourceLoader resources = new ResourceLoader(assets, "/");
+                AudioCache audioCache = new AudioCache(sink, 1024 * 1024)) {
+            Audio audio = audioCache.audio(resources, "sounds/bell.wav", () -> Host);
+            Thread.currentThread().interrupt();
+            try {
+                audio.play();
+                fail();
+            } catch (InterruptedException e) {
+                assertFalse(Thread.currentThread().isInterrupted());
+            }
+            audio.play();
+            assertEquals(1, sink.opened());
+            assertEquals(1, audioCache.plays());
+        }
+    }
+}
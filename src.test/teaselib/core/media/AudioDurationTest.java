@@ -0,0 +1,85 @@
+package teaselib.core.media;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import teaselib.core.ResourceLoader;
+
+public class AudioDurationTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /**
+     * MPEG 1 layer 3, 128kbit/s, 44.1kHz, stereo
+     */
+    private static final int FrameHeader = 0xfffb9000;
+
+    private static ByteBuffer mp3(int size) {
+        ByteBuffer mp3 = ByteBuffer.allocate(size);
+        mp3.putInt(0, FrameHeader);
+        return mp3;
+    }
+
+    @Test
+    public void testConstantBitRate() {
+        assertEquals(1000, AudioDuration.mp3Millis(mp3(16000)));
+    }
+
+    @Test
+    public void testId3TagsAreSkipped() {
+        ByteBuffer mp3 = ByteBuffer.allocate(10 + 200 + 16000 + 128);
+        mp3.put("ID3".getBytes(StandardCharsets.US_ASCII));
+        mp3.put(new byte[] { 4, 0, 0, 0, 0, 1, 72 });
+        mp3.putInt(210, FrameHeader);
+        mp3.position(mp3.limit() - 128);
+        mp3.put("TAG".getBytes(StandardCharsets.US_ASCII));
+        mp3.rewind();
+        assertEquals(1000, AudioDuration.mp3Millis(mp3));
+    }
+
+    @Test
+    public void testXingHeaderFrameCount() {
+        ByteBuffer mp3 = mp3(16000);
+        mp3.position(4 + 32);
+        mp3.put("Xing".getBytes(StandardCharsets.US_ASCII));
+        mp3.putInt(1);
+        mp3.putInt(100);
+        mp3.rewind();
+        assertEquals(100 * 1152 * 1000 / 44100, AudioDuration.mp3Millis(mp3));
+    }
+
+    @Test
+    public void testMissingFrameIsUnknown() {
+        assertEquals(AudioDuration.Unknown, AudioDuration.mp3Millis(ByteBuffer.allocate(1000)));
+    }
+
+    @Test
+    public void testWaveDuration() throws IOException {
+        File assets = temporaryFolder.newFolder("assets");
+        AudioFormat format = new AudioFormat(8000, 16, 1, true, false);
+        byte[] samples = new byte[8000 * 2 * 3 / 2];
+        try (AudioInputStream audio = new AudioInputStream(new ByteArrayInputStream(samples), format,
+                samples.length / format.getFrameSize())) {
+            AudioSystem.write(audio, AudioFileFormat.Type.WAVE, new File(assets, "sound.wav"));
+        }
+
+        try (ResourceLoader resources = new ResourceLoader(assets, "/")) {
+            assertEquals(1500, AudioDuration.millis(resources, "/sound.wav"));
+            assertEquals(AudioDuration.Unknown, AudioDuration.millis(resources, "/missing.wav"));
+        }
+    }
+}
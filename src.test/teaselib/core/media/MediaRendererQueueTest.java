@@ -0,0 +1,210 @@
+package teaselib.core.media;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import teaselib.Replay;
+import teaselib.core.ScriptInterruptedException;
+import teaselib.core.TeaseLib;
+import teaselib.core.concurrency.NamedExecutorService;
+import teaselib.test.TestScript;
+
+public class MediaRendererQueueTest {
+    private static final Logger logger = LoggerFactory.getLogger(MediaRendererQueueTest.class);
+
+    private static class TestRenderer extends MediaRendererThread {
+        final CountDownLatch release;
+        final CountDownLatch rendered = new CountDownLatch(1);
+
+        TestRenderer(TeaseLib teaseLib, CountDownLatch release) {
+            super(teaseLib);
+            this.release = release;
+        }
+
+        @Override
+        protected void renderMedia() throws InterruptedException {
+            rendered.countDown();
+            startCompleted();
+            mandatoryCompleted();
+            release.await();
+        }
+    }
+
+    @Test
+    public void testWaitingForRenderersDoesntBlockOtherThreads() throws Exception {
+        TestScript script = TestScript.getOne();
+        MediaRendererQueue renderQueue = new MediaRendererQueue();
+        CountDownLatch release = new CountDownLatch(1);
+        TestRenderer renderer = new TestRenderer(script.teaseLib, release);
+        renderQueue.start(Collections.singletonList(renderer));
+
+        ExecutorService scriptFunctions = NamedExecutorService.newUnlimitedThreadPool("Script function", 1,
+                TimeUnit.MINUTES);
+        try {
+            Future<?> waiting = scriptFunctions.submit(renderQueue::completeAll);
+            Future<?> starts = scriptFunctions.submit(renderQueue::completeStarts);
+            Future<?> mandatories = scriptFunctions.submit(renderQueue::completeMandatories);
+
+            starts.get(10, TimeUnit.SECONDS);
+            mandatories.get(10, TimeUnit.SECONDS);
+            assertTrue(renderQueue.hasCompletedStarts());
+            assertTrue(renderQueue.hasCompletedMandatory());
+            assertFalse(renderQueue.hasCompletedAll());
+            assertFalse(waiting.isDone());
+
+            release.countDown();
+            waiting.get(10, TimeUnit.SECONDS);
+            assertTrue(renderQueue.hasCompletedAll());
+            renderQueue.endAll();
+        } finally {
+            scriptFunctions.shutdown();
+        }
+    }
+
+    @Test
+    public void testReplayRestartsCompletionPhases() throws Exception {
+        TestScript script = TestScript.getOne();
+        CountDownLatch release = new CountDownLatch(0);
+        TestRenderer renderer = new TestRenderer(script.teaseLib, release);
+        renderer.run();
+        assertTrue(renderer.hasCompletedAll());
+
+        renderer.replay(Replay.Position.FromCurrentPosition);
+        assertTrue(renderer.hasCompletedStart());
+        assertFalse(renderer.hasCompletedMandatory());
+        assertFalse(renderer.hasCompletedAll());
+
+        renderer.replay(Replay.Position.End);
+        assertTrue(renderer.hasCompletedMandatory());
+        assertFalse(renderer.hasCompletedAll());
+
+        renderer.run();
+        assertTrue(renderer.hasCompletedAll());
+    }
+
+    @Test
+    public void testThreadedRenderersOfASetStartTogether() throws Exception {
+        TestScript script = TestScript.getOne();
+        MediaRendererQueue renderQueue = new MediaRendererQueue();
+        List<TestRenderer> threaded = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            threaded.add(new TestRenderer(script.teaseLib, new CountDownLatch(0)));
+        }
+
+        Thread scriptThread = Thread.currentThread();
+        List<String> calls = new ArrayList<>();
+        MediaRenderer first = () -> {
+            assertEquals(scriptThread, Thread.currentThread());
+            assertFalse(threaded.stream().anyMatch(TestRenderer::hasCompletedStart));
+            calls.add("first");
+        };
+        MediaRenderer second = () -> calls.add("second");
+
+        List<MediaRenderer> renderers = new ArrayList<>();
+        renderers.add(threaded.get(0));
+        renderers.add(first);
+        renderers.add(threaded.get(1));
+        renderers.add(second);
+        renderers.addAll(threaded.subList(2, 4));
+
+        renderQueue.start(renderers);
+        assertEquals(Arrays.asList("first", "second"), calls);
+        renderQueue.completeAll();
+        renderQueue.endAll();
+
+        long skew = renderQueue.lastStart().skew(TimeUnit.MICROSECONDS);
+        assertTrue(skew >= 0);
+        logger.info("Renderer start skew = {}us", skew);
+    }
+
+    @Test
+    public void testThreadedRenderersDontStartIfSettingUpTheSetFails() throws Exception {
+        TestScript script = TestScript.getOne();
+        MediaRendererQueue renderQueue = new MediaRendererQueue();
+        TestRenderer threaded = new TestRenderer(script.teaseLib, new CountDownLatch(0));
+        MediaRenderer interrupted = () -> {
+            throw new ScriptInterruptedException();
+        };
+
+        try {
+            renderQueue.start(Arrays.asList(threaded, interrupted));
+            fail("Setup failure not rethrown");
+        } catch (ScriptInterruptedException e) {
+            assertFalse(threaded.rendered.await(200, TimeUnit.MILLISECONDS));
+            assertTrue(renderQueue.hasCompletedAll());
+            assertEquals(-1, renderQueue.lastStart().skew(TimeUnit.MICROSECONDS));
+        }
+    }
+
+    /**
+     * Contention benchmark: many script functions wait for and poll the renderers, while the script thread starts and
+     * ends batches of renderers.
+     */
+    @Test
+    public void testManyScriptFunctionsObservingRenderers() throws Exception {
+        TestScript script = TestScript.getOne();
+        MediaRendererQueue renderQueue = new MediaRendererQueue();
+        int functions = 64;
+        int batches = 500;
+
+        ExecutorService scriptFunctions = NamedExecutorService.newFixedThreadPool(functions, "Script function");
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong observations = new AtomicLong();
+        List<Future<Long>> results = new ArrayList<>(functions);
+        try {
+            for (int i = 0; i < functions; i++) {
+                results.add(scriptFunctions.submit(() -> {
+                    long n = 0;
+                    while (running.get()) {
+                        renderQueue.completeStarts();
+                        renderQueue.hasCompletedMandatory();
+                        renderQueue.hasCompletedAll();
+                        n++;
+                    }
+                    observations.addAndGet(n);
+                    return n;
+                }));
+            }
+
+            long start = System.nanoTime();
+            for (int i = 0; i < batches; i++) {
+                renderQueue.start(Collections.singletonList(new TestRenderer(script.teaseLib, new CountDownLatch(0))));
+                renderQueue.completeStarts();
+                renderQueue.completeAll();
+                renderQueue.endAll();
+            }
+            long elapsed = System.nanoTime() - start;
+            running.set(false);
+
+            for (Future<Long> result : results) {
+                assertTrue(result.get(10, TimeUnit.SECONDS) > 0);
+            }
+            double seconds = elapsed / 1e9;
+            logger.info("{} batches with {} script functions in {}s: {} batches/s, {} observations/s", batches,
+                    functions, String.format("%.3f", seconds), String.format("%.0f", batches / seconds),
+                    String.format("%.0f", observations.get() / seconds));
+            assertTrue(renderQueue.hasCompletedAll());
+            assertEquals(functions, results.size());
+        } finally {
+            running.set(false);
+            scriptFunctions.shutdown();
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package teaselib.core.media;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.FutureTask;
+
+import org.junit.Test;
+
+import teaselib.Message;
+import teaselib.Replay;
+import teaselib.core.AbstractMessage;
+import teaselib.core.debug.DebugHost;
+import teaselib.core.debug.DebugPersistence;
+import teaselib.core.debug.DebugStorage;
+import teaselib.core.media.RenderedMessage.Decorator;
+import teaselib.test.TestScript;
+
+public class MessageRendererQueueTest {
+    static class TextRecordingHost extends DebugHost {
+        final List<String> shown = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void show(byte[] imageBytes, String text) {
+            shown.add(text);
+        }
+
+        String last() {
+            return shown.get(shown.size() - 1);
+        }
+    }
+
+    @Test
+    public void testMessagesArePreparedOffTheScriptThread() throws Exception {
+        TestScript script = TestScript.getOne();
+        List<Thread> decorators = new CopyOnWriteArrayList<>();
+        List<Thread> preparations = new CopyOnWriteArrayList<>();
+        Decorator recordThread = new Decorator() {
+            @Override
+            public AbstractMessage process(AbstractMessage message) {
+                decorators.add(Thread.currentThread());
+                return message;
+            }
+
+            @Override
+            public Decorator prepare(Message message) {
+                preparations.add(Thread.currentThread());
+                return this;
+            }
+        };
+
+        try (MessageRendererQueue messageRenderer = new MessageRendererQueue(script.teaseLib,
+                new MediaRendererQueue())) {
+            MediaRenderer.Threaded renderer = messageRenderer.say(script.actor,
+                    Arrays.asList(new Message(script.actor, "First."), new Message(script.actor, "Second.")),
+                    new Decorator[] { recordThread }, script.resources);
+            renderer.run();
+            renderer.completeAll();
+
+            assertEquals(2, decorators.size());
+            for (Thread thread : decorators) {
+                assertNotSame(Thread.currentThread(), thread);
+            }
+            assertEquals(Arrays.asList(Thread.currentThread(), Thread.currentThread()), preparations);
+            assertTrue(renderer.hasCompletedAll());
+        }
+    }
+
+    @Test
+    public void testEmptyMessageClearsText() throws Exception {
+        TestScript script = TestScript.getOne();
+
+        try (MessageRendererQueue messageRenderer = new MessageRendererQueue(script.teaseLib,
+                new MediaRendererQueue())) {
+            MediaRenderer.Threaded text = messageRenderer.say(script.actor,
+                    Arrays.asList(new Message(script.actor, "Text.")), new Decorator[] {}, script.resources);
+            text.run();
+            text.completeAll();
+
+            MediaRenderer.Threaded empty = messageRenderer.createBatch(script.actor,
+                    Arrays.asList(new RenderedMessage()), MessageRendererQueue.say, script.resources);
+            empty.run();
+            empty.completeAll();
+            ((MessageRendererQueue.Batch.RendererFacade) empty).getTask().get();
+            assertTrue(empty.hasCompletedAll());
+
+            MediaRenderer.Threaded next = messageRenderer.say(script.actor,
+                    Arrays.asList(new Message(script.actor, "More text.")), new Decorator[] {}, script.resources);
+            next.run();
+            next.completeAll();
+        }
+    }
+
+    @Test
+    public void testReplayRestoresSnapshots() throws Exception {
+        TextRecordingHost host = new TextRecordingHost();
+        DebugStorage storage = new DebugStorage();
+        TestScript script = new TestScript(host, new DebugPersistence(storage), storage);
+
+        try (MessageRendererQueue messageRenderer = new MessageRendererQueue(script.teaseLib,
+                new MediaRendererQueue())) {
+            MediaRenderer.Threaded renderer = messageRenderer.say(script.actor,
+                    Arrays.asList(new Message(script.actor, "First.", "Second.")), new Decorator[] {},
+                    script.resources);
+            renderer.run();
+            renderer.completeAll();
+            String rendered = host.last();
+            assertTrue(rendered.trim().startsWith("First."));
+            assertTrue(rendered.endsWith("Second."));
+
+            int shown = host.shown.size();
+            replay(renderer, Replay.Position.End);
+            assertEquals(shown + 1, host.shown.size());
+            assertEquals(rendered, host.last());
+
+            replay(renderer, Replay.Position.FromMandatory);
+            assertEquals(rendered, host.last());
+
+            replay(renderer, Replay.Position.End);
+            assertEquals(rendered, host.last());
+            assertTrue(renderer.hasCompletedAll());
+        }
+    }
+
+    @Test
+    public void testConsecutiveReplacesAreCoalesced() throws Exception {
+        TextRecordingHost host = new TextRecordingHost();
+        DebugStorage storage = new DebugStorage();
+        TestScript script = new TestScript(host, new DebugPersistence(storage), storage);
+
+        try (MessageRendererQueue messageRenderer = new MessageRendererQueue(script.teaseLib,
+                new MediaRendererQueue())) {
+            MediaRenderer.Threaded say = messageRenderer.say(script.actor,
+                    Arrays.asList(new Message(script.actor, "Start.")), new Decorator[] {}, script.resources);
+            render(say);
+
+            MediaRenderer.Threaded first = messageRenderer.replace(script.actor,
+                    Arrays.asList(new Message(script.actor, "First.")), new Decorator[] {}, script.resources);
+            MediaRenderer.Threaded second = messageRenderer.replace(script.actor,
+                    Arrays.asList(new Message(script.actor, "Second.")), new Decorator[] {}, script.resources);
+            MediaRenderer.Threaded third = messageRenderer.replace(script.actor,
+                    Arrays.asList(new Message(script.actor, "Third.")), new Decorator[] {}, script.resources);
+            assertEquals(3, messageRenderer.statistics().depth);
+            assertEquals(2, messageRenderer.statistics().coalesced);
+
+            int shown = host.shown.size();
+            render(first);
+            render(second);
+            assertEquals(shown, host.shown.size());
+            assertTrue(first.hasCompletedAll());
+            assertTrue(second.hasCompletedAll());
+
+            render(third);
+            assertEquals("Third.", host.last().trim());
+
+            MessageRendererQueue.Statistics statistics = messageRenderer.statistics();
+            assertEquals(4, statistics.batches);
+            assertEquals(0, statistics.depth);
+            assertEquals(3, statistics.maxDepth);
+        }
+    }
+
+    @Test
+    public void testReplacesOfOtherThreadsAreNotCoalesced() throws Exception {
+        TextRecordingHost host = new TextRecordingHost();
+        DebugStorage storage = new DebugStorage();
+        TestScript script = new TestScript(host, new DebugPersistence(storage), storage);
+
+        try (MessageRendererQueue messageRenderer = new MessageRendererQueue(script.teaseLib,
+                new MediaRendererQueue())) {
+            MediaRenderer.Threaded say = messageRenderer.say(script.actor,
+                    Arrays.asList(new Message(script.actor, "Start.")), new Decorator[] {}, script.resources);
+            render(say);
+
+            MediaRenderer.Threaded first = messageRenderer.replace(script.actor,
+                    Arrays.asList(new Message(script.actor, "First.")), new Decorator[] {}, script.resources);
+            FutureTask<MediaRenderer.Threaded> scriptFunction = new FutureTask<>(
+                    () -> messageRenderer.replace(script.actor, Arrays.asList(new Message(script.actor, "Second.")),
+                            new Decorator[] {}, script.resources));
+            Thread thread = new Thread(scriptFunction, "Script function");
+            thread.start();
+            MediaRenderer.Threaded second = scriptFunction.get();
+            assertEquals(0, messageRenderer.statistics().coalesced);
+
+            render(first);
+            assertEquals("First.", host.last().trim());
+            render(second);
+            assertEquals("Second.", host.last().trim());
+        }
+    }
+
+    @Test
+    public void testFailedPreparationDequeuesBatch() throws Exception {
+        TestScript script = TestScript.getOne();
+        Decorator failing = new Decorator() {
+            @Override
+            public AbstractMessage process(AbstractMessage message) {
+                throw new IllegalStateException("Preparation failed");
+            }
+        };
+
+        try (MessageRendererQueue messageRenderer = new MessageRendererQueue(script.teaseLib,
+                new MediaRendererQueue())) {
+            MediaRenderer.Threaded renderer = messageRenderer.say(script.actor,
+                    Arrays.asList(new Message(script.actor, "Failed.")), new Decorator[] { failing },
+                    script.resources);
+            assertEquals(1, messageRenderer.statistics().depth);
+            try {
+                renderer.run();
+                fail("Preparation failure not rethrown");
+            } catch (IllegalStateException e) {
+                assertEquals("Preparation failed", e.getMessage());
+            }
+            assertEquals(0, messageRenderer.statistics().depth);
+            assertTrue(renderer.hasCompletedAll());
+        }
+    }
+
+    private static void render(MediaRenderer.Threaded renderer) throws Exception {
+        renderer.run();
+        renderer.completeAll();
+        ((MessageRendererQueue.Batch.RendererFacade) renderer).getTask().get();
+    }
+
+    private static void replay(MediaRenderer.Threaded renderer, Replay.Position position) throws Exception {
+        ((ReplayableMediaRenderer) renderer).replay(position);
+        render(renderer);
+    }
+}
@@ -0,0 +1,128 @@
+package teaselib.core.media;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import teaselib.Message;
+import teaselib.MessagePart;
+
+public class MessageTextAccumulatorTest {
+    private static MessagePart text(String value) {
+        return new MessagePart(Message.Type.Text, value);
+    }
+
+    @Test
+    public void testParagraphs() {
+        MessageTextAccumulator accumulated = new MessageTextAccumulator();
+        accumulated.add(text("Foo,"));
+        accumulated.add(text("bar."));
+        accumulated.add(text("Baz."));
+        assertEquals(" Foo, bar.\n\nBaz.", accumulated.toString());
+        assertFalse(accumulated.canAppend());
+        assertEquals(3, accumulated.size());
+    }
+
+    @Test
+    public void testDeltas() {
+        MessageTextAccumulator accumulated = new MessageTextAccumulator();
+        accumulated.add(text("Foo."));
+        MessageTextAccumulator.Delta first = accumulated.render();
+        assertEquals(0, first.offset);
+        assertEquals(" Foo.", first.text);
+
+        accumulated.add(text("Bar."));
+        MessageTextAccumulator.Delta second = accumulated.render();
+        assertEquals(5, second.offset);
+        assertEquals("\n\nBar.", second.text);
+        assertEquals(accumulated.toString(), second.applyTo(first.applyTo("")));
+
+        MessageTextAccumulator.Delta none = accumulated.render();
+        assertEquals(accumulated.toString().length(), none.offset);
+        assertEquals("", none.text);
+    }
+
+    @Test
+    public void testPrefixRestoresParagraphState() {
+        MessageTextAccumulator accumulated = new MessageTextAccumulator();
+        accumulated.add(text("Foo,"));
+        accumulated.add(text("bar."));
+
+        MessageTextAccumulator prefix = accumulated.prefix(1);
+        assertEquals(" Foo,", prefix.toString());
+        assertTrue(prefix.canAppend());
+
+        prefix.add(text("baz."));
+        assertEquals(" Foo, baz.", prefix.toString());
+        assertEquals(" Foo, bar.", accumulated.toString());
+    }
+
+    @Test
+    public void testContinueFromDisplayedText() {
+        MessageTextAccumulator displayed = new MessageTextAccumulator();
+        displayed.add(text("Foo."));
+        displayed.add(text("Bar."));
+        String shown = displayed.render().applyTo("");
+
+        MessageTextAccumulator replaced = displayed.prefix(1);
+        replaced.add(text("Baz."));
+        replaced.continueFrom(displayed);
+        MessageTextAccumulator.Delta delta = replaced.render();
+        assertEquals(" Foo.\n\nBa".length(), delta.offset);
+        assertEquals("z.", delta.text);
+        assertEquals(replaced.toString(), delta.applyTo(shown));
+
+        MessageTextAccumulator appended = replaced.copy();
+        appended.add(text("Qux."));
+        appended.continueFrom(replaced);
+        assertEquals(replaced.toString().length(), appended.render().offset);
+    }
+
+    @Test
+    public void testCopiesShareTextUntilTheyDiverge() {
+        MessageTextAccumulator messages = new MessageTextAccumulator();
+        messages.add(text("Foo,"));
+        MessageTextAccumulator rendered = messages.copy();
+        messages.add(text("bar."));
+        messages.add(text("Baz."));
+
+        rendered.add(text("bar."));
+        assertEquals(" Foo, bar.", rendered.toString());
+        rendered.add(text("Qux."));
+        assertEquals(" Foo, bar.\n\nQux.", rendered.toString());
+        assertEquals(" Foo, bar.\n\nBaz.", messages.toString());
+
+        messages.render();
+        rendered.continueFrom(messages);
+        assertEquals(" Foo, bar.\n\n".length(), rendered.render().offset);
+
+        messages.add(text("End."));
+        assertEquals(" Foo, bar.\n\nBaz.\n\nEnd.", messages.toString());
+        assertEquals(" Foo, bar.\n\nQux.", rendered.toString());
+    }
+
+    @Test
+    public void testPrefixAfterItemAppendsToParagraph() {
+        MessageTextAccumulator accumulated = new MessageTextAccumulator();
+        accumulated.add(new MessagePart(Message.Type.Item, "Item Foo."));
+        accumulated.add(text("Bar."));
+
+        MessageTextAccumulator prefix = accumulated.prefix(1);
+        assertTrue(prefix.canAppend());
+        prefix.add(text("Baz."));
+        assertTrue(prefix.toString().endsWith("Foo. Baz."));
+    }
+
+    @Test
+    public void testTextIsCachedUntilPartsAreAdded() {
+        MessageTextAccumulator accumulated = new MessageTextAccumulator();
+        accumulated.add(text("Foo."));
+        String text = accumulated.toString();
+        assertSame(text, accumulated.toString());
+        accumulated.add(text("Bar."));
+        assertEquals(" Foo.\n\nBar.", accumulated.toString());
+    }
+}
@@ -1,11 +1,29 @@
 package teaselib.core.media;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.junit.Test;
 
+import teaselib.Actor;
+import teaselib.Config;
+import teaselib.Images;
+import teaselib.Message;
 import teaselib.Message.Type;
 import teaselib.MessagePart;
+import teaselib.Mood;
+import teaselib.Sexuality.Gender;
+import teaselib.core.configuration.Configuration;
 
 public class ScriptMessageDecoratorTest {
 
@@ -26,4 +44,130 @@ public class ScriptMessageDecoratorTest {
         assertEquals(new MessagePart(Type.Delay, "5.5 20.0"), ScriptMessageDecorator
                 .accumulateDelay(new MessagePart(Type.Delay, "2 12.5"), new MessagePart(Type.Delay, "3.5 7.5")));
     }
+
+    private static Configuration config(boolean enabled) {
+        Configuration config = new Configuration();
+        config.set(Config.Render.Speech, Boolean.toString(enabled));
+        config.set(Config.Render.Sound, Boolean.toString(enabled));
+        config.set(Config.Render.ActorImages, Boolean.toString(enabled));
+        config.set(Config.Render.InstructionalImages, Boolean.toString(enabled));
+        return config;
+    }
+
+    @Test
+    public void testRenderSettingsAreResolvedAgainAfterConfigurationChanges() {
+        Configuration config = config(true);
+        ScriptMessageDecorator.RenderSettings settings = ScriptMessageDecorator.RenderSettings.of(config);
+        assertTrue(settings.sound);
+        assertSame(settings, ScriptMessageDecorator.RenderSettings.of(config));
+
+        config.set(Config.Render.Sound, Boolean.toString(false));
+        ScriptMessageDecorator.RenderSettings changed = ScriptMessageDecorator.RenderSettings.of(config);
+        assertFalse(changed.sound);
+        assertTrue(changed.speech);
+    }
+
+    @Test
+    public void testRenderSettingsAreCachedPerConfiguration() {
+        Configuration enabled = config(true);
+        Configuration disabled = config(false);
+        ScriptMessageDecorator.RenderSettings enabledSettings = ScriptMessageDecorator.RenderSettings.of(enabled);
+        ScriptMessageDecorator.RenderSettings disabledSettings = ScriptMessageDecorator.RenderSettings.of(disabled);
+        assertTrue(enabledSettings.sound);
+        assertFalse(disabledSettings.sound);
+
+        assertSame(enabledSettings, ScriptMessageDecorator.RenderSettings.of(enabled));
+        assertSame(disabledSettings, ScriptMessageDecorator.RenderSettings.of(disabled));
+    }
+
+    @Test
+    public void testDecoratorFollowsConfigurationChanges() {
+        Configuration config = config(true);
+        Actor actor = new Actor("Actor", Gender.Feminine, Locale.US);
+        Message message = new Message(actor);
+        message.add(new MessagePart(Type.Sound, "sound.wav"));
+        message.add(new MessagePart(Type.Image, "/image.jpg"));
+        message.add(new MessagePart(Type.Text, "Text."));
+        ScriptMessageDecorator decorator = new ScriptMessageDecorator(config, Message.NoImage, actor, Mood.Neutral,
+                null, text -> text, Optional.empty());
+
+        RenderedMessage rendered = RenderedMessage.of(message, decorator.messageModifiers());
+        assertTrue(rendered.contains(Type.Sound));
+        assertTrue(rendered.contains(new MessagePart(Type.Image, "/image.jpg")));
+
+        config.set(Config.Render.Sound, Boolean.toString(false));
+        config.set(Config.Render.InstructionalImages, Boolean.toString(false));
+        rendered = RenderedMessage.of(message, decorator.messageModifiers());
+        assertFalse(rendered.contains(Type.Sound));
+        assertFalse(rendered.contains(new MessagePart(Type.Image, "/image.jpg")));
+        assertTrue(rendered.contains(new MessagePart(Type.Image, Message.NoImage)));
+    }
+
+    /**
+     * Returns images in order and records the threads that select them.
+     */
+    static final class RecordingImages implements Images {
+        final List<Thread> threads = new CopyOnWriteArrayList<>();
+        int next = 0;
+
+        @Override
+        public boolean contains(String resource) {
+            return true;
+        }
+
+        @Override
+        public void hint(String... hint) {
+            threads.add(Thread.currentThread());
+        }
+
+        @Override
+        public boolean hasNext() {
+            return true;
+        }
+
+        @Override
+        public String next() {
+            threads.add(Thread.currentThread());
+            return "/actor" + next++ + ".jpg";
+        }
+    }
+
+    @Test
+    public void testPreparedDecoratorResolvesScriptStateOnTheCallingThread() throws Exception {
+        Configuration config = config(true);
+        config.set(Config.Render.Speech, Boolean.toString(false));
+        RecordingImages images = new RecordingImages();
+        Actor actor = new Actor("Actor", Gender.Feminine, Locale.US, images);
+        List<Thread> expandingThreads = new CopyOnWriteArrayList<>();
+        ScriptMessageDecorator decorator = new ScriptMessageDecorator(config, Message.ActorImage, actor, Mood.Neutral,
+                null, text -> {
+                    expandingThreads.add(Thread.currentThread());
+                    return text.replace("#name", "Slave");
+                }, Optional.empty());
+
+        Message message = new Message(actor, "Hello #name.", Message.ActorImage, "Goodbye #name.");
+        RenderedMessage.Decorator[] prepared = Arrays.stream(decorator.messageModifiers())
+                .map(modifier -> modifier.prepare(message)).toArray(RenderedMessage.Decorator[]::new);
+        assertFalse(images.threads.isEmpty());
+        assertFalse(expandingThreads.isEmpty());
+
+        ExecutorService worker = Executors.newSingleThreadExecutor();
+        try {
+            RenderedMessage rendered = worker.submit(() -> RenderedMessage.of(message, prepared)).get();
+            for (Thread thread : images.threads) {
+                assertSame(Thread.currentThread(), thread);
+            }
+            for (Thread thread : expandingThreads) {
+                assertSame(Thread.currentThread(), thread);
+            }
+
+            assertTrue(rendered.contains(new MessagePart(Type.Text, "Hello Slave.")));
+            assertTrue(rendered.contains(new MessagePart(Type.Image, "/actor0.jpg")));
+            assertTrue(rendered.contains(new MessagePart(Type.Image, "/actor1.jpg")));
+            images.next = 0;
+            assertEquals(RenderedMessage.of(message, decorator.messageModifiers()), rendered);
+        } finally {
+            worker.shutdown();
+        }
+    }
 }
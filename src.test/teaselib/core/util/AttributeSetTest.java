@@ -0,0 +1,88 @@
+package teaselib.core.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import teaselib.Body;
+import teaselib.Length;
+import teaselib.Material;
+import teaselib.Size;
+import teaselib.Toys;
+import teaselib.core.StateMaps;
+
+public class AttributeSetTest {
+    enum CaseVariants {
+        Foo,
+        FOO
+    }
+
+    @Test
+    public void testIdsOfEqualAttributesAreEqual() {
+        int id = AttributeIndex.of(Toys.Nipple_Clamps);
+        assertNotEquals(AttributeIndex.None, id);
+        assertEquals(id, AttributeIndex.of("teaselib.Toys.Nipple_Clamps"));
+        assertEquals(id, AttributeIndex.of("teaselib.toys.nipple_clamps"));
+        assertNotEquals(id, AttributeIndex.of(Toys.Gag));
+    }
+
+    @Test
+    public void testOnlyEnumerationsAndStringsAreIndexed() {
+        assertEquals(AttributeIndex.None, AttributeIndex.of(Toys.class));
+        assertEquals(AttributeIndex.None, AttributeIndex.of(QualifiedItem.of(Toys.Gag)));
+        assertEquals(AttributeIndex.None, AttributeIndex.of(Integer.valueOf(42)));
+    }
+
+    @Test
+    public void testEnumerationValuesThatDifferOnlyInCaseAreNotIndexedTwice() {
+        int foo = AttributeIndex.of(CaseVariants.Foo);
+        int FOO = AttributeIndex.of(CaseVariants.FOO);
+        assertTrue(foo == AttributeIndex.None || FOO == AttributeIndex.None);
+        assertFalse(StateMaps.hasAllAttributes(Collections.singleton(CaseVariants.Foo),
+                new Object[] { CaseVariants.FOO }));
+        assertTrue(StateMaps.hasAllAttributes(Collections.singleton(CaseVariants.FOO),
+                new Object[] { QualifiedItem.of(CaseVariants.Foo).toString() }));
+    }
+
+    @Test
+    public void testContainsAll() {
+        AttributeSet available = AttributeSet.of(Toys.Gag, Body.InMouth, Material.Rubber, "Foo.Bar");
+        assertTrue(available.containsAll(AttributeSet.of()));
+        assertTrue(available.containsAll(AttributeSet.of(Material.Rubber)));
+        assertTrue(available.containsAll(AttributeSet.of("foo.bar", "teaselib.Body.InMouth")));
+        assertTrue(available.containsAll(available));
+        assertFalse(available.containsAll(AttributeSet.of(Material.Rubber, Material.Leather)));
+        assertFalse(AttributeSet.of(Material.Rubber).containsAll(available));
+        assertTrue(available.contains(AttributeIndex.of(Toys.Gag)));
+        assertFalse(available.contains(AttributeIndex.None));
+    }
+
+    @Test
+    public void testAttributesThatCantBeIndexed() {
+        assertNull(AttributeSet.of(Toys.Gag, Toys.class));
+        assertNull(AttributeSet.of(Toys.Gag, "teaselib.Toys.Gag"));
+        assertEquals(AttributeSet.of(Size.Large, Length.Long), AttributeSet.of(Length.Long, Size.Large));
+    }
+
+    @Test
+    public void testHasAllAttributes() {
+        Set<Object> available = new HashSet<>();
+        available.add(Toys.Gag);
+        available.add("teaselib.Material.Rubber");
+        available.add(Toys.class);
+
+        assertTrue(StateMaps.hasAllAttributes(available, new Object[] {}));
+        assertTrue(StateMaps.hasAllAttributes(available, new Object[] { Toys.Gag, Material.Rubber }));
+        assertTrue(StateMaps.hasAllAttributes(available, new Object[] { "teaselib.toys.gag", Toys.class }));
+        assertFalse(StateMaps.hasAllAttributes(available, new Object[] { Toys.Gag, Material.Leather }));
+        assertFalse(StateMaps.hasAllAttributes(available, new Object[] { Body.class }));
+    }
+}
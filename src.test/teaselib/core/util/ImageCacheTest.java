@@ -0,0 +1,182 @@
+package teaselib.core.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.stream.Stream;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import teaselib.core.ResourceLoader;
+
+public class ImageCacheTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static void writeImage(File file, int width, int height) throws IOException {
+        file.getParentFile().mkdirs();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "png", file);
+    }
+
+    private static BufferedImage decode(byte[] imageBytes) throws IOException {
+        return ImageIO.read(new ByteArrayInputStream(imageBytes));
+    }
+
+    private static long cachedFiles(Path folder) throws IOException {
+        try (Stream<Path> files = Files.list(folder)) {
+            return files.count();
+        }
+    }
+
+    @Test
+    public void testLargeImagesAreDownscaledAndCached() throws IOException {
+        File assets = temporaryFolder.newFolder("assets");
+        writeImage(new File(assets, "images/large.png"), 400, 200);
+        Path cacheFolder = temporaryFolder.getRoot().toPath().resolve("cache");
+
+        try (ResourceLoader resources = new ResourceLoader(assets, "/")) {
+            ImageCache imageCache = new ImageCache(cacheFolder, 100);
+            byte[] imageBytes = imageCache.get("/images/large.png", resources);
+            BufferedImage image = decode(imageBytes);
+            assertEquals(100, image.getWidth());
+            assertEquals(50, image.getHeight());
+            assertEquals(1, cachedFiles(cacheFolder));
+
+            assertArrayEquals(imageBytes, new ImageCache(cacheFolder, 100).get("/images/large.png", resources));
+            assertEquals(1, cachedFiles(cacheFolder));
+        }
+    }
+
+    @Test
+    public void testSmallImagesAreCachedAsTheyAre() throws IOException {
+        File assets = temporaryFolder.newFolder("assets");
+        File small = new File(assets, "images/small.png");
+        writeImage(small, 40, 20);
+        Path cacheFolder = temporaryFolder.getRoot().toPath().resolve("cache");
+
+        try (ResourceLoader resources = new ResourceLoader(assets, "/")) {
+            byte[] imageBytes = new ImageCache(cacheFolder, 100).get("/images/small.png", resources);
+            assertArrayEquals(Files.readAllBytes(small.toPath()), imageBytes);
+        }
+    }
+
+    @Test
+    public void testChangedImagesAreCachedAgain() throws IOException {
+        File assets = temporaryFolder.newFolder("assets");
+        File file = new File(assets, "images/image.png");
+        writeImage(file, 400, 200);
+        Files.setLastModifiedTime(file.toPath(), FileTime.fromMillis(1000000));
+        Path cacheFolder = temporaryFolder.getRoot().toPath().resolve("cache");
+
+        try (ResourceLoader resources = new ResourceLoader(assets, "/")) {
+            ImageCache imageCache = new ImageCache(cacheFolder, 100);
+            byte[] before = imageCache.get("/images/image.png", resources);
+
+            writeImage(file, 200, 400);
+            Files.setLastModifiedTime(file.toPath(), FileTime.fromMillis(2000000));
+            byte[] after = imageCache.get("/images/image.png", resources);
+
+            assertNotEquals(decode(before).getWidth(), decode(after).getWidth());
+            assertEquals(50, decode(after).getWidth());
+            assertEquals(2, cachedFiles(cacheFolder));
+        }
+    }
+
+    @Test
+    public void testLeastRecentlyUsedImagesArePruned() throws IOException {
+        File assets = temporaryFolder.newFolder("assets");
+        for (int i = 1; i <= 3; i++) {
+            writeImage(new File(assets, "images/image" + i + ".png"), 400, 200);
+        }
+        Path cacheFolder = temporaryFolder.getRoot().toPath().resolve("cache");
+
+        try (ResourceLoader resources = new ResourceLoader(assets, "/")) {
+            long imageSize = new ImageCache(cacheFolder, 100).get("/images/image1.png", resources).length;
+            ImageCache imageCache = new ImageCache(cacheFolder, 100, 2 * imageSize);
+            imageCache.get("/images/image2.png", resources);
+            assertEquals(2, cachedFiles(cacheFolder));
+
+            try (Stream<Path> files = Files.list(cacheFolder)) {
+                files.forEach(file -> setLastModifiedTime(file, 1000000));
+            }
+            imageCache.get("/images/image1.png", resources);
+            imageCache.get("/images/image3.png", resources);
+            assertEquals(2, cachedFiles(cacheFolder));
+            try (Stream<Path> files = Files.list(cacheFolder)) {
+                assertTrue("The least recently used image hasn't been pruned",
+                        files.allMatch(file -> file.toFile().lastModified() > 1000000));
+            }
+        }
+    }
+
+    @Test
+    public void testTemporaryFilesAreNotPruned() throws IOException {
+        File assets = temporaryFolder.newFolder("assets");
+        for (int i = 1; i <= 2; i++) {
+            writeImage(new File(assets, "images/image" + i + ".png"), 400, 200);
+        }
+        Path cacheFolder = temporaryFolder.newFolder("cache").toPath();
+        Path inFlight = Files.write(cacheFolder.resolve("image.tmp"), new byte[1024 * 1024]);
+        setLastModifiedTime(inFlight, 1000000);
+
+        try (ResourceLoader resources = new ResourceLoader(assets, "/")) {
+            ImageCache imageCache = new ImageCache(cacheFolder, 100, 1024);
+            imageCache.get("/images/image1.png", resources);
+            imageCache.get("/images/image2.png", resources);
+            assertTrue(Files.exists(inFlight));
+            assertEquals(2, cachedFiles(cacheFolder));
+        }
+    }
+
+    @Test
+    public void testFailedWritesDontLeaveTemporaryFiles() throws IOException {
+        File assets = temporaryFolder.newFolder("assets");
+        writeImage(new File(assets, "images/image.png"), 400, 200);
+        Path cacheFolder = temporaryFolder.newFolder("cache").toPath();
+
+        try (ResourceLoader resources = new ResourceLoader(assets, "/")) {
+            ImageCache imageCache = new ImageCache(cacheFolder, 100);
+            byte[] imageBytes = imageCache.get("/images/image.png", resources);
+            try (Stream<Path> files = Files.list(cacheFolder)) {
+                Path cached = files.findFirst().get();
+                Files.delete(cached);
+                Files.createDirectories(cached.resolve("blocked"));
+            }
+
+            assertArrayEquals(imageBytes, imageCache.get("/images/image.png", resources));
+            assertEquals(1, cachedFiles(cacheFolder));
+        }
+    }
+
+    @Test
+    public void testCachesAreSharedPerFolder() {
+        Path cacheFolder = temporaryFolder.getRoot().toPath().resolve("cache");
+        ImageCache imageCache = ImageCache.of(cacheFolder, 100, 1024);
+        assertSame(imageCache, ImageCache.of(cacheFolder.resolve("..").resolve("cache"), 100, 1024));
+        assertNotSame(imageCache, ImageCache.of(cacheFolder, 200, 1024));
+    }
+
+    private static void setLastModifiedTime(Path file, long millis) {
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(millis));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
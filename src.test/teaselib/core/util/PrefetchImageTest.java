@@ -0,0 +1,36 @@
+package teaselib.core.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import org.junit.Test;
+
+import teaselib.test.TestScript;
+
+public class PrefetchImageTest {
+    @Test
+    public void testPrefetchedImagesMatchResourceContent() throws Exception {
+        TestScript script = TestScript.getOne();
+        script.resources.addAssets("/teaselib/core/UnpackResourcesTestData_flat.zip");
+
+        List<String> images = script.resources("/UnpackResourcesTestData/images/*");
+        assertEquals(6, images.size());
+        for (String image : images) {
+            byte[] prefetched = new PrefetchImage(image, script.resources, script.teaseLib.config).call();
+            assertArrayEquals(image, content(script, image), prefetched);
+        }
+    }
+
+    private static byte[] content(TestScript script, String path) throws IOException {
+        try (InputStream inputStream = script.resources.get(path);
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();) {
+            Stream.copy(inputStream, bytes);
+            return bytes.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package teaselib.core.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import teaselib.core.concurrency.NamedExecutorService;
+
+public class PrefetcherTest {
+    private final ExecutorService executor = NamedExecutorService.singleThreadedQueue(getClass().getSimpleName());
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @After
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private void add(Prefetcher<byte[]> prefetcher, String key, int size) {
+        prefetcher.add(key, () -> {
+            loads.incrementAndGet();
+            return new byte[size];
+        });
+    }
+
+    @Test
+    public void testLeastRecentlyUsedResourcesAreEvicted() throws IOException, InterruptedException {
+        Prefetcher<byte[]> prefetcher = new Prefetcher<>(executor, bytes -> bytes.length, 300, 1);
+        add(prefetcher, "a", 100);
+        add(prefetcher, "b", 100);
+        add(prefetcher, "c", 100);
+        add(prefetcher, "d", 100);
+
+        assertEquals(100, prefetcher.get("a").length);
+        assertEquals(100, prefetcher.get("b").length);
+        assertEquals(100, prefetcher.get("c").length);
+        assertEquals(100, prefetcher.get("a").length);
+        assertEquals(100, prefetcher.get("d").length);
+
+        Prefetcher.Statistics statistics = prefetcher.statistics();
+        assertEquals(1, statistics.hits);
+        assertEquals(4, statistics.misses);
+        assertEquals(1, statistics.evictions);
+        assertEquals(300, statistics.weight);
+        assertEquals(4, loads.get());
+
+        assertEquals(100, prefetcher.get("b").length);
+        assertEquals(5, loads.get());
+        assertEquals(2, prefetcher.statistics().evictions);
+        assertTrue(prefetcher.statistics().weight <= 300);
+    }
+
+    @Test
+    public void testLookaheadPrefetchesInOrder() throws IOException, InterruptedException {
+        Prefetcher<byte[]> prefetcher = new Prefetcher<>(executor, bytes -> bytes.length, Long.MAX_VALUE, 2);
+        List<String> order = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            String key = "r" + i;
+            prefetcher.add(key, () -> {
+                order.add(key);
+                return new byte[1];
+            });
+        }
+        prefetcher.fetch();
+
+        for (int i = 0; i < 5; i++) {
+            prefetcher.get("r" + i);
+        }
+
+        assertEquals(Arrays.asList("r0", "r1", "r2", "r3", "r4"), order);
+        assertEquals(5, prefetcher.statistics().hits);
+        assertEquals(0, prefetcher.statistics().misses);
+    }
+
+    @Test
+    public void testRetainCancelsStalePrefetches() throws IOException, InterruptedException {
+        Prefetcher<byte[]> prefetcher = new Prefetcher<>(executor, bytes -> bytes.length, Long.MAX_VALUE, 1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch blocked = new CountDownLatch(1);
+        AtomicBoolean interrupted = new AtomicBoolean(false);
+        prefetcher.add("a", () -> {
+            loads.incrementAndGet();
+            started.countDown();
+            try {
+                blocked.await();
+            } catch (InterruptedException e) {
+                interrupted.set(true);
+                throw e;
+            }
+            return new byte[1];
+        });
+        add(prefetcher, "b", 2);
+        add(prefetcher, "c", 3);
+        prefetcher.fetch();
+        started.await();
+
+        prefetcher.retain(Collections.singleton("c"));
+        blocked.countDown();
+        assertEquals(3, prefetcher.get("c").length);
+        assertFalse(interrupted.get());
+        assertEquals(1, prefetcher.statistics().hits);
+        assertEquals(2, loads.get());
+
+        assertEquals(1, prefetcher.get("a").length);
+        assertEquals(2, prefetcher.get("b").length);
+        assertEquals(2, prefetcher.statistics().misses);
+    }
+
+    @Test
+    public void testEvictedResourcesLeaveTheLookaheadWindow() throws IOException, InterruptedException {
+        Prefetcher<byte[]> prefetcher = new Prefetcher<>(executor, bytes -> bytes.length, 100, 2);
+        add(prefetcher, "a", 100);
+        add(prefetcher, "b", 100);
+        add(prefetcher, "c", 100);
+        prefetcher.fetch();
+
+        long timeout = System.currentTimeMillis() + 5000;
+        while (loads.get() < 3 && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        assertEquals(3, loads.get());
+        assertEquals(100, prefetcher.get("c").length);
+        assertEquals(1, prefetcher.statistics().hits);
+    }
+
+    @Test
+    public void testUnboundedPrefetcherKeepsEverything() throws IOException, InterruptedException {
+        Prefetcher<byte[]> prefetcher = new Prefetcher<>(executor);
+        for (int i = 0; i < 10; i++) {
+            add(prefetcher, Integer.toString(i), 1000);
+        }
+        for (int i = 0; i < 10; i++) {
+            prefetcher.get(Integer.toString(i));
+        }
+        for (int i = 0; i < 10; i++) {
+            prefetcher.get(Integer.toString(i));
+        }
+
+        Prefetcher.Statistics statistics = prefetcher.statistics();
+        assertEquals(10, statistics.hits);
+        assertEquals(10, statistics.misses);
+        assertEquals(0, statistics.evictions);
+        assertEquals(10, loads.get());
+    }
+}
@@ -18,6 +18,15 @@ public class QualifiedItemTest {
         One;
     }
 
+    enum TestEnumWithBody {
+        One {
+            @Override
+            public String toString() {
+                return "1";
+            }
+        };
+    }
+
     @Test
     public void testEnum() {
         TestEnum testEnum = TestEnum.One;
@@ -94,4 +103,31 @@ public class QualifiedItemTest {
         // Always wrap strings into qualified items when dealing with state in the core
         assertEquals(QualifiedItem.of(expected), actual);
     }
+
+    @Test
+    public void testInterning() {
+        assertSame(QualifiedItem.of(TestEnum.One), QualifiedItem.of(TestEnum.One));
+        assertSame(QualifiedItem.of(TestEnumWithBody.One), QualifiedItem.of(TestEnumWithBody.One));
+        assertSame(QualifiedItem.of("teaselib.Material.Metal"), QualifiedItem.of("teaselib.Material.Metal"));
+
+        QualifiedItem one = new QualifiedEnum(TestEnum.One);
+        assertNotSame(one, QualifiedItem.of(TestEnum.One));
+        assertEquals(one, QualifiedItem.of(TestEnum.One));
+        assertEquals(one.hashCode(), QualifiedItem.of(TestEnum.One).hashCode());
+        assertNotEquals(QualifiedItem.of(TestEnum.One), QualifiedItem.of(TestEnumWithBody.One));
+    }
+
+    @Test
+    public void testLookupKeys() {
+        QualifiedItem metal = QualifiedItem.of(Material.Metal);
+        assertEquals("teaselib.material", metal.namespaceKey());
+        assertEquals("metal", metal.nameKey());
+        assertSame(metal.nameKey(), metal.nameKey());
+
+        QualifiedItem metalString = QualifiedItem.of("teaselib.MATERIAL.Metal");
+        assertEquals(metal.namespaceKey(), metalString.namespaceKey());
+        assertEquals(metal.nameKey(), metalString.nameKey());
+        assertEquals(metal, metalString);
+        assertEquals(metal.hashCode(), metalString.hashCode());
+    }
 }
@@ -0,0 +1,98 @@
+package teaselib.core.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+public class TraceTest {
+
+    private static String write(Trace trace) throws IOException {
+        StringWriter writer = new StringWriter();
+        trace.write(writer);
+        return writer.toString();
+    }
+
+    private static int count(String text, String pattern) {
+        Matcher matcher = Pattern.compile(pattern).matcher(text);
+        int count = 0;
+        while (matcher.find()) {
+            count++;
+        }
+        return count;
+    }
+
+    @Test
+    public void testDisabledTracingDoesNotAllocateSpans() {
+        Assume.assumeFalse(Trace.Enabled);
+        assertSame(Trace.span("say"), Trace.span("show", "detail"));
+        assertSame(Trace.span("say"), Trace.span(TraceTest.class));
+    }
+
+    @Test
+    public void testSpansAreWrittenAsCompleteEventsInOneLanePerThread() throws Exception {
+        Trace trace = new Trace(Trace.DefaultCapacity);
+        try (Trace.Span span = trace.start("say", null)) {
+            try (Trace.Span nested = trace.start(TraceTest.class, "\"quoted\"")) {
+                // Nested span
+            }
+        }
+        Thread thread = new Thread(() -> {
+            try (Trace.Span span = trace.start("render", null)) {
+                // Span on another thread
+            }
+        }, "Render thread");
+        thread.start();
+        thread.join();
+
+        assertEquals(3, trace.size());
+        String timeline = write(trace);
+        assertTrue(timeline.startsWith("{\"displayTimeUnit\":\"ms\",\"traceEvents\":["));
+        assertEquals(3, count(timeline, "\"ph\":\"X\""));
+        assertEquals(2, count(timeline, "\"name\":\"thread_name\""));
+        assertTrue(timeline.contains("\"args\":{\"name\":\"Render thread\"}"));
+        assertTrue(timeline.contains("\"name\":\"TraceTest\""));
+        assertTrue(timeline.contains("\"args\":{\"detail\":\"\\\"quoted\\\"\"}"));
+        assertTrue(timeline.contains("\"tid\":" + thread.getId() + ","));
+    }
+
+    @Test
+    public void testTraceIsBounded() throws IOException {
+        Trace trace = new Trace(2);
+        for (int i = 0; i < 5; i++) {
+            trace.start("span", i).close();
+        }
+
+        assertEquals(2, trace.size());
+        assertEquals(3, trace.dropped());
+        String timeline = write(trace);
+        assertEquals(2, count(timeline, "\"ph\":\"X\""));
+        assertTrue(timeline.contains("\"otherData\":{\"dropped\":3}"));
+        assertFalse(timeline.contains("\"detail\":\"2\""));
+    }
+
+    @Test
+    public void testWritingClearsTheRecording() throws IOException {
+        Trace trace = new Trace(2);
+        for (int i = 0; i < 3; i++) {
+            trace.start("span", i).close();
+        }
+        write(trace);
+        assertEquals(0, trace.size());
+        assertEquals(0, trace.dropped());
+
+        trace.start("next", null).close();
+        String timeline = write(trace);
+        assertEquals(1, count(timeline, "\"ph\":\"X\""));
+        assertTrue(timeline.contains("\"name\":\"next\""));
+        assertTrue(timeline.contains("\"otherData\":{\"dropped\":0}"));
+    }
+}
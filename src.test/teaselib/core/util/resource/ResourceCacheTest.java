@@ -1,13 +1,28 @@
 package teaselib.core.util.resource;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
 
 import org.junit.Test;
 import org.slf4j.Logger;
@@ -98,6 +113,305 @@ public class ResourceCacheTest {
         print(resourceCache.get(WildcardPattern.compile("*.txt")));
     }
 
+    @Test
+    public void testLazyEnumerationMatchesEagerEnumeration() throws IOException {
+        try (ResourceCache eager = new ResourceCache();
+                ResourceCache lazy = new ResourceCache(ResourceCache.Enumeration.Lazy, null);) {
+            eager.add(locationOfFlatResourceArchive());
+            eager.add(new FolderLocation(Paths.get("bin.test/"), Paths.get("teaselib/core/util/")));
+
+            lazy.add(locationOfFlatResourceArchive());
+            lazy.add(new FolderLocation(Paths.get("bin.test/"), Paths.get("teaselib/core/util/")));
+
+            assertTrue(lazy.has("/teaselib/core/util/bar.txt"));
+            try (InputStream is = lazy.get("/UnpackResourcesTestData/resource1.txt");) {
+                assertNotNull(is);
+            }
+
+            for (String pattern : new String[] { "/teaselib/core/util/*bar.txt", "/UnpackResourcesTestData/*",
+                    "/teaselib/core/util/Foo?.txt", "*.txt", "*" }) {
+                assertEquals(pattern, sorted(eager.get(WildcardPattern.compile(pattern))),
+                        sorted(lazy.get(WildcardPattern.compile(pattern))));
+            }
+        }
+    }
+
+    @Test
+    public void testLaterLocationsOverrideResourcesInBothEnumerationModes() throws IOException {
+        Path folder = Files.createTempDirectory("ResourceCacheTest");
+        try {
+            for (String name : new String[] { "first", "second" }) {
+                Path resource = folder.resolve(name).resolve("overlay").resolve("resource.txt");
+                Files.createDirectories(resource.getParent());
+                Files.write(resource, name.getBytes());
+            }
+
+            for (ResourceCache.Enumeration enumeration : ResourceCache.Enumeration.values()) {
+                try (ResourceCache resourceCache = new ResourceCache(enumeration, null);) {
+                    resourceCache.add(new FolderLocation(folder.resolve("first"), Paths.get("overlay")));
+                    resourceCache.add(new FolderLocation(folder.resolve("second"), Paths.get("overlay")));
+
+                    assertEquals(enumeration.name(), "second",
+                            new String(bytes(resourceCache.get("/overlay/resource.txt"))));
+                    assertEquals(enumeration.name(), 2,
+                            resourceCache.get(WildcardPattern.compile("/overlay/*.txt")).size());
+                }
+            }
+        } finally {
+            Files.walk(folder).sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testLazyEnumerationWritesAndReadsManifest() throws IOException {
+        Path manifests = Files.createTempDirectory("ResourceCacheTest");
+        try {
+            ZipLocation zip = locationOfHierarcalResourceArchive();
+            Path manifest = ResourceManifest.path(manifests, zip.root());
+
+            List<String> resources;
+            try (ResourceCache first = new ResourceCache(ResourceCache.Enumeration.Lazy, manifests);) {
+                first.add(zip);
+                assertFalse(Files.exists(manifest));
+                resources = first.get(WildcardPattern.compile("*"));
+                assertTrue(Files.exists(manifest));
+            }
+
+            Optional<List<String>> listed = ResourceManifest.read(manifest, zip.root(), zip.project());
+            assertTrue(listed.isPresent());
+            assertEquals(sorted(resources), sorted(listed.get()));
+            assertFalse(ResourceManifest.read(manifest, zip.root(), Paths.get("other")).isPresent());
+
+            try (ResourceCache second = new ResourceCache(ResourceCache.Enumeration.Lazy, manifests);) {
+                second.add(locationOfHierarcalResourceArchive());
+                assertEquals(resources, second.get(WildcardPattern.compile("*")));
+                try (InputStream is = second.get("/teaselib/core/UnpackResourcesTestData/resource1.txt");) {
+                    assertNotNull(is);
+                }
+            }
+        } finally {
+            Files.walk(manifests).sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testLocationsAreSharedBetweenCaches() throws IOException {
+        ZipLocation zip = locationOfFlatResourceArchive();
+        ResourceCache.Enumeration lazy = ResourceCache.Enumeration.Lazy;
+        assertEquals(0, SharedResourceLocations.references(zip, lazy));
+
+        try (ResourceCache first = new ResourceCache(lazy, null);) {
+            first.add(zip);
+            assertEquals(1, SharedResourceLocations.references(zip, lazy));
+
+            try (ResourceCache second = new ResourceCache(lazy, null);) {
+                second.add(locationOfFlatResourceArchive());
+                assertEquals(2, SharedResourceLocations.references(zip, lazy));
+
+                List<String> resources = first.get(WildcardPattern.compile("*.jpg"));
+                assertFalse(resources.isEmpty());
+                assertEquals(resources, second.get(WildcardPattern.compile("*.jpg")));
+                try (InputStream is = second.get(resources.get(0));) {
+                    assertNotNull(is);
+                }
+            }
+
+            assertEquals(1, SharedResourceLocations.references(zip, lazy));
+            try (InputStream is = first.get("/UnpackResourcesTestData/resource1.txt");) {
+                assertNotNull(is);
+            }
+        }
+
+        assertEquals(0, SharedResourceLocations.references(zip, lazy));
+    }
+
+    @Test
+    public void testUnpackingIntoSharedFolderListsItAgain() throws IOException {
+        Path folder = Files.createTempDirectory("ResourceCacheTest");
+        try {
+            Path assets = Files.createDirectories(folder.resolve("assets"));
+            Path unpacked = Files.createDirectories(folder.resolve("unpacked"));
+            Files.createDirectories(assets.resolve("shared"));
+            Files.createDirectories(unpacked.resolve("shared"));
+            Files.write(unpacked.resolve("shared").resolve("first.txt"), new byte[] { 1 });
+            Files.write(assets.resolve("shared").resolve("second.txt"), new byte[] { 2 });
+            ResourceCache.Enumeration lazy = ResourceCache.Enumeration.Lazy;
+
+            try (ResourceCache first = new ResourceCache(lazy, null);
+                    ResourceCache second = new ResourceCache(lazy, null);
+                    ResourceCache resources = new ResourceCache(lazy, null);) {
+                first.add(new FolderLocation(unpacked, Paths.get("shared")));
+                second.add(new FolderLocation(unpacked, Paths.get("shared")));
+                resources.add(new FolderLocation(assets, Paths.get("shared")));
+                assertEquals(1, first.get(WildcardPattern.compile("/shared/*")).size());
+                assertFalse(second.has("/shared/second.txt"));
+
+                ResourceUnpacker unpacker = new ResourceUnpacker(resources, unpacked,
+                        folder.resolve("unpacked.manifest"));
+                assertTrue(unpacker.unpack("/shared/second.txt", unpacked.resolve("shared").resolve("second.txt")));
+                assertTrue(first.has("/shared/second.txt"));
+                assertTrue(second.has("/shared/second.txt"));
+
+                assertTrue(unpacker.prune(unpacked.resolve("shared").resolve("second.txt")));
+                assertFalse(first.has("/shared/second.txt"));
+            }
+        } finally {
+            Files.walk(folder).sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testDuplicateLocationsAreClosed() throws IOException {
+        ZipLocation zip = locationOfHierarcalResourceArchive();
+        ZipLocation duplicate = locationOfHierarcalResourceArchive();
+        ResourceCache.Enumeration lazy = ResourceCache.Enumeration.Lazy;
+        assertEquals(0, SharedResourceLocations.references(zip, lazy));
+
+        try (ResourceCache first = new ResourceCache(lazy, null);
+                ResourceCache second = new ResourceCache(lazy, null);) {
+            first.add(zip);
+            duplicate.resources();
+            assertTrue(duplicate.isOpen());
+            second.add(duplicate);
+            assertEquals(2, SharedResourceLocations.references(zip, lazy));
+            assertFalse(duplicate.isOpen());
+            assertTrue(zip.isOpen());
+        }
+        assertFalse(zip.isOpen());
+    }
+
+    @Test
+    public void testBufferMatchesStream() throws IOException {
+        try (ResourceCache resourceCache = new ResourceCache(ResourceCache.Enumeration.Lazy, null);) {
+            resourceCache.add(locationOfFlatResourceArchive());
+            resourceCache.add(new FolderLocation(Paths.get("bin.test/"), Paths.get("teaselib/core/")));
+
+            for (String resource : resourceCache.get(WildcardPattern.compile("*"))) {
+                byte[] content = bytes(resourceCache.get(resource));
+                assertEquals(resource, ByteBuffer.wrap(content), resourceCache.buffer(resource));
+                assertArrayEquals(resource, content, resourceCache.bytes(resource));
+            }
+        }
+    }
+
+    @Test
+    public void testZipFingerprintsAreEntrySizeAndCrc() throws IOException {
+        try (ResourceCache resourceCache = new ResourceCache(ResourceCache.Enumeration.Lazy, null);) {
+            resourceCache.add(locationOfFlatResourceArchive());
+
+            for (String resource : resourceCache.get(WildcardPattern.compile("/UnpackResourcesTestData/*"))) {
+                byte[] content = bytes(resourceCache.get(resource));
+                CRC32 crc = new CRC32();
+                crc.update(content);
+                assertEquals(resource, content.length + ":" + Long.toHexString(crc.getValue()),
+                        resourceCache.fingerprint(resource));
+            }
+        }
+    }
+
+    @Test
+    public void testStoredZipEntriesAreReadDirectly() throws IOException {
+        Path folder = Files.createTempDirectory("ResourceCacheTest");
+        Path zip = folder.resolve("stored.zip");
+        try {
+            byte[] content = new byte[100000];
+            for (int i = 0; i < content.length; i++) {
+                content[i] = (byte) i;
+            }
+            try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip))) {
+                ZipEntry stored = new ZipEntry("folder/stored.bin");
+                stored.setMethod(ZipEntry.STORED);
+                stored.setSize(content.length);
+                CRC32 crc = new CRC32();
+                crc.update(content);
+                stored.setCrc(crc.getValue());
+                out.putNextEntry(stored);
+                out.write(content);
+                out.closeEntry();
+
+                out.putNextEntry(new ZipEntry("folder/deflated.bin"));
+                out.write(content);
+                out.closeEntry();
+            }
+
+            try (ZipLocation location = new ZipLocation(zip, Paths.get(""))) {
+                ByteBuffer stored = location.buffer("/folder/stored.bin");
+                assertTrue(stored.isDirect());
+                assertTrue(stored.isReadOnly());
+                assertEquals(ByteBuffer.wrap(content), stored);
+
+                ByteBuffer deflated = location.buffer("/folder/deflated.bin");
+                assertFalse(deflated.isDirect());
+                assertEquals(ByteBuffer.wrap(content), deflated);
+            }
+        } finally {
+            Files.deleteIfExists(zip);
+            Files.deleteIfExists(folder);
+        }
+    }
+
+    @Test
+    public void testCorruptStoredZipEntriesAreRejected() throws IOException {
+        Path folder = Files.createTempDirectory("ResourceCacheTest");
+        Path zip = folder.resolve("corrupt.zip");
+        try {
+            byte[] content = new byte[1000];
+            try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip))) {
+                ZipEntry stored = new ZipEntry("stored.bin");
+                stored.setMethod(ZipEntry.STORED);
+                stored.setSize(content.length);
+                CRC32 crc = new CRC32();
+                crc.update(content);
+                stored.setCrc(crc.getValue());
+                out.putNextEntry(stored);
+                out.write(content);
+                out.closeEntry();
+            }
+
+            byte[] archive = Files.readAllBytes(zip);
+            archive[0] = 0;
+            Files.write(zip, archive);
+            try (ZipLocation location = new ZipLocation(zip, Paths.get(""))) {
+                location.buffer("/stored.bin");
+                fail("Corrupt local header not detected");
+            } catch (ZipException e) {
+                logger.info(e.getMessage());
+            }
+
+            Files.write(zip, Arrays.copyOf(archive, archive.length - 10));
+            try (ZipLocation location = new ZipLocation(zip, Paths.get(""))) {
+                location.buffer("/stored.bin");
+                fail("Truncated archive not detected");
+            } catch (ZipException e) {
+                logger.info(e.getMessage());
+            }
+        } finally {
+            Files.deleteIfExists(zip);
+            Files.deleteIfExists(folder);
+        }
+    }
+
+    private static byte[] bytes(InputStream inputStream) throws IOException {
+        try (InputStream is = inputStream; ByteArrayOutputStream bytes = new ByteArrayOutputStream()) {
+            copy(is, bytes);
+            return bytes.toByteArray();
+        }
+    }
+
+    private static void copy(InputStream inputStream, OutputStream outputStream) throws IOException {
+        byte[] buffer = new byte[8192];
+        int bytesRead;
+        while ((bytesRead = inputStream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, bytesRead);
+        }
+    }
+
+    private static List<String> sorted(List<String> list) {
+        List<String> sorted = new ArrayList<>(list);
+        sorted.sort(String::compareTo);
+        return sorted;
+    }
+
     private static void print(List<String> list) {
         for (String string : list) {
             logger.info(string);
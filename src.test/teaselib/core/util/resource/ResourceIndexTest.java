@@ -0,0 +1,162 @@
+package teaselib.core.util.resource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import teaselib.core.util.WildcardPattern;
+
+public class ResourceIndexTest {
+
+    static final class TestLocation implements ResourceLocation {
+        final List<String> resources;
+
+        TestLocation(List<String> resources) {
+            this.resources = resources;
+        }
+
+        @Override
+        public Path root() {
+            return Paths.get("");
+        }
+
+        @Override
+        public Path project() {
+            return Paths.get("");
+        }
+
+        @Override
+        public List<String> resources() {
+            return resources;
+        }
+
+        @Override
+        public List<String> list(String folder) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public InputStream get(String resource) {
+            return null;
+        }
+
+        @Override
+        public ByteBuffer buffer(String resource) {
+            return null;
+        }
+
+        @Override
+        public String fingerprint(String resource) {
+            return null;
+        }
+
+        @Override
+        public void close() {
+            // Ignore
+        }
+    }
+
+    private static final List<String> paths = Arrays.asList( //
+            "/teaselib/core/util/bar.txt", //
+            "/teaselib/core/util/Foo.txt", //
+            "/teaselib/core/util/images/image1.jpg", //
+            "/teaselib/core/util/images/image2.jpg", //
+            "/teaselib/core/util/images/image3.png", //
+            "/teaselib/core/util/sounds/sound1.mp3", //
+            "/teaselib/core/util/images.txt", //
+            "/teaselib/core/video.mp4", //
+            "/other/images/image1.jpg", //
+            "/other/noextension", //
+            "/other/dotted.folder/file");
+
+    private static ResourceIndex index() {
+        return ResourceIndex.of(new TestLocation(paths), paths);
+    }
+
+    private static List<String> bruteForce(Pattern pattern) {
+        List<String> resources = new ArrayList<>();
+        for (String path : paths) {
+            if (pattern.matcher(path).matches()) {
+                resources.add(path);
+            }
+        }
+        return resources;
+    }
+
+    private static void assertSameAsBruteForce(ResourceIndex index, Pattern pattern) throws IOException {
+        assertEquals(pattern.pattern(), bruteForce(pattern), index.get(pattern));
+    }
+
+    @Test
+    public void testQueryAnalysis() {
+        ResourceIndex.Query folder = ResourceIndex.Query.of(WildcardPattern.compile("/teaselib/core/*.jpg"));
+        assertNotNull(folder);
+        assertEquals("/teaselib/core/", folder.prefix);
+        assertEquals(".jpg", folder.suffix);
+        assertFalse(folder.isLiteral());
+
+        ResourceIndex.Query literal = ResourceIndex.Query.of(WildcardPattern.compile("/teaselib/core/util/bar.txt"));
+        assertNotNull(literal);
+        assertTrue(literal.isLiteral());
+        assertEquals("/teaselib/core/util/bar.txt", literal.prefix);
+
+        ResourceIndex.Query quoted = ResourceIndex.Query.of(Pattern.compile(Pattern.quote("/a.b") + ".*"));
+        assertNotNull(quoted);
+        assertEquals("/a.b", quoted.prefix);
+
+        assertNull(ResourceIndex.Query.of(Pattern.compile("/teaselib/.*\\.(jpg|png)")));
+        assertNull(ResourceIndex.Query.of(Pattern.compile("/teaselib/core/util/[a-z]+\\.txt")));
+        assertNull(ResourceIndex.Query.of(Pattern.compile("/teaselib/core/util/bar\\d?\\.txt")));
+        assertNull(ResourceIndex.Query.of(Pattern.compile("/teaselib/core/util/ba?r.txt")));
+        assertNull(ResourceIndex.Query.of(Pattern.compile(".*bar.txt", Pattern.CASE_INSENSITIVE)));
+    }
+
+    @Test
+    public void testIndexedLookupMatchesBruteForce() throws IOException {
+        ResourceIndex index = index();
+        for (String wildcard : Arrays.asList( //
+                "*", "/*", "*.jpg", "*.txt", "*.TXT", "*image?.jpg", "*images*", //
+                "/teaselib/core/util/*", "/teaselib/core/util/images/*.jpg", "/teaselib/core/util/images*", //
+                "/teaselib/core/*.mp?", "/other/*", "/other/*file", "/other/dotted.*", "*noextension", //
+                "/teaselib/core/util/bar.txt", "/teaselib/core/util/missing.txt", "/teaselib/?ore/video.mp4", //
+                "*util/Foo.txt", "/teaselib/core/util/images/image1.jpg")) {
+            assertSameAsBruteForce(index, WildcardPattern.compile(wildcard));
+        }
+    }
+
+    @Test
+    public void testFallbackMatchesBruteForce() throws IOException {
+        ResourceIndex index = index();
+        for (String regex : Arrays.asList( //
+                "/teaselib/.*\\.(jpg|png)", "/teaselib/core/util/[a-z]+\\.txt", ".*image\\d\\.jpg", ".*\\.mp.")) {
+            assertSameAsBruteForce(index, Pattern.compile(regex));
+        }
+    }
+
+    @Test
+    public void testRegistrationOrderIsPreserved() throws IOException {
+        ResourceIndex index = new ResourceIndex(new TestLocation(paths));
+        index.add("/b/image2.jpg");
+        index.add("/a/image1.jpg");
+        index.add("/b/image1.jpg");
+
+        assertEquals(Arrays.asList("/b/image2.jpg", "/a/image1.jpg", "/b/image1.jpg"),
+                index.get(WildcardPattern.compile("*.jpg")));
+        assertEquals(Arrays.asList("/b/image2.jpg", "/b/image1.jpg"),
+                index.get(WildcardPattern.compile("/b/*.jpg")));
+    }
+}
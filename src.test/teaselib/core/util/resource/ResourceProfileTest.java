@@ -0,0 +1,146 @@
+package teaselib.core.util.resource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import teaselib.Config;
+import teaselib.core.ResourceLoader;
+import teaselib.core.ResourceLoaderTest;
+import teaselib.core.util.QualifiedItem;
+import teaselib.core.util.ReflectionUtils;
+import teaselib.core.util.Stream;
+
+public class ResourceProfileTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static final String packagePath = ReflectionUtils.packagePath(ResourceLoaderTest.class);
+
+    private static final String resource1 = "/UnpackResourcesTestData/resource1.txt";
+    private static final String image = "/UnpackResourcesTestData/images/marquis1.jpg";
+
+    private ResourceCache flatResourceArchive() throws IOException {
+        ResourceCache resourceCache = new ResourceCache();
+        resourceCache.startProfiling();
+        resourceCache.add(new ZipLocation(ResourceLoader.getProjectPath(getClass()).toPath()
+                .resolve(packagePath + "UnpackResourcesTestData_flat.zip"), Paths.get("")));
+        return resourceCache;
+    }
+
+    private static long read(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Stream.copy(inputStream, bytes);
+        return bytes.size();
+    }
+
+    @Test
+    public void testAccessesAndBytesAreRecorded() throws IOException {
+        try (ResourceCache resourceCache = flatResourceArchive()) {
+            long size;
+            try (InputStream inputStream = resourceCache.get(resource1)) {
+                size = read(inputStream);
+            }
+            try (InputStream inputStream = resourceCache.get(resource1)) {
+                read(inputStream);
+            }
+            ByteBuffer buffer = resourceCache.buffer(image);
+            assertNull(resourceCache.get("/UnpackResourcesTestData/missing.txt"));
+
+            ResourceProfile profile = resourceCache.profile();
+            assertEquals(2, profile.accesses(resource1));
+            assertEquals(2 * size, profile.bytes(resource1));
+            assertEquals(1, profile.accesses(image));
+            assertEquals(buffer.remaining(), profile.bytes(image));
+            assertEquals(1, profile.misses("/UnpackResourcesTestData/missing.txt"));
+            assertEquals(Arrays.asList(resource1, image), profile.hotSet());
+        }
+    }
+
+    @Test
+    public void testReportListsMostFrequentlyAccessedResourcesFirst() throws IOException {
+        try (ResourceCache resourceCache = flatResourceArchive()) {
+            resourceCache.buffer(image);
+            resourceCache.buffer(resource1);
+            resourceCache.buffer(resource1);
+
+            StringWriter report = new StringWriter();
+            resourceCache.profile().write(report);
+            List<String> lines = Arrays.asList(report.toString().split("\n"));
+            assertEquals(4, lines.size());
+            assertTrue(lines.get(0).startsWith("#"));
+            assertTrue(lines.get(1).startsWith("#"));
+
+            String[] columns = lines.get(2).split("\t");
+            assertEquals(7, columns.length);
+            assertEquals(resource1, columns[0]);
+            assertEquals("zip", columns[1]);
+            assertEquals("2", columns[2]);
+            assertEquals("0", columns[3]);
+            assertEquals(2, Arrays.stream(columns[6].split(",")).mapToLong(Long::parseLong).sum());
+            assertTrue(lines.get(3).startsWith(image + "\tzip\t1\t"));
+        }
+    }
+
+    @Test
+    public void testProfilingIsDisabledByDefault() throws IOException {
+        try (ResourceCache resourceCache = new ResourceCache()) {
+            assertNull(resourceCache.profile());
+            assertNull(resourceCache.get(resource1));
+        }
+    }
+
+    @Test
+    public void testResourceLoaderWritesProfileOnClose() throws IOException {
+        File folder = temporaryFolder.newFolder("assets");
+        Files.write(folder.toPath().resolve("resource.txt"), "content".getBytes(StandardCharsets.UTF_8));
+        String property = QualifiedItem.of(Config.Debug.ProfileResources).toString();
+
+        try (ResourceLoader resources = new ResourceLoader(folder, "/")) {
+            assertNull(resources.profile());
+        }
+        assertFalse(new File(new File(folder, ResourceLoader.CacheFolder), "profile").exists());
+
+        System.setProperty(property, Boolean.toString(true));
+        try {
+            try (ResourceLoader resources = new ResourceLoader(folder, "/")) {
+                try (InputStream inputStream = resources.get("/resource.txt")) {
+                    read(inputStream);
+                }
+                assertEquals(1, resources.profile().accesses("/resource.txt"));
+            }
+        } finally {
+            System.clearProperty(property);
+        }
+        Path report = new File(new File(folder, ResourceLoader.CacheFolder), "profile/resources.tsv").toPath();
+        assertTrue(Files.readAllLines(report, StandardCharsets.UTF_8).get(2).startsWith("/resource.txt\tfolder\t1\t"));
+    }
+
+    @Test
+    public void testHistogramBuckets() {
+        assertEquals(0, ResourceProfile.bucket(999));
+        assertEquals(1, ResourceProfile.bucket(1000));
+        assertEquals(2, ResourceProfile.bucket(2000));
+        assertEquals(2, ResourceProfile.bucket(3999));
+        assertEquals(3, ResourceProfile.bucket(4000));
+        assertEquals(ResourceProfile.Buckets - 1, ResourceProfile.bucket(Long.MAX_VALUE));
+    }
+}
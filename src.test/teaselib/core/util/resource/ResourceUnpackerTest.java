@@ -0,0 +1,150 @@
+package teaselib.core.util.resource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ResourceUnpackerTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static void write(Path file, String content, long lastModified) throws IOException {
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(lastModified));
+    }
+
+    private static ResourceCache resources(Path assets) throws IOException {
+        ResourceCache resources = new ResourceCache();
+        resources.add(new FolderLocation(assets));
+        return resources;
+    }
+
+    private static String read(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testOnlyNewAndChangedResourcesAreWritten() throws IOException {
+        Path assets = temporaryFolder.newFolder("assets").toPath();
+        Path target = temporaryFolder.newFolder("unpacked").toPath().resolve("resource1.txt");
+        Path manifest = temporaryFolder.getRoot().toPath().resolve("unpacked.manifest");
+        write(assets.resolve("resource1.txt"), "1", 1000000);
+        ResourceCache resources = resources(assets);
+
+        ResourceUnpacker unpacker = new ResourceUnpacker(resources, target.getParent(), manifest);
+        assertTrue(unpacker.unpack("/resource1.txt", target));
+        assertFalse(unpacker.unpack("/resource1.txt", target));
+        unpacker.save();
+        assertEquals("1", read(target));
+
+        ResourceUnpacker restarted = new ResourceUnpacker(resources, target.getParent(), manifest);
+        assertFalse(restarted.unpack("/resource1.txt", target));
+        assertTrue(restarted.isUnpacked(target));
+
+        write(assets.resolve("resource1.txt"), "1", 2000000);
+        assertFalse(restarted.unpack("/resource1.txt", target));
+
+        write(assets.resolve("resource1.txt"), "2", 3000000);
+        assertTrue(restarted.unpack("/resource1.txt", target));
+        assertEquals("2", read(target));
+    }
+
+    @Test
+    public void testTemporaryFilesAreRemoved() throws IOException {
+        Path assets = temporaryFolder.newFolder("assets").toPath();
+        Path target = temporaryFolder.newFolder("unpacked").toPath().resolve("resource1.txt");
+        Path manifest = temporaryFolder.getRoot().toPath().resolve("unpacked.manifest");
+        write(assets.resolve("resource1.txt"), "1", 1000000);
+
+        ResourceUnpacker unpacker = new ResourceUnpacker(resources(assets), target.getParent(), manifest);
+        assertTrue(unpacker.unpack("/resource1.txt", target));
+        unpacker.save();
+
+        try (Stream<Path> files = Files.list(temporaryFolder.getRoot().toPath())) {
+            assertEquals(Arrays.asList("assets", "unpacked", "unpacked.manifest"),
+                    files.map(file -> file.getFileName().toString()).sorted().collect(Collectors.toList()));
+        }
+        try (Stream<Path> files = Files.list(target.getParent())) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    public void testModifiedFilesAreKept() throws IOException {
+        Path assets = temporaryFolder.newFolder("assets").toPath();
+        Path target = temporaryFolder.newFolder("unpacked").toPath().resolve("resource1.txt");
+        write(assets.resolve("resource1.txt"), "1", 1000000);
+        ResourceCache resources = resources(assets);
+
+        ResourceUnpacker unpacker = new ResourceUnpacker(resources, target.getParent(),
+                temporaryFolder.getRoot().toPath().resolve("manifest"));
+        assertTrue(unpacker.unpack("/resource1.txt", target));
+        write(target, "modified", 1000000);
+        write(assets.resolve("resource1.txt"), "2", 2000000);
+
+        assertFalse(unpacker.unpack("/resource1.txt", target));
+        assertEquals("modified", read(target));
+        assertFalse(unpacker.isUnpacked(target));
+        assertFalse(unpacker.prune(target));
+        assertTrue(Files.exists(target));
+    }
+
+    @Test
+    public void testKeptFilesAreComparedAgainOnlyAfterTheResourceHasChanged() throws IOException {
+        Path assets = temporaryFolder.newFolder("assets").toPath();
+        Path target = temporaryFolder.newFolder("unpacked").toPath().resolve("resource1.txt");
+        Path manifest = temporaryFolder.getRoot().toPath().resolve("manifest");
+        write(assets.resolve("resource1.txt"), "1", 1000000);
+        ResourceCache resources = resources(assets);
+
+        ResourceUnpacker unpacker = new ResourceUnpacker(resources, target.getParent(), manifest);
+        assertTrue(unpacker.unpack("/resource1.txt", target));
+        write(target, "3", 1500000);
+        write(assets.resolve("resource1.txt"), "2", 2000000);
+        assertFalse(unpacker.unpack("/resource1.txt", target));
+        unpacker.save();
+
+        // Same size and modification time, so the recorded decision stands
+        write(assets.resolve("resource1.txt"), "3", 2000000);
+        ResourceUnpacker restarted = new ResourceUnpacker(resources, target.getParent(), manifest);
+        assertFalse(restarted.unpack("/resource1.txt", target));
+        assertFalse(restarted.isUnpacked(target));
+        assertFalse(restarted.prune(target));
+
+        write(assets.resolve("resource1.txt"), "3", 3000000);
+        assertFalse(restarted.unpack("/resource1.txt", target));
+        assertTrue(restarted.isUnpacked(target));
+        assertEquals("3", read(target));
+    }
+
+    @Test
+    public void testExistingFilesAreAdoptedAndPruned() throws IOException {
+        Path assets = temporaryFolder.newFolder("assets").toPath();
+        Path target = temporaryFolder.newFolder("unpacked").toPath().resolve("resource1.txt");
+        write(assets.resolve("resource1.txt"), "1", 1000000);
+        write(target, "1", 500000);
+        ResourceCache resources = resources(assets);
+
+        ResourceUnpacker unpacker = new ResourceUnpacker(resources, target.getParent(),
+                temporaryFolder.getRoot().toPath().resolve("manifest"));
+        assertFalse(unpacker.unpack("/resource1.txt", target));
+        assertTrue(unpacker.isUnpacked(target));
+
+        assertTrue(unpacker.prune(target));
+        assertFalse(Files.exists(target));
+        assertFalse(unpacker.isUnpacked(target));
+    }
+}
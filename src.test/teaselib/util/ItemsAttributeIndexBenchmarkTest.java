@@ -0,0 +1,142 @@
+package teaselib.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import teaselib.Body;
+import teaselib.Features;
+import teaselib.Length;
+import teaselib.Material;
+import teaselib.Size;
+import teaselib.Toys;
+import teaselib.core.TeaseLib;
+import teaselib.core.util.AttributeSet;
+import teaselib.core.util.QualifiedItem;
+import teaselib.test.IntegrationTests;
+import teaselib.test.TestScript;
+
+/**
+ * Compares attribute queries on the bit sets of a synthetic inventory with the previous stream-based queries.
+ * 
+ * @author Citizen-Cane
+ *
+ */
+@Category(IntegrationTests.class)
+public class ItemsAttributeIndexBenchmarkTest {
+    private static final Logger logger = LoggerFactory.getLogger(ItemsAttributeIndexBenchmarkTest.class);
+
+    private static final int InventorySize = 20_000;
+    private static final int Queries = 100;
+
+    private static final Object[][] AttributeKinds = { Material.values(), Size.values(), Length.values(),
+            Features.values(), { "Foo.Bar", "Foo.Baz", "Foo.Qux" } };
+
+    private final TestScript script = TestScript.getOne();
+    private final Random random = new Random(24);
+
+    private Object randomAttribute() {
+        Object[] kind = AttributeKinds[random.nextInt(AttributeKinds.length)];
+        return kind[random.nextInt(kind.length)];
+    }
+
+    private List<Item> inventory() {
+        Toys[] toys = Toys.values();
+        Body[] body = Body.values();
+        List<Item> inventory = new ArrayList<>(InventorySize);
+        for (int i = 0; i < InventorySize; i++) {
+            Object[] peers = { body[random.nextInt(body.length)] };
+            Object[] attributes = new Object[1 + random.nextInt(6)];
+            for (int j = 0; j < attributes.length; j++) {
+                attributes[j] = randomAttribute();
+            }
+            Toys value = toys[i % toys.length];
+            inventory.add(new ItemImpl(script.teaseLib, value, TeaseLib.DefaultDomain, new ItemGuid("item_" + i),
+                    ItemImpl.createDisplayName(value), peers, attributes));
+        }
+        return inventory;
+    }
+
+    private List<Object[]> queries() {
+        List<Object[]> queries = new ArrayList<>(Queries);
+        for (int i = 0; i < Queries; i++) {
+            Object[] query = new Object[1 + random.nextInt(2)];
+            for (int j = 0; j < query.length; j++) {
+                query[j] = randomAttribute();
+            }
+            queries.add(query);
+        }
+        return queries;
+    }
+
+    @Test
+    public void testIndexedQueriesMatchStreamQueries() {
+        List<Item> inventory = inventory();
+        List<Object[]> queries = queries();
+
+        long indexedNanos = 0;
+        long streamNanos = 0;
+        int matches = 0;
+        for (Object[] query : queries) {
+            long start = System.nanoTime();
+            AttributeSet indexed = AttributeSet.of(query);
+            boolean[] indexedResults = new boolean[inventory.size()];
+            for (int i = 0; i < indexedResults.length; i++) {
+                indexedResults[i] = ((ItemImpl) inventory.get(i)).has(indexed, query);
+            }
+            indexedNanos += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            boolean[] streamResults = new boolean[inventory.size()];
+            for (int i = 0; i < streamResults.length; i++) {
+                streamResults[i] = ((ItemImpl) inventory.get(i)).has(null, query);
+            }
+            streamNanos += System.nanoTime() - start;
+
+            assertTrue(Arrays.toString(query), Arrays.equals(streamResults, indexedResults));
+            for (boolean result : indexedResults) {
+                matches += result ? 1 : 0;
+            }
+        }
+
+        assertTrue(matches > 0);
+        logger.info("{} queries on {} items: {} matches, indexed {}ms, streams {}ms", queries.size(), inventory.size(),
+                matches, TimeUnit.NANOSECONDS.toMillis(indexedNanos), TimeUnit.NANOSECONDS.toMillis(streamNanos));
+    }
+
+    @Test
+    public void testQueryInventory() {
+        List<Item> inventory = inventory();
+        Items items = new Items(inventory);
+
+        long nanos = 0;
+        for (Object[] query : queries()) {
+            String[] names = Arrays.stream(query).map(QualifiedItem::of).map(QualifiedItem::toString)
+                    .toArray(String[]::new);
+            long start = System.nanoTime();
+            Items matching = items.queryInventory(names);
+            nanos += System.nanoTime() - start;
+
+            List<Item> expected = new ArrayList<>();
+            for (Item item : inventory) {
+                if (((ItemImpl) item).has(null, query)) {
+                    expected.add(item);
+                }
+            }
+            assertEquals(Arrays.toString(names), expected, matching.stream().collect(Collectors.toList()));
+        }
+        logger.info("{} inventory queries on {} items in {}ms", Queries, inventory.size(),
+                TimeUnit.NANOSECONDS.toMillis(nanos));
+    }
+}
@@ -0,0 +1,141 @@
+package teaselib.util.math;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+/**
+ * Compares the variety selector with enumerating all combinations of the elements.
+ *
+ * @author Citizen-Cane
+ *
+ */
+public class VarietySelectorTest {
+    /**
+     * Elements are identified by their index, and their kind is looked up.
+     */
+    static class Inventory {
+        final List<Integer> elements = new ArrayList<>();
+        final List<String> kinds = new ArrayList<>();
+        final Set<Integer> required = new HashSet<>();
+        final Set<Integer> preferred = new HashSet<>();
+
+        Inventory(Random random, int kinds, int size) {
+            for (int i = 0; i < size; i++) {
+                elements.add(i);
+                this.kinds.add(Character.toString((char) ('A' + random.nextInt(kinds))));
+                if (random.nextInt(4) == 0) {
+                    required.add(i);
+                }
+                if (random.nextBoolean()) {
+                    preferred.add(i);
+                }
+            }
+        }
+
+        String kind(Integer element) {
+            return kinds.get(element);
+        }
+
+        VarietySelector<Integer> selector() {
+            return new VarietySelector<>(elements, this::kind);
+        }
+
+        List<List<Integer>> bruteForceVarieties() {
+            int variety = new HashSet<>(kinds).size();
+            Combinations<Integer[]> combinations = Combinations.combinationsK(variety,
+                    elements.toArray(new Integer[elements.size()]));
+            return combinations.stream().map(Arrays::asList)
+                    .filter(combination -> Varieties.isVariety(
+                            combination.stream().map(this::kind).collect(Collectors.toList())))
+                    .collect(Collectors.toList());
+        }
+
+        long score(List<Integer> variety) {
+            return variety.stream().filter(preferred::contains).count();
+        }
+
+        /**
+         * Same as reducing varieties with {@link teaselib.util.Items#best}.
+         */
+        Optional<List<Integer>> bruteForceBest() {
+            return bruteForceVarieties().stream().filter(variety -> variety.stream().anyMatch(required::contains))
+                    .reduce((a, b) -> score(a) >= score(b) ? a : b);
+        }
+
+        Optional<List<Integer>> best() {
+            return selector().best(required::contains, preferred::contains);
+        }
+    }
+
+    @Test
+    public void testEmpty() {
+        VarietySelector<Integer> selector = new VarietySelector<>(Collections.emptyList(), element -> element);
+        assertEquals(0, selector.variety());
+        assertTrue(selector.varieties().isEmpty());
+        assertFalse(selector.best(element -> true, element -> true).isPresent());
+    }
+
+    @Test
+    public void testVarietiesAreOrderedLikeCombinations() {
+        List<String> elements = Arrays.asList("A1", "B1", "A2", "C1", "B2");
+        VarietySelector<String> selector = new VarietySelector<>(elements, element -> element.charAt(0));
+        assertEquals(3, selector.variety());
+        assertEquals(Arrays.asList( //
+                Arrays.asList("A1", "B1", "C1"), //
+                Arrays.asList("A1", "C1", "B2"), //
+                Arrays.asList("B1", "A2", "C1"), //
+                Arrays.asList("A2", "C1", "B2")), selector.varieties());
+    }
+
+    @Test
+    public void testBestContainsRequiredElement() {
+        List<String> elements = Arrays.asList("A1", "B1", "A2", "B2");
+        VarietySelector<String> selector = new VarietySelector<>(elements, element -> element.charAt(0));
+        Predicate<String> available = element -> !element.equals("B2");
+
+        assertEquals(Arrays.asList("A1", "B1"), selector.best(element -> true, available).get());
+        assertEquals(Arrays.asList("A1", "B2"), selector.best("B2"::equals, available).get());
+        assertEquals(Arrays.asList("B1", "A2"), selector.best("A2"::equals, available).get());
+        assertFalse(selector.best(element -> false, available).isPresent());
+    }
+
+    @Test
+    public void testEquivalenceToBruteForce() {
+        Random random = new Random(25);
+        for (int i = 0; i < 2000; i++) {
+            Inventory inventory = new Inventory(random, 1 + random.nextInt(4), random.nextInt(11));
+            String message = inventory.kinds + " required=" + inventory.required + " preferred="
+                    + inventory.preferred;
+            assertEquals(message, inventory.bruteForceVarieties(), inventory.selector().varieties());
+            assertEquals(message, inventory.bruteForceBest(), inventory.best());
+        }
+    }
+
+    @Test
+    public void testLargeInventory() {
+        Random random = new Random(2500);
+        Inventory inventory = new Inventory(random, 12, 5000);
+        List<Integer> best = inventory.best().get();
+
+        assertEquals(12, best.stream().map(inventory::kind).distinct().count());
+        assertTrue(best.stream().anyMatch(inventory.required::contains));
+        assertEquals(12, inventory.score(best));
+        for (int i = 1; i < best.size(); i++) {
+            assertTrue(best.get(i - 1) < best.get(i));
+        }
+    }
+}
@@ -27,13 +27,35 @@ public enum Config {
         StopOnAssetNotFound,
         StopOnRenderError,
         LogDetails,
+        /**
+         * Write a report of resource access counts, bytes read and lookup times when the resource loader is closed.
+         */
+        ProfileResources,
+        /**
+         * Record the timing of the render pipeline and write it as a Chrome trace timeline to the log folder when
+         * TeaseLib is closed.
+         */
+        TraceRendering,
+        /**
+         * Restore all persisted fields of a state when the state is created, instead of when they're accessed first.
+         */
+        RestoreStatesEagerly,
     }
 
     public enum Render {
         Speech,
         Sound,
         ActorImages,
-        InstructionalImages
+        InstructionalImages,
+        ImageCacheSize,
+        ImageLookahead,
+        ImageDiskCacheResolution,
+        ImageDiskCacheSize,
+        /**
+         * Memory budget in megabytes for decoded short sound clips, which are then played by TeaseLib instead of the
+         * host - 0 disables the cache.
+         */
+        AudioCacheSize
     }
 
     public enum InputMethod {
@@ -95,6 +95,10 @@ public class Debugger {
         teaseLib.advanceTimeAllThreads();
     }
 
+    public void useVirtualTime() {
+        teaseLib.useVirtualTime();
+    }
+
     public void resumeTime() {
         teaseLib.resumeTime();
     }
@@ -23,6 +23,23 @@ public interface Host {
      */
     void show(byte[] imageBytes, String text);
 
+    /**
+     * Implemented by hosts that can update the displayed text in place, instead of replacing the whole text whenever a
+     * message part is rendered.
+     */
+    interface PartialUpdates {
+        /**
+         * Show text and image, keeping the start of the text shown before.
+         * 
+         * @param imageBytes
+         * @param offset
+         *            The number of characters to keep of the text shown before.
+         * @param text
+         *            The text to show after the kept characters.
+         */
+        void show(byte[] imageBytes, int offset, String text);
+    }
+
     /**
      * Shows an intertitle similar to the ones in old movies. Use it for informations that cannot be told by actors but
      * are important for the story.
@@ -5,33 +5,44 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.regex.Pattern;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import teaselib.Config;
+import teaselib.core.concurrency.NamedExecutorService;
+import teaselib.core.util.ExceptionUtil;
 import teaselib.core.util.QualifiedItem;
 import teaselib.core.util.ReflectionUtils;
 import teaselib.core.util.WildcardPattern;
 import teaselib.core.util.resource.ResourceCache;
+import teaselib.core.util.resource.ResourceProfile;
+import teaselib.core.util.resource.ResourceUnpacker;
 
-public class ResourceLoader {
+public class ResourceLoader implements AutoCloseable {
     private static final Logger logger = LoggerFactory.getLogger(ResourceLoader.class);
 
     public static final String ResourcesInProjectFolder = "/";
 
     public static final String separator = "/";
 
+    /**
+     * Folder below the base path for storing resource manifests and other cached data.
+     */
+    public static final String CacheFolder = ".cache";
+
     private final File basePath;
     private final String resourceRoot;
 
-    // TODO Must be global in order to share actor resources between scripts
-    private final ResourceCache resourceCache = new ResourceCache();
+    private final ResourceCache resourceCache;
+    private final ResourceUnpacker unpacker;
 
     /**
      * @param mainScript
@@ -78,10 +89,50 @@ public class ResourceLoader {
     public ResourceLoader(File basePath, String resourceRoot) {
         this.basePath = getBasePath(basePath);
         this.resourceRoot = absolute(pathToFolder(resourceRoot));
+        this.resourceCache = new ResourceCache(ResourceCache.Enumeration.Lazy, getCachePath("manifests").toPath());
+        if (isProfiling()) {
+            resourceCache.startProfiling();
+        }
+        this.unpacker = new ResourceUnpacker(resourceCache, this.basePath.toPath(),
+                getCachePath("manifests").toPath().resolve("unpacked.manifest"));
         logger.info("Using basepath='{}'", basePath.getAbsolutePath());
         addProjectFolder();
     }
 
+    /**
+     * Releases the asset locations of this loader. Locations are shared process-wide between resource loaders, and
+     * closed when no longer referenced.
+     * <p>
+     * If resource profiling is enabled via the system property {@link Config.Debug#ProfileResources}, the resource
+     * profile of the session is written to the cache folder. Script resource loaders are closed by
+     * {@link TeaseLib#close()}.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            ResourceProfile profile = resourceCache.profile();
+            if (profile != null) {
+                File report = new File(getCachePath("profile"), "resources.tsv");
+                profile.write(report.toPath());
+                logger.info("Resource profile written to {}", report.getAbsolutePath());
+            }
+        } finally {
+            resourceCache.close();
+        }
+    }
+
+    private static boolean isProfiling() {
+        return Boolean.parseBoolean(System.getProperty(QualifiedItem.of(Config.Debug.ProfileResources).toString()));
+    }
+
+    /**
+     * @return Access counts, bytes read and lookup times of the resources loaded so far, or null if resource profiling
+     *         is disabled.
+     */
+    public ResourceProfile profile() {
+        return resourceCache.profile();
+    }
+
     private void addProjectFolder() {
         addAssets("");
     }
@@ -181,6 +232,54 @@ public class ResourceLoader {
         return getResource(path, null);
     }
 
+    /**
+     * Reads a resource without copying it through a stream. Large files are memory-mapped, and stored (uncompressed)
+     * zip entries are read from the archive file into a direct buffer, bypassing the zip file system.
+     * 
+     * @param path
+     *            The resource path.
+     * @return A buffer containing the resource content. The content must not be modified.
+     * @throws IOException
+     */
+    public ByteBuffer buffer(String path) throws IOException {
+        ByteBuffer buffer = resourceCache.buffer(absolutePathOrNull(path, null));
+        if (buffer == null)
+            throw new IOException(path);
+        return buffer;
+    }
+
+    /**
+     * Reads a resource into an array of the exact size. Other than {@link #buffer(String)}, files aren't memory-mapped,
+     * so use this method if the content is needed as an array anyway.
+     * 
+     * @param path
+     *            The resource path.
+     * @return The resource content.
+     * @throws IOException
+     */
+    public byte[] bytes(String path) throws IOException {
+        byte[] bytes = resourceCache.bytes(absolutePathOrNull(path, null));
+        if (bytes == null)
+            throw new IOException(path);
+        return bytes;
+    }
+
+    /**
+     * Identifies the current version of a resource without reading it. Archive entries are identified by size and CRC,
+     * files by size and modification time.
+     * 
+     * @param path
+     *            The resource path.
+     * @return A string that changes when the resource content changes.
+     * @throws IOException
+     */
+    public String fingerprint(String path) throws IOException {
+        String fingerprint = resourceCache.fingerprint(absolutePathOrNull(path, null));
+        if (fingerprint == null)
+            throw new IOException(path);
+        return fingerprint;
+    }
+
     public InputStream getResource(String path, Class<?> clazz) throws IOException {
         String absoluteResourcePath = absolutePathOrNull(path, clazz);
         if (absoluteResourcePath != null) {
@@ -281,8 +380,22 @@ public class ResourceLoader {
         }
     }
 
+    /**
+     * Get the absolute path of a folder for caching data derived from resources.
+     * 
+     * @param name
+     *            The name of the cache folder.
+     * @return The absolute file system path of the cache folder. The folder is created on demand by the caller.
+     */
+    public File getCachePath(String name) {
+        return new File(new File(basePath, CacheFolder), name);
+    }
+
     /**
      * Unpacks the enclosing folder of the requested resource, including all other resources and all sub folders.
+     * <p>
+     * Only new or changed resources are written, in parallel. Previously unpacked files that are no longer provided by
+     * any asset are removed.
      * 
      * @param classLoaderCompatibleResourcePath(path)
      *            The path to the requested resource
@@ -291,14 +404,28 @@ public class ResourceLoader {
      */
     public File unpackEnclosingFolder(String resourcePath) throws IOException {
         File match = null;
+        String resource = absolutePathOrNull(resourcePath, null);
         String parentPath = resourcePath.substring(0, resourcePath.lastIndexOf('/'));
         List<String> folder = resources(absolutePathOrNull(parentPath + "/*", null), null);
+        List<Callable<Boolean>> unpack = new ArrayList<>(folder.size());
         for (String file : folder) {
-            File unpacked = unpackFileFromFolder(file);
-            if (match == null && file.equals(absolutePathOrNull(resourcePath, null))) {
+            File unpacked = new File(basePath, classLoaderCompatibleResourcePath(file));
+            if (unpacker.provides(file)) {
+                unpack.add(() -> unpacker.unpack(file, unpacked.toPath()));
+            } else if (unpacker.prune(unpacked.toPath())) {
+                continue;
+            }
+            if (match == null && file.equals(resource)) {
                 match = unpacked;
             }
         }
+
+        try {
+            unpack(unpack);
+        } finally {
+            unpacker.save();
+        }
+
         if (match != null) {
             return match;
         } else {
@@ -306,8 +433,43 @@ public class ResourceLoader {
         }
     }
 
+    private static void unpack(List<Callable<Boolean>> unpack) throws IOException {
+        int threads = Math.min(unpack.size(), Runtime.getRuntime().availableProcessors());
+        if (threads > 1) {
+            NamedExecutorService executor = NamedExecutorService.newFixedThreadPool(threads, "Resource unpacker");
+            try {
+                for (Future<Boolean> future : executor.invokeAll(unpack)) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ScriptInterruptedException();
+            } catch (ExecutionException e) {
+                Exception cause = ExceptionUtil.reduce(e);
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                } else {
+                    throw ExceptionUtil.asRuntimeException(cause);
+                }
+            } finally {
+                executor.shutdown();
+            }
+        } else {
+            for (Callable<Boolean> task : unpack) {
+                try {
+                    task.call();
+                } catch (IOException | RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw ExceptionUtil.asRuntimeException(e);
+                }
+            }
+        }
+    }
+
     /**
-     * Unpacks a resource into the file system. If the file already, the method just returns the absolute file path.
+     * Unpacks a resource into the file system. If the file already exists, it's only rewritten if the resource has
+     * changed since it has been unpacked.
      * 
      * @param classLoaderCompatibleResourcePath(resourcePath)
      *            A resource path.
@@ -316,23 +478,15 @@ public class ResourceLoader {
      */
     public File unpackToFile(String resourcePath) throws IOException {
         File file = getAssetPath(resourcePath);
-        return unpackToFileInternal(resourcePath, file);
-    }
-
-    private File unpackFileFromFolder(String resourcePath) throws IOException {
-        String classLoaderCompatibleResourcePath = classLoaderCompatibleResourcePath(resourcePath);
-        File file = new File(basePath, classLoaderCompatibleResourcePath);
-        return unpackToFileInternal(classLoaderCompatibleResourcePath, file);
-    }
-
-    private File unpackToFileInternal(String resourcePath, File file) throws IOException {
-        if (!file.exists()) {
-            try (InputStream resource = get(resourcePath);) {
-                if (!file.exists()) {
-                    file.getParentFile().mkdirs();
-                    Files.copy(resource, Paths.get(file.toURI()));
-                }
+        String resource = absolutePathOrNull(resourcePath, null);
+        if (unpacker.provides(resource)) {
+            try {
+                unpacker.unpack(resource, file.toPath());
+            } finally {
+                unpacker.save();
             }
+        } else if (!file.exists()) {
+            throw new FileNotFoundException(resourcePath);
         }
         return file;
     }
@@ -23,6 +23,7 @@ import teaselib.Message;
 import teaselib.Mood;
 import teaselib.Replay;
 import teaselib.ScriptFunction;
+import teaselib.core.media.AudioCache;
 import teaselib.core.media.RenderedMessage.Decorator;
 import teaselib.core.media.ScriptMessageDecorator;
 import teaselib.core.speechrecognition.Confidence;
@@ -40,6 +41,7 @@ import teaselib.core.util.ExceptionUtil;
 import teaselib.core.util.ObjectMap;
 import teaselib.core.util.QualifiedItem;
 import teaselib.core.util.ReflectionUtils;
+import teaselib.core.util.Trace;
 import teaselib.motiondetection.MotionDetector;
 import teaselib.util.SpeechRecognitionRejectedScript;
 import teaselib.util.TextVariables;
@@ -71,6 +73,7 @@ public abstract class Script {
         getOrDefault(teaseLib, Shower.class, () -> new Shower(teaseLib.host));
         getOrDefault(teaseLib, InputMethods.class, InputMethods::new);
         getOrDefault(teaseLib, SpeechRecognizer.class, () -> new SpeechRecognizer(teaseLib.config));
+        getOrDefault(teaseLib, AudioCache.class, () -> new AudioCache(teaseLib.config));
 
         try {
             teaseLib.config.addScriptSettings(namespace, namespace);
@@ -101,6 +104,9 @@ public abstract class Script {
         this.scriptRenderer = scriptRenderer;
         this.namespace = namespace.replace(" ", "_");
 
+        if (resources != null) {
+            teaseLib.closeOnExit(resources);
+        }
         scriptRenderer.messageRenderer.textToSpeechPlayer.acquireVoice(actor, resources);
     }
 
@@ -190,7 +196,7 @@ public abstract class Script {
 
     protected void renderMessage(Message message, boolean useTTS) {
         Optional<TextToSpeechPlayer> textToSpeech = getTextToSpeech(useTTS);
-        try {
+        try (Trace.Span span = Trace.span("say")) {
             scriptRenderer.renderMessage(teaseLib, resources, message, decorators(textToSpeech));
         } finally {
             displayImage = Message.ActorImage;
@@ -208,13 +214,17 @@ public abstract class Script {
     }
 
     protected void appendMessage(Message message) {
-        scriptRenderer.appendMessage(teaseLib, resources, actor, message,
-                decorators(Optional.of(scriptRenderer.messageRenderer.textToSpeechPlayer)));
+        try (Trace.Span span = Trace.span("append")) {
+            scriptRenderer.appendMessage(teaseLib, resources, actor, message,
+                    decorators(Optional.of(scriptRenderer.messageRenderer.textToSpeechPlayer)));
+        }
     }
 
     protected void replaceMessage(Message message) {
-        scriptRenderer.replaceMessage(teaseLib, resources, actor, message,
-                decorators(Optional.of(scriptRenderer.messageRenderer.textToSpeechPlayer)));
+        try (Trace.Span span = Trace.span("replace")) {
+            scriptRenderer.replaceMessage(teaseLib, resources, actor, message,
+                    decorators(Optional.of(scriptRenderer.messageRenderer.textToSpeechPlayer)));
+        }
     }
 
     protected final Answer showChoices(List<Answer> answers) {
@@ -7,7 +7,6 @@ import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,8 +21,8 @@ import teaselib.core.media.MediaRenderer.Threaded;
 import teaselib.core.media.MediaRendererQueue;
 import teaselib.core.media.MessageRendererQueue;
 import teaselib.core.media.RenderInterTitle;
-import teaselib.core.media.RenderedMessage;
 import teaselib.core.media.RenderedMessage.Decorator;
+import teaselib.core.util.Trace;
 
 /**
  * @author Citizen-Cane
@@ -146,7 +145,7 @@ public class ScriptRenderer implements AutoCloseable {
 
     void renderMessages(TeaseLib teaseLib, ResourceLoader resources, Actor actor, List<Message> messages,
             Decorator[] decorators) {
-        List<RenderedMessage> renderedMessages = convertMessagesToRendered(messages, decorators);
+        List<Message> allMessages = withPrependedMessages(messages);
 
         // TODO run method of media renderer should start rendering
         // -> currently it's started when say() is called
@@ -159,33 +158,31 @@ public class ScriptRenderer implements AutoCloseable {
 
         // Workaround: keep it for now, renderer is started and queued
         // waited for and ended
-        MediaRenderer say = messageRenderer.say(actor, renderedMessages, resources);
+        MediaRenderer say = messageRenderer.say(actor, allMessages, decorators, resources);
         renderMessage(teaseLib, say);
     }
 
     void appendMessage(TeaseLib teaseLib, ResourceLoader resources, Actor actor, Message message,
             Decorator[] decorators) {
         // TODO Actor of last message? or change actor
-        List<RenderedMessage> renderedMessages = convertMessagesToRendered(Collections.singletonList(message),
-                decorators);
-        MediaRenderer say = messageRenderer.append(actor, renderedMessages, resources);
+        List<Message> allMessages = withPrependedMessages(Collections.singletonList(message));
+        MediaRenderer say = messageRenderer.append(actor, allMessages, decorators, resources);
         renderMessage(teaseLib, say);
     }
 
     void replaceMessage(TeaseLib teaseLib, ResourceLoader resources, Actor actor, Message message,
             Decorator[] decorators) {
-        List<RenderedMessage> renderedMessages = convertMessagesToRendered(Collections.singletonList(message),
-                decorators);
-        MediaRenderer say = messageRenderer.replace(actor, renderedMessages, resources);
+        List<Message> allMessages = withPrependedMessages(Collections.singletonList(message));
+        MediaRenderer say = messageRenderer.replace(actor, allMessages, decorators, resources);
         renderMessage(teaseLib, say);
     }
 
-    private List<RenderedMessage> convertMessagesToRendered(List<Message> messages, Decorator[] decorators) {
-        Stream<Message> all = Stream.concat(prependedMessages.stream(), messages.stream());
-        List<RenderedMessage> renderedMessages = all.map(message -> RenderedMessage.of(message, decorators))
-                .collect(Collectors.toList());
+    private List<Message> withPrependedMessages(List<Message> messages) {
+        List<Message> all = new ArrayList<>(prependedMessages.size() + messages.size());
+        all.addAll(prependedMessages);
+        all.addAll(messages);
         prependedMessages.clear();
-        return renderedMessages;
+        return all;
     }
 
     private void renderMessage(TeaseLib teaseLib, MediaRenderer renderMessage) {
@@ -202,7 +199,9 @@ public class ScriptRenderer implements AutoCloseable {
                 queuedRenderers.clear();
                 // Now the current set can be completed, and canceling the
                 // current set will result in an empty next set
-                completeAll();
+                try (Trace.Span span = Trace.span("complete previous")) {
+                    completeAll();
+                }
                 teaseLib.checkPointReached(CheckPoint.Script.NewMessage);
 
                 // Start a new message in the log
@@ -0,0 +1,164 @@
+package teaselib.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import teaselib.core.util.Persist;
+import teaselib.core.util.PersistedObject;
+import teaselib.core.util.QualifiedName;
+import teaselib.util.ItemImpl;
+
+/**
+ * Interns the persisted peers and attributes of states, so that state records refer to them by id instead of repeating
+ * their qualified names. Ids are assigned in ascending order and never reused. Each value is persisted once as
+ * {@code States.id.<id>}, in the same format as legacy state records.
+ * <p>
+ * Persistence can't enumerate its keys, so the number of assigned ids is persisted as {@code States.ids}. All ids
+ * below are looked up, so a missing entry doesn't hide the ones after it.
+ *
+ * @author Citizen-Cane
+ *
+ */
+final class StateIds {
+    private static final Logger logger = LoggerFactory.getLogger(StateIds.class);
+
+    static final String Namespace = "States";
+    static final QualifiedName Count = new QualifiedName(QualifiedName.NONE, Namespace, "ids");
+
+    static final class Entry {
+        final String persisted;
+        /**
+         * Items are restored per domain from the user items.
+         */
+        final boolean isItem;
+        /**
+         * Only enumeration values are cached, since other values compare by identity.
+         */
+        private Enum<?> value;
+
+        Entry(String persisted) {
+            this.persisted = persisted;
+            this.isItem = PersistedObject.className(persisted).equals(ItemImpl.class.getName());
+        }
+
+        Object value() {
+            if (value != null) {
+                return value;
+            } else {
+                Object restored = Persist.from(persisted);
+                if (restored instanceof Enum<?>) {
+                    value = (Enum<?>) restored;
+                }
+                return restored;
+            }
+        }
+    }
+
+    private final Persistence persistence;
+    private final List<Entry> entries = new ArrayList<>();
+    private Map<String, Integer> ids = null;
+    private int next = 0;
+
+    StateIds(Persistence persistence) {
+        this.persistence = persistence;
+    }
+
+    static boolean isId(QualifiedName name) {
+        return name.domain.equals(QualifiedName.NONE) && name.namespace.equals(Namespace);
+    }
+
+    static QualifiedName name(int id) {
+        return new QualifiedName(QualifiedName.NONE, Namespace, "id." + id);
+    }
+
+    /**
+     * @return The entry of the id, or null if the id isn't persisted. Since state records and the id table may be
+     *         stored in different files, records may refer to ids that aren't available. The values of these ids are
+     *         skipped, like peers that can't be resolved.
+     */
+    Entry get(int id) {
+        Entry entry = id < entries.size() ? entries.get(id) : null;
+        if (entry == null) {
+            String persisted = persistence.get(name(id));
+            if (persisted == null) {
+                logger.warn("Ignoring undefined state id {}", id);
+                return null;
+            }
+            entry = new Entry(persisted);
+            while (entries.size() <= id) {
+                entries.add(null);
+            }
+            entries.set(id, entry);
+        }
+        return entry;
+    }
+
+    int[] intern(Collection<Object> values) {
+        int[] interned = new int[values.size()];
+        int i = 0;
+        for (Object value : values) {
+            interned[i++] = intern(Persist.persist(value));
+        }
+        return interned;
+    }
+
+    /**
+     * @return The id of the persisted value. The value is persisted again if it has been removed from the persistence
+     *         after it has been interned.
+     */
+    int intern(String persisted) {
+        Integer id = ids().get(persisted);
+        if (id == null) {
+            id = next;
+            while (persistence.has(name(id))) {
+                id++;
+            }
+            next = id + 1;
+            ids.put(persisted, id);
+            persist(id, persisted);
+        } else if (!persistence.has(name(id))) {
+            persist(id, persisted);
+        }
+        return id;
+    }
+
+    private void persist(int id, String persisted) {
+        persistence.set(name(id), persisted);
+        if (persistedCount() < next) {
+            persistence.set(Count, Integer.toString(next));
+        }
+    }
+
+    private Map<String, Integer> ids() {
+        if (ids == null) {
+            ids = new HashMap<>();
+            int count = persistedCount();
+            int id = 0;
+            for (; id < count || persistence.has(name(id)); id++) {
+                if (persistence.has(name(id))) {
+                    ids.putIfAbsent(get(id).persisted, id);
+                }
+            }
+            next = id;
+        }
+        return ids;
+    }
+
+    private int persistedCount() {
+        if (persistence.has(Count)) {
+            try {
+                return Integer.parseInt(persistence.get(Count));
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        } else {
+            return 0;
+        }
+    }
+}
@@ -5,6 +5,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
@@ -35,6 +36,17 @@ public class StateImpl implements State, State.Options, StateMaps.Attributes {
     public final String domain;
     public final Object item;
 
+    /**
+     * Persisted fields are restored on first access.
+     */
+    private enum Restore {
+        Applied,
+        Duration,
+        Attributes,
+        Peers
+    }
+
+    private final Set<Restore> unrestored = EnumSet.allOf(Restore.class);
     private final Set<Object> peers = new HashSet<>();
     private final Set<Object> attributes = new HashSet<>();
     private boolean applied = false;
@@ -78,10 +90,9 @@ public class StateImpl implements State, State.Options, StateMaps.Attributes {
 
         this.duration = new DurationImpl(this.stateMaps.teaseLib, 0, 0, TimeUnit.SECONDS);
 
-        restoreApplied();
-        restoreDuration();
-        restoreAttributes();
-        restorePeers();
+        if (stateMaps.restoreEagerly) {
+            restore();
+        }
     }
 
     protected StateImpl(TeaseLib teaseLib, String domain, Object item) {
@@ -114,21 +125,68 @@ public class StateImpl implements State, State.Options, StateMaps.Attributes {
                 QualifiedItem.nameOf(item) + ".state" + "." + name);
     }
 
+    /**
+     * Restores all persisted fields that haven't been accessed yet.
+     */
+    void restore() {
+        restore(Restore.Applied);
+        restore(Restore.Duration);
+        restore(Restore.Attributes);
+        restore(Restore.Peers);
+    }
+
+    /**
+     * Restores the field on first access. The field is marked as restored before restoring it, since restoring peers
+     * may access this state again through the peer states.
+     */
+    private void restore(Restore field) {
+        if (unrestored.remove(field)) {
+            if (field == Restore.Applied) {
+                restoreApplied();
+            } else if (field == Restore.Duration) {
+                restoreDuration();
+            } else if (field == Restore.Attributes) {
+                restoreAttributes();
+            } else if (field == Restore.Peers) {
+                restorePeers();
+            } else {
+                throw new IllegalArgumentException(field.toString());
+            }
+        }
+    }
+
+    private Set<Object> peerSet() {
+        restore(Restore.Peers);
+        return peers;
+    }
+
+    private Set<Object> attributeSet() {
+        restore(Restore.Attributes);
+        return attributes;
+    }
+
+    Duration ownDuration() {
+        restore(Restore.Duration);
+        return duration;
+    }
+
     private void restoreApplied() {
         applied = appliedStorage.value();
     }
 
     private void restoreDuration() {
         if (isPersisted()) {
-            // TODO Refactor persistence to duration class
-            String[] argv = durationStorage.value().split(" ");
-            long start = Long.parseLong(argv[0]);
-            long limit = string2limit(argv[1]);
+            String persisted = durationStorage.value();
+            if (!StateRecords.isEncoded(persisted)) {
+                persisted = StateRecords.fromLegacyDuration(persisted);
+            }
+            long start = StateRecords.start(persisted);
+            long limit = StateRecords.limit(persisted);
             this.duration = new DurationImpl(this.stateMaps.teaseLib, start, limit, TimeUnit.SECONDS);
         }
     }
 
-    private static long string2limit(String limitString) {
+    static long string2limit(String limitString) {
         long limit;
         if (limitString.equals(TEMPORARY_KEYWORD)) {
             limit = TEMPORARY;
@@ -143,9 +201,18 @@ public class StateImpl implements State, State.Options, StateMaps.Attributes {
     private void restorePeers() {
         if (peerStorage.available()) {
             String persisted = peerStorage.value();
-            List<String> presistedPeers = new PersistedObject(ArrayList.class, persisted).toValues();
-            for (String persistedPeer : presistedPeers) {
-                restorePersistedPeer(persistedPeer);
+            if (StateRecords.isEncoded(persisted)) {
+                StateRecords.forEachId(persisted, id -> {
+                    StateIds.Entry peer = stateMaps.ids.get(id);
+                    if (peer != null) {
+                        restorePersistedPeer(peer);
+                    }
+                });
+            } else {
+                List<String> presistedPeers = new PersistedObject(ArrayList.class, persisted).toValues();
+                for (String persistedPeer : presistedPeers) {
+                    restorePersistedPeer(persistedPeer);
+                }
             }
 
             if (peers.isEmpty()) {
@@ -164,6 +231,14 @@ public class StateImpl implements State, State.Options, StateMaps.Attributes {
         }
     }
 
+    private void restorePersistedPeer(StateIds.Entry persistedPeer) {
+        if (persistedPeer.isItem) {
+            restorePersistedPeer(persistedPeer.persisted);
+        } else {
+            addAppliedOrPersistedPeer(persistedPeer.value());
+        }
+    }
+
     private void addAppliedOrPersistedPeer(Object peer) {
         addPeerThatHasBeenPersistedWithMe(peer, QualifiedItem.of(peer));
     }
@@ -181,55 +256,61 @@ public class StateImpl implements State, State.Options, StateMaps.Attributes {
     }
 
     private boolean isCached(QualifiedItem qualifiedPeer) {
-        return this.stateMaps.stateMap(domain, qualifiedPeer.namespace().toLowerCase())
-                .contains(qualifiedPeer.name().toLowerCase());
+        return this.stateMaps.stateMap(domain, qualifiedPeer.namespaceKey()).contains(qualifiedPeer.nameKey());
     }
 
     private void restoreAttributes() {
         if (attributeStorage.available()) {
-            attributes.addAll(Persist.from(ArrayList.class, attributeStorage.value()));
+            String persisted = attributeStorage.value();
+            if (StateRecords.isEncoded(persisted)) {
+                StateRecords.forEachId(persisted, id -> {
+                    StateIds.Entry attribute = stateMaps.ids.get(id);
+                    if (attribute != null) {
+                        attributes.add(attribute.value());
+                    }
+                });
+            } else {
+                attributes.addAll(Persist.from(ArrayList.class, persisted));
+            }
         }
     }
 
     private void persistApplied() {
-        appliedStorage.set(applied);
+        appliedStorage.set(applied());
     }
 
     private void persistDuration() {
-        String startValue = Long.toString(duration.start(TimeUnit.SECONDS));
-        long limit = duration.limit(TimeUnit.SECONDS);
-        String limitValue = limit2String(limit);
-        durationStorage.set(startValue + " " + limitValue);
-
+        durationStorage.set(
+                StateRecords.duration(ownDuration().start(TimeUnit.SECONDS), ownDuration().limit(TimeUnit.SECONDS)));
     }
 
     private String limit2String(long limit) {
         String limitString;
         if (limit < 0) {
-            limitString = Long.toString(duration.limit(TimeUnit.SECONDS));
+            limitString = Long.toString(ownDuration().limit(TimeUnit.SECONDS));
         } else if (limit == TEMPORARY) {
             limitString = TEMPORARY_KEYWORD;
         } else if (limit == INDEFINITELY) {
             limitString = INDEFINITELY_KEYWORD;
         } else {
-            limitString = Long.toString(duration.limit(TimeUnit.SECONDS));
+            limitString = Long.toString(ownDuration().limit(TimeUnit.SECONDS));
         }
         return limitString;
     }
 
     private void persistPeers() {
-        if (peers.isEmpty()) {
+        if (peerSet().isEmpty()) {
             peerStorage.clear();
         } else {
-            peerStorage.set(Persist.persistValues(peers));
+            peerStorage.set(StateRecords.ids(stateMaps.ids.intern(peerSet())));
         }
     }
 
     private void persistAttributes() {
-        if (attributes.isEmpty()) {
+        if (attributeSet().isEmpty()) {
             attributeStorage.clear();
         } else {
-            attributeStorage.set(Persist.persistValues(attributes));
+            attributeStorage.set(StateRecords.ids(stateMaps.ids.intern(attributeSet())));
         }
     }
 
@@ -250,8 +331,8 @@ public class StateImpl implements State, State.Options, StateMaps.Attributes {
         }
 
         for (Object attribute : AbstractProxy.removeProxies(attributes)) {
-            if (!peers.contains(attribute)) {
-                peers.add(attribute);
+            if (!peerSet().contains(attribute)) {
+                peerSet().add(attribute);
                 if (!(attribute instanceof ItemGuid)) {
                     StateImpl state = state(attribute);
                     state.applyInternal(item);
@@ -274,7 +355,7 @@ public class StateImpl implements State, State.Options, StateMaps.Attributes {
     }
 
     public Stream<StateImpl> peerStates() {
-        Stream<Object> stream = new HashSet<>(peers).stream();
+        Stream<Object> stream = new HashSet<>(peerSet()).stream();
         return states(stream);
     }
 
@@ -287,16 +368,16 @@ public class StateImpl implements State, State.Options, StateMaps.Attributes {
     }
 
     public Set<Object> peers() {
-        return Collections.unmodifiableSet(peers);
+        return Collections.unmodifiableSet(peerSet());
     }
 
     @Override
     public void applyAttributes(Object... attributes) {
-        this.attributes.addAll(Arrays.asList(StateMaps.flatten(attributes)));
+        attributeSet().addAll(Arrays.asList(StateMaps.flatten(attributes)));
     }
 
     public Set<Object> getAttributes() {
-        return Collections.unmodifiableSet(attributes);
+        return Collections.unmodifiableSet(attributeSet());
     }
 
     @Override
@@ -337,12 +418,12 @@ public class StateImpl implements State, State.Options, StateMaps.Attributes {
         List<ItemImpl> instances = Arrays.stream(attributes).filter(attribute -> attribute instanceof ItemImpl)
                 .map(itemImpl -> (ItemImpl) itemImpl).collect(Collectors.toList());
         List<ItemGuid> guids = instances.stream().map(instance -> instance.guid).collect(Collectors.toList());
-        return peers.containsAll(instances) || peers.containsAll(guids);
+        return peerSet().containsAll(instances) || peerSet().containsAll(guids);
     }
 
     private Set<Object> attributesAndPeers() {
-        Stream<Object> myAttributeAndPeers = Stream.concat(peers.stream(), attributes.stream());
-        Stream<Object> attributesOfDirectPeers = peerStates().map(state -> state.attributes).flatMap(Set::stream);
+        Stream<Object> myAttributeAndPeers = Stream.concat(peerSet().stream(), attributeSet().stream());
+        Stream<Object> attributesOfDirectPeers = peerStates().map(StateImpl::attributeSet).flatMap(Set::stream);
         return Stream.concat(myAttributeAndPeers, attributesOfDirectPeers).collect(Collectors.toSet());
     }
 
@@ -353,6 +434,7 @@ public class StateImpl implements State, State.Options, StateMaps.Attributes {
 
     @Override
     public State over(Duration duration) {
+        unrestored.remove(Restore.Duration);
         this.duration = duration;
         if (duration.limit(TimeUnit.MILLISECONDS) != TEMPORARY) {
             remember();
@@ -362,19 +444,19 @@ public class StateImpl implements State, State.Options, StateMaps.Attributes {
 
     @Override
     public Duration duration() {
-        Stream<Duration> durations = peerStates().map(state -> state.duration);
-        Optional<Duration> maximum = Stream.concat(Stream.of(this.duration), durations)
+        Stream<Duration> durations = peerStates().map(StateImpl::ownDuration);
+        Optional<Duration> maximum = Stream.concat(Stream.of(ownDuration()), durations)
                 .max((a, b) -> Long.compare(a.remaining(TimeUnit.SECONDS), b.remaining(TimeUnit.SECONDS)));
         if (maximum.isPresent()) {
             return maximum.get();
         } else {
-            return duration;
+            return ownDuration();
         }
     }
 
     private void remember() {
         updatePersistence();
-        for (Object peer : peers) {
+        for (Object peer : peerSet()) {
             if (!(peer instanceof ItemGuid)) {
                 StateImpl peerState = state(peer);
                 peerState.updatePersistence();
@@ -384,15 +466,20 @@ public class StateImpl implements State, State.Options, StateMaps.Attributes {
 
     @Override
     public boolean applied() {
+        restore(Restore.Applied);
+        if (applied) {
+            // Removes the state if none of its persisted peers is still applied, as eager restoring does
+            restore(Restore.Peers);
+        }
         return applied;
     }
 
     @Override
     public boolean expired() {
-        if (duration.limit(TimeUnit.SECONDS) > TEMPORARY) {
+        if (ownDuration().limit(TimeUnit.SECONDS) > TEMPORARY) {
             return isExpired();
         } else {
-            for (Object peer : peers) {
+            for (Object peer : peerSet()) {
                 if (!(peer instanceof ItemGuid)) {
                     StateImpl peerState = state(peer);
                     if (!peerState.isExpired()) {
@@ -405,24 +492,24 @@ public class StateImpl implements State, State.Options, StateMaps.Attributes {
     }
 
     boolean isExpired() {
-        return duration.expired();
+        return ownDuration().expired();
     }
 
     @Override
     public void remove() {
-        if (!peers.isEmpty()) {
-            Object[] copyOfPeers = new Object[peers.size()];
-            for (Object peer : peers.toArray(copyOfPeers)) {
+        if (!peerSet().isEmpty()) {
+            Object[] copyOfPeers = new Object[peerSet().size()];
+            for (Object peer : peerSet().toArray(copyOfPeers)) {
                 if (peer instanceof ItemGuid) {
-                    peers.remove(peer);
+                    peerSet().remove(peer);
                 } else {
                     state(peer).removeFrom(item);
                 }
             }
-            peers.clear();
+            peerSet().clear();
         }
 
-        attributes.clear();
+        attributeSet().clear();
         setRemoved();
         if (isPersisted()) {
             removePersistence();
@@ -440,8 +527,8 @@ public class StateImpl implements State, State.Options, StateMaps.Attributes {
                 throw new IllegalArgumentException();
             }
 
-            if (peers.contains(peer)) {
-                peers.remove(peer);
+            if (peerSet().contains(peer)) {
+                peerSet().remove(peer);
 
                 if (!(peer instanceof ItemGuid)) {
                     if (!(peer instanceof ItemImpl)) {
@@ -459,7 +546,7 @@ public class StateImpl implements State, State.Options, StateMaps.Attributes {
             }
         }
 
-        if (peers.isEmpty()) {
+        if (peerSet().isEmpty()) {
             remove();
         } else if (isPersisted()) {
             updatePersistence();
@@ -472,17 +559,17 @@ public class StateImpl implements State, State.Options, StateMaps.Attributes {
 
     public long instancesOfSameKind(Object value) {
         Object requested = value instanceof Item ? ((ItemImpl) value).value : value;
-        return peers.stream().filter(peer -> {
+        return peerSet().stream().filter(peer -> {
             return (peer instanceof ItemImpl && ((ItemImpl) peer).value == requested);
         }).count();
     }
 
     private void removeRepresentingItems(Object value) {
-        for (Object peer : new HashSet<>(peers)) {
+        for (Object peer : new HashSet<>(peerSet())) {
             if (peer instanceof ItemImpl) {
                 ItemImpl itemImpl = (ItemImpl) peer;
                 if (QualifiedItem.of(itemImpl.value).equals(QualifiedItem.of(value))) {
-                    peers.remove(itemImpl);
+                    peerSet().remove(itemImpl);
                     itemImpl.releaseInstanceGuid();
                 }
             }
@@ -497,7 +584,7 @@ public class StateImpl implements State, State.Options, StateMaps.Attributes {
     }
 
     private boolean allPeersAreTemporary() {
-        for (Object peer : peers) {
+        for (Object peer : peerSet()) {
             if (peer instanceof ItemGuid) {
                 continue;
             } else if (state(peer).isPersisted()) {
@@ -507,11 +594,12 @@ public class StateImpl implements State, State.Options, StateMaps.Attributes {
         return true;
     }
 
-    private boolean isPersisted() {
+    boolean isPersisted() {
         return appliedStorage.available();
     }
 
     private void removePersistence() {
+        restore();
         appliedStorage.clear();
         durationStorage.clear();
         peerStorage.clear();
@@ -519,39 +607,45 @@ public class StateImpl implements State, State.Options, StateMaps.Attributes {
     }
 
     private void setApplied() {
+        unrestored.remove(Restore.Applied);
         applied = true;
     }
 
     private void setRemoved() {
+        unrestored.remove(Restore.Applied);
         applied = false;
     }
 
+    /**
+     * Shows only the fields that have been restored already, since restoring may change persistence.
+     */
     @Override
     public String toString() {
         String name = "name=" + (domain.isEmpty() ? "" : domain) + QualifiedItem.nameOf(item);
 
-        Date date = new Date(duration.start(TimeUnit.MILLISECONDS));
-
-        long limit = duration.limit(TimeUnit.SECONDS);
-        String timespan = (limit > 0 ? "+" : " ") + limit2String(limit);
+        String timespan;
+        if (unrestored.contains(Restore.Duration)) {
+            timespan = " duration=?";
+        } else {
+            Date date = new Date(duration.start(TimeUnit.MILLISECONDS));
+            long limit = duration.limit(TimeUnit.SECONDS);
+            timespan = " " + date + (limit > 0 ? "+" : " ") + limit2String(limit);
+        }
 
-        return name + " " + date + timespan + " peers=" + StateMaps.toStringWithoutRecursion(peers);
+        String peerString = unrestored.contains(Restore.Peers) ? "?" : StateMaps.toStringWithoutRecursion(peers);
+        return name + timespan + " peers=" + peerString;
     }
 
+    /**
+     * States are identified by their domain and item, which doesn't need any persisted fields to be restored.
+     */
     @Override
     public int hashCode() {
         final int prime = 31;
         int result = 1;
         result = prime * result + this.stateMaps.hashCode();
-        result = prime * result + ((attributeStorage == null) ? 0 : attributeStorage.hashCode());
-        result = prime * result + ((attributes == null) ? 0 : attributes.hashCode());
         result = prime * result + ((domain == null) ? 0 : domain.hashCode());
-        result = prime * result + ((appliedStorage == null) ? 0 : appliedStorage.hashCode());
-        result = prime * result + ((duration == null) ? 0 : duration.hashCode());
-        result = prime * result + ((durationStorage == null) ? 0 : durationStorage.hashCode());
         result = prime * result + ((item == null) ? 0 : item.hashCode());
-        result = prime * result + ((peerStorage == null) ? 0 : peerStorage.hashCode());
-        result = prime * result + ((peers == null) ? 0 : peers.hashCode());
         return result;
     }
 
@@ -574,45 +668,16 @@ public class StateImpl implements State, State.Options, StateMaps.Attributes {
         StateImpl other = (StateImpl) obj;
         if (!this.stateMaps.equals(other.stateMaps))
             return false;
-        if (attributeStorage == null) {
-            if (other.attributeStorage != null)
-                return false;
-        } else if (!attributeStorage.equals(other.attributeStorage))
-            return false;
-        if (!attributes.equals(other.attributes))
-            return false;
         if (domain == null) {
             if (other.domain != null)
                 return false;
         } else if (!domain.equals(other.domain))
             return false;
-        if (appliedStorage == null) {
-            if (other.appliedStorage != null)
-                return false;
-        } else if (!appliedStorage.equals(other.appliedStorage))
-            return false;
-        if (duration == null) {
-            if (other.duration != null)
-                return false;
-        } else if (!duration.equals(other.duration))
-            return false;
-        if (durationStorage == null) {
-            if (other.durationStorage != null)
-                return false;
-        } else if (!durationStorage.equals(other.durationStorage))
-            return false;
         if (item == null) {
             if (other.item != null)
                 return false;
         } else if (!item.equals(other.item))
             return false;
-        if (peerStorage == null) {
-            if (other.peerStorage != null)
-                return false;
-        } else if (!peerStorage.equals(other.peerStorage))
-            return false;
-        if (!peers.equals(other.peers))
-            return false;
         return true;
     }
 }
\ No newline at end of file
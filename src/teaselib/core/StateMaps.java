@@ -2,6 +2,7 @@ package teaselib.core;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -9,9 +10,11 @@ import java.util.List;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
+import teaselib.Config;
 import teaselib.Duration;
 import teaselib.State;
 import teaselib.core.state.StateProxy;
+import teaselib.core.util.AttributeIndex;
 import teaselib.core.util.Persist;
 import teaselib.core.util.PersistedObject;
 import teaselib.core.util.QualifiedItem;
@@ -34,11 +37,16 @@ public class StateMaps {
     }
 
     final TeaseLib teaseLib;
+    final boolean restoreEagerly;
+    final StateIds ids;
     long startupTimeSeconds;
     final Domains cache = new Domains();
 
     public StateMaps(TeaseLib teaseLib) {
         this.teaseLib = teaseLib;
+        this.restoreEagerly = teaseLib.config.has(Config.Debug.RestoreStatesEagerly)
+                && Boolean.parseBoolean(teaseLib.config.get(Config.Debug.RestoreStatesEagerly));
+        this.ids = new StateIds(teaseLib.persistence);
         clear();
     }
 
@@ -102,14 +110,14 @@ public class StateMaps {
 
                 QualifiedItem qualifiedItem = QualifiedItem.of(((StateImpl) state).item);
                 StateMap stateMapForQualifiedKey = stateMap(domain, qualifiedItem);
-                String qualifiedKey = qualifiedItem.name().toLowerCase();
+                String qualifiedKey = qualifiedItem.nameKey();
                 stateMapForQualifiedKey.put(qualifiedKey, state);
                 return state;
             }
         } else if (item.value() instanceof StateImpl) {
             StateImpl stateImpl = (StateImpl) item.value();
             StateMap stateMap = stateMap(domain, QualifiedItem.of(stateImpl.item));
-            String key = item.name().toLowerCase();
+            String key = item.nameKey();
             State existing = stateMap.get(key);
             if (existing == null) {
                 State state = (State) item.value();
@@ -123,7 +131,7 @@ public class StateMaps {
             }
         } else {
             StateMap stateMap = stateMap(domain, item);
-            String key = item.name().toLowerCase();
+            String key = item.nameKey();
             State state = stateMap.get(key);
             if (state == null) {
                 state = new StateImpl(this, domain, item.value());
@@ -136,18 +144,41 @@ public class StateMaps {
         }
     }
 
+    /**
+     * Restores the persisted fields of the states of the items at once, instead of on first access. Use this to load a
+     * known working set before querying it.
+     */
+    public void preload(String domain, Collection<?> items) {
+        for (Object item : items) {
+            State state = state(domain, item);
+            if (state instanceof StateImpl) {
+                ((StateImpl) state).restore();
+            }
+        }
+    }
+
     private Set<State> scheduledForAutoRemoval = new HashSet<>();
 
     private boolean mustBeAutoRemoved(State state) {
-        if (state.expired()) {
-            Duration duration = state.duration();
-            long limit = duration.limit(TimeUnit.SECONDS);
-            if (limit > State.TEMPORARY) {
-                long autoRemovalTime = duration.end(TimeUnit.SECONDS) + limit / 2;
-                if (autoRemovalTime < startupTimeSeconds) {
-                    return true;
-                }
+        if (state instanceof StateImpl) {
+            // States that haven't been persisted don't expire, and only the own duration is checked,
+            // since the durations of the peers would restore them
+            StateImpl stateImpl = (StateImpl) state;
+            if (!stateImpl.isPersisted()) {
+                return false;
             }
+            Duration duration = stateImpl.ownDuration();
+            return duration.expired() && mustBeAutoRemoved(duration);
+        } else {
+            return state.expired() && mustBeAutoRemoved(state.duration());
+        }
+    }
+
+    private boolean mustBeAutoRemoved(Duration duration) {
+        long limit = duration.limit(TimeUnit.SECONDS);
+        if (limit > State.TEMPORARY) {
+            long autoRemovalTime = duration.end(TimeUnit.SECONDS) + limit / 2;
+            return autoRemovalTime < startupTimeSeconds;
         }
         return false;
     }
@@ -161,11 +192,73 @@ public class StateMaps {
     }
 
     public static boolean hasAllAttributes(Set<Object> availableAttributes, Object[] desiredAttributes) {
-        return Arrays.stream(desiredAttributes).map(desiredAttribute -> QualifiedItem.of(stripState(desiredAttribute)))
-                .filter(desiredQualifiedAttribute -> availableAttributes.stream()
-                        .map(availableAttribute -> QualifiedItem.of(stripState(availableAttribute)))
-                        .anyMatch(desiredQualifiedAttribute::equals))
-                .count() == desiredAttributes.length;
+        IndexedAttributes indexedAttributes = null;
+        for (Object desiredAttribute : desiredAttributes) {
+            // Enumeration values are unique, and their qualified items are interned
+            if (desiredAttribute instanceof Enum<?> && availableAttributes.contains(desiredAttribute)) {
+                continue;
+            }
+
+            if (indexedAttributes == null) {
+                indexedAttributes = new IndexedAttributes(availableAttributes);
+            }
+            if (!indexedAttributes.has(desiredAttribute)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Indexes the available attributes once per query, instead of comparing each desired attribute to all available
+     * attributes.
+     */
+    private static final class IndexedAttributes {
+        private final Set<Object> available;
+        private final BitSet indexed = new BitSet();
+        private final List<QualifiedItem> others = new ArrayList<>();
+
+        IndexedAttributes(Set<Object> available) {
+            this.available = available;
+            for (Object attribute : available) {
+                Object value = stripState(attribute);
+                int id = AttributeIndex.of(value);
+                if (id == AttributeIndex.None) {
+                    others.add(QualifiedItem.of(value));
+                } else {
+                    indexed.set(id);
+                }
+            }
+        }
+
+        boolean has(Object desiredAttribute) {
+            Object value = stripState(desiredAttribute);
+            int id = AttributeIndex.of(value);
+            if (id == AttributeIndex.None) {
+                return hasAttribute(available, value);
+            } else if (indexed.get(id)) {
+                return true;
+            } else {
+                // Items and states may still equal the desired attribute
+                QualifiedItem desired = QualifiedItem.of(value);
+                for (QualifiedItem other : others) {
+                    if (desired.equals(other)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        }
+    }
+
+    private static boolean hasAttribute(Set<Object> availableAttributes, Object desiredAttribute) {
+        QualifiedItem desiredQualifiedAttribute = QualifiedItem.of(desiredAttribute);
+        for (Object availableAttribute : availableAttributes) {
+            if (desiredQualifiedAttribute.equals(QualifiedItem.of(stripState(availableAttribute)))) {
+                return true;
+            }
+        }
+        return false;
     }
 
     public static Object[] flatten(Object[] peers) {
@@ -202,7 +295,7 @@ public class StateMaps {
     }
 
     private StateMap stateMap(String domain, QualifiedItem item) {
-        return stateMap(domain, item.namespace().toLowerCase());
+        return stateMap(domain, item.namespaceKey());
     }
 
     StateMap stateMap(String domain, String namespaceKey) {
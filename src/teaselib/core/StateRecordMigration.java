@@ -0,0 +1,164 @@
+package teaselib.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Properties;
+
+import teaselib.core.debug.DebugPersistence;
+import teaselib.core.debug.DebugStorage;
+import teaselib.core.util.QualifiedName;
+import teaselib.core.util.SortedProperties;
+
+/**
+ * Converts the state records of settings files from the legacy text format to the compact format of
+ * {@link StateRecords}, and adds the interned values to the {@link StateIds} table.
+ * <p>
+ * There's a single id table, which the runtime reads from the {@code States} namespace of its persistence. So records
+ * must be migrated against that table, either in-process via {@link #migrate(TeaseLib, Path...)}, or by passing the
+ * properties file that holds the {@code States} namespace to the command line tool.
+ * <p>
+ * Legacy records remain readable, and states are written in the compact format whenever they change, so migrating is
+ * optional. The original files are kept as a backup.
+ * <p>
+ * Usage: {@code StateRecordMigration id-table-file file...}
+ *
+ * @author Citizen-Cane
+ *
+ */
+public final class StateRecordMigration {
+    private static final String DURATION = ".state.duration";
+    private static final String PEERS = ".state.peers";
+    private static final String ATTRIBUTES = ".state.attributes";
+
+    private final Properties properties;
+    private final StateIds ids;
+
+    StateRecordMigration(Properties properties, StateIds ids) {
+        this.properties = properties;
+        this.ids = ids;
+    }
+
+    /**
+     * @return The number of converted records.
+     */
+    int migrate() {
+        int converted = 0;
+        for (String key : properties.stringPropertyNames()) {
+            String value = properties.getProperty(key);
+            if (value.isEmpty() || StateRecords.isEncoded(value)) {
+                continue;
+            } else if (key.endsWith(DURATION)) {
+                properties.setProperty(key, StateRecords.fromLegacyDuration(value));
+                converted++;
+            } else if (key.endsWith(PEERS) || key.endsWith(ATTRIBUTES)) {
+                properties.setProperty(key, StateRecords.fromLegacyIds(value, ids));
+                converted++;
+            }
+        }
+        return converted;
+    }
+
+    /**
+     * Migrates settings files against the id table of the running instance, which writes the interned values to
+     * wherever it persists the {@code States} namespace.
+     * 
+     * @return The number of converted records.
+     */
+    public static int migrate(TeaseLib teaseLib, Path... files) throws IOException {
+        int converted = 0;
+        for (Path file : files) {
+            converted += migrate(file, teaseLib.stateMaps.ids);
+        }
+        return converted;
+    }
+
+    static int migrate(Path file, StateIds ids) throws IOException {
+        Properties properties = load(file);
+        int converted = new StateRecordMigration(properties, ids).migrate();
+        if (converted > 0) {
+            store(properties, file);
+        }
+        return converted;
+    }
+
+    /**
+     * Migrates settings files against the id table persisted in a properties file, and adds the interned values to
+     * that file.
+     * 
+     * @return The number of converted records.
+     */
+    static int migrate(Path idTable, List<Path> files) throws IOException {
+        Properties table = Files.exists(idTable) ? load(idTable) : new SortedProperties();
+        DebugStorage storage = new DebugStorage();
+        String prefix = StateIds.Namespace + ".";
+        for (String key : table.stringPropertyNames()) {
+            if (key.startsWith(prefix)) {
+                storage.put(new QualifiedName(QualifiedName.NONE, StateIds.Namespace, key.substring(prefix.length())),
+                        table.getProperty(key));
+            }
+        }
+        StateIds ids = new StateIds(new DebugPersistence(storage));
+
+        int converted = 0;
+        for (Path file : files) {
+            if (Files.exists(idTable) && Files.isSameFile(file, idTable)) {
+                converted += new StateRecordMigration(table, ids).migrate();
+            } else {
+                converted += migrate(file, ids);
+            }
+        }
+
+        boolean changed = converted > 0;
+        for (Entry<QualifiedName, String> entry : storage.entrySet()) {
+            String key = entry.getKey().toString();
+            if (!entry.getValue().equals(table.getProperty(key))) {
+                table.setProperty(key, entry.getValue());
+                changed = true;
+            }
+        }
+        if (changed) {
+            store(table, idTable);
+        }
+        return converted;
+    }
+
+    private static Properties load(Path file) throws IOException {
+        Properties properties = new SortedProperties();
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            properties.load(inputStream);
+        }
+        return properties;
+    }
+
+    private static void store(Properties properties, Path file) throws IOException {
+        Path tempPath = file.resolveSibling(file.getFileName() + ".temp");
+        try (OutputStream outputStream = Files.newOutputStream(tempPath)) {
+            properties.store(outputStream, "Teaselib settings file");
+        }
+        if (Files.exists(file)) {
+            Files.copy(file, file.resolveSibling(file.getFileName() + ".backup"), StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.move(tempPath, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public static void main(String[] argv) throws IOException {
+        if (argv.length < 2) {
+            throw new IllegalArgumentException(StateRecordMigration.class.getSimpleName() + ": id-table-file files...");
+        }
+
+        Path idTable = Paths.get(argv[0]);
+        for (int i = 1; i < argv.length; i++) {
+            Path file = Paths.get(argv[i]);
+            int converted = migrate(idTable, Collections.singletonList(file));
+            System.out.println(file + ": " + converted + " state records converted");
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package teaselib.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+import teaselib.core.util.PersistedObject;
+
+/**
+ * Compact encoding of persisted state fields. Encoded values start with {@link #Marker}, whereas legacy values start
+ * with a number or a persisted object, so both formats can be read.
+ * <ul>
+ * <li>A duration is encoded as start and limit in seconds, each as a fixed-width 64 bit value of 11 base64url digits.
+ * <li>Peers and attributes are encoded as comma separated ids of the values interned in {@link StateIds}.
+ * </ul>
+ * Decoding reads the characters of the persisted value in place, without splitting it into intermediate strings.
+ *
+ * @author Citizen-Cane
+ *
+ */
+final class StateRecords {
+    static final char Marker = '@';
+
+    private static final String Digits = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+    private static final int DigitBits = 6;
+    private static final int LongWidth = 11;
+    private static final int DurationLength = 1 + 2 * LongWidth;
+
+    private static final char IdSeparator = ',';
+    private static final int IdRadix = Character.MAX_RADIX;
+
+    private static final int[] DigitValues = new int[128];
+
+    static {
+        Arrays.fill(DigitValues, -1);
+        for (int i = 0; i < Digits.length(); i++) {
+            DigitValues[Digits.charAt(i)] = i;
+        }
+    }
+
+    private StateRecords() {
+    }
+
+    static boolean isEncoded(String value) {
+        return !value.isEmpty() && value.charAt(0) == Marker;
+    }
+
+    static String duration(long start, long limit) {
+        char[] record = new char[DurationLength];
+        record[0] = Marker;
+        encode(start, record, 1);
+        encode(limit, record, 1 + LongWidth);
+        return new String(record);
+    }
+
+    static long start(String duration) {
+        checkDuration(duration);
+        return decode(duration, 1);
+    }
+
+    static long limit(String duration) {
+        checkDuration(duration);
+        return decode(duration, 1 + LongWidth);
+    }
+
+    /**
+     * @param legacy
+     *            Start and limit, separated by a space. The limit may also be {@code TEMPORARY} or {@code INDEFINITELY}.
+     */
+    static String fromLegacyDuration(String legacy) {
+        String[] argv = legacy.split(" ");
+        return duration(Long.parseLong(argv[0]), StateImpl.string2limit(argv[1]));
+    }
+
+    private static void checkDuration(String duration) {
+        if (duration.length() != DurationLength || !isEncoded(duration)) {
+            throw new IllegalArgumentException("Not an encoded duration: '" + duration + "'");
+        }
+    }
+
+    private static void encode(long value, char[] record, int offset) {
+        long bits = value;
+        for (int i = offset + LongWidth - 1; i >= offset; i--) {
+            record[i] = Digits.charAt((int) (bits & ((1 << DigitBits) - 1)));
+            bits >>>= DigitBits;
+        }
+    }
+
+    private static long decode(String record, int offset) {
+        long value = 0;
+        for (int i = offset; i < offset + LongWidth; i++) {
+            value = (value << DigitBits) | digit(record, i);
+        }
+        return value;
+    }
+
+    private static int digit(String record, int index) {
+        char c = record.charAt(index);
+        int value = c < DigitValues.length ? DigitValues[c] : -1;
+        if (value < 0) {
+            throw new IllegalArgumentException("Invalid digit '" + c + "' in '" + record + "'");
+        }
+        return value;
+    }
+
+    static String ids(int[] ids) {
+        StringBuilder record = new StringBuilder(1 + ids.length * 3);
+        record.append(Marker);
+        for (int i = 0; i < ids.length; i++) {
+            if (i > 0) {
+                record.append(IdSeparator);
+            }
+            record.append(Integer.toString(ids[i], IdRadix));
+        }
+        return record.toString();
+    }
+
+    /**
+     * @param legacy
+     *            Persisted values, as written by {@link teaselib.core.util.Persist#persistValues}.
+     */
+    static String fromLegacyIds(String legacy, StateIds ids) {
+        List<String> values = new PersistedObject(ArrayList.class, legacy).toValues();
+        int[] interned = new int[values.size()];
+        for (int i = 0; i < interned.length; i++) {
+            interned[i] = ids.intern(values.get(i));
+        }
+        return ids(interned);
+    }
+
+    static void forEachId(String ids, IntConsumer action) {
+        if (!isEncoded(ids)) {
+            throw new IllegalArgumentException("Not an encoded id list: '" + ids + "'");
+        }
+        int id = 0;
+        boolean empty = true;
+        for (int i = 1; i < ids.length(); i++) {
+            char c = ids.charAt(i);
+            if (c == IdSeparator) {
+                if (empty) {
+                    throw new IllegalArgumentException("Missing id in '" + ids + "'");
+                }
+                action.accept(id);
+                id = 0;
+                empty = true;
+            } else {
+                int digit = Character.digit(c, IdRadix);
+                if (digit < 0) {
+                    throw new IllegalArgumentException("Invalid id digit '" + c + "' in '" + ids + "'");
+                }
+                id = id * IdRadix + digit;
+                empty = false;
+            }
+        }
+        if (!empty) {
+            action.accept(id);
+        }
+    }
+}
@@ -50,6 +50,7 @@ import teaselib.core.util.ObjectMap;
 import teaselib.core.util.QualifiedItem;
 import teaselib.core.util.QualifiedName;
 import teaselib.core.util.ReflectionUtils;
+import teaselib.core.util.Trace;
 import teaselib.functional.RunnableScript;
 import teaselib.motiondetection.MotionDetector;
 import teaselib.util.Item;
@@ -66,9 +67,10 @@ public class TeaseLib implements AutoCloseable {
     public static final String DefaultName = "";
 
     private static final String TranscriptLogFileName = "TeaseLib session transcript.log";
+    private static final String TimelineFileName = "TeaseLib render timeline.json";
 
     public final Host host;
-    private final Persistence persistence;
+    final Persistence persistence;
     final UserItems userItems;
     public final TeaseLibLogger transcript;
 
@@ -80,8 +82,10 @@ public class TeaseLib implements AutoCloseable {
     private final AtomicReference<Thread> timeAdvanceThread = new AtomicReference<>(null);
     private final AtomicLong frozenTime = new AtomicLong(Long.MIN_VALUE);
     private final AtomicLong timeOffsetMillis = new AtomicLong(0);
+    private volatile VirtualClock virtualClock = null;
     private final Set<TimeAdvanceListener> timeAdvanceListeners = new HashSet<>();
     private final Set<CheckPointListener> checkPointListeners = new HashSet<>();
+    private final Set<ResourceLoader> resourceLoaders = new LinkedHashSet<>();
 
     public TeaseLib(final Host host, Persistence persistence) throws IOException {
         this(host, persistence, new TeaseLibConfigSetup(host));
@@ -239,9 +243,52 @@ public class TeaseLib implements AutoCloseable {
 
     @Override
     public void close() throws Exception {
-        globals.close();
-        if (host instanceof AutoCloseable) {
-            ((AutoCloseable) host).close();
+        try {
+            globals.close();
+            if (host instanceof AutoCloseable) {
+                ((AutoCloseable) host).close();
+            }
+        } finally {
+            try {
+                closeResources();
+            } finally {
+                writeTimeline();
+            }
+        }
+    }
+
+    /**
+     * Closes the resource loader together with this instance.
+     */
+    void closeOnExit(ResourceLoader resources) {
+        synchronized (resourceLoaders) {
+            resourceLoaders.add(resources);
+        }
+    }
+
+    private void closeResources() throws IOException {
+        List<ResourceLoader> closing;
+        synchronized (resourceLoaders) {
+            closing = new ArrayList<>(resourceLoaders);
+            resourceLoaders.clear();
+        }
+        for (ResourceLoader resources : closing) {
+            resources.close();
+        }
+    }
+
+    /**
+     * Failing to write the timeline is only logged, to not replace an exception thrown while closing.
+     */
+    private void writeTimeline() {
+        if (Trace.Enabled) {
+            try {
+                File timeline = new File(host.getLocation(Location.Log), TimelineFileName);
+                Trace.writeTimeline(timeline.toPath());
+                logger.info("Render timeline written to {}", timeline.getAbsolutePath());
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Failed to write render timeline: {}", e.getMessage(), e);
+            }
         }
     }
 
@@ -254,7 +301,18 @@ public class TeaseLib implements AutoCloseable {
      */
     public void sleep(long duration, TimeUnit unit) {
         if (duration > 0) {
-            if (isTimeFrozen()) {
+            VirtualClock clock = virtualClock;
+            if (clock != null) {
+                try {
+                    clock.sleep(unit.toMillis(duration));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new ScriptInterruptedException(e);
+                }
+                if (Thread.interrupted()) {
+                    throw new ScriptInterruptedException();
+                }
+            } else if (isTimeFrozen()) {
                 if (timeAdvanceThread.get() == null || timeAdvanceThread.get() == Thread.currentThread()) {
                     advanceTime(duration, unit);
                     fireTimeAdvanced();
@@ -331,6 +389,30 @@ public class TeaseLib implements AutoCloseable {
         timeAdvanceThread.set(null);
     }
 
+    /**
+     * Runs the session on a simulated clock: time is frozen, and calls to {@link #sleep} - from the script as well as
+     * from renderer threads - don't wait in real time. Instead each sleeper registers its deadline on a discrete-event
+     * clock, which advances to the earliest deadline once all threads appear to be idle, and wakes sleepers in deadline
+     * order. The order of events is reproducible on a best effort basis only - see {@link VirtualClock}. Renderers that
+     * would play media in real time sleep for the duration of the media instead.
+     * <p>
+     * Time advances are serialized, so time advance listeners observe them one after another in a single order.
+     */
+    void useVirtualTime() {
+        freezeTime();
+        advanceTimeAllThreads();
+        VirtualClock clock = new VirtualClock(millis -> {
+            advanceTime(millis, TimeUnit.MILLISECONDS);
+            fireTimeAdvanced();
+        });
+        clock.participate(Thread.currentThread());
+        virtualClock = clock;
+    }
+
+    public boolean isTimeVirtual() {
+        return virtualClock != null;
+    }
+
     void advanceTime(long duration, TimeUnit unit) {
         if (duration == Long.MAX_VALUE) {
             timeOffsetMillis.set(Long.MAX_VALUE - frozenTime.get());
@@ -340,6 +422,11 @@ public class TeaseLib implements AutoCloseable {
     }
 
     void resumeTime() {
+        VirtualClock clock = virtualClock;
+        if (clock != null) {
+            virtualClock = null;
+            clock.stop();
+        }
         frozenTime.set(Long.MIN_VALUE);
         timeAdvanceThread.set(null);
     }
@@ -142,7 +142,7 @@ public class UserItemsImpl implements UserItems {
 
         String enumName = "teaselib." + itemClass.getNodeName() + "." + itemName;
         Enum<?> enumValue = ReflectionUtils.getEnum(QualifiedItem.of(enumName));
-        List<Enum<?>> defaultPeers = new ArrayList<>(Arrays.asList(defaults(new QualifiedEnum(enumValue))));
+        List<Enum<?>> defaultPeers = new ArrayList<>(Arrays.asList(defaults(QualifiedEnum.of(enumValue))));
         List<Enum<?>> itemAttributes = new ArrayList<>();
 
         NodeList childNodes = itemNode.getChildNodes();
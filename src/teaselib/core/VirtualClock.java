@@ -0,0 +1,150 @@
+package teaselib.core;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+
+/**
+ * A discrete-event clock for virtual time. Each sleeping thread registers a deadline, and the clock advances to the
+ * earliest deadline once the threads that take part in virtual time appear to be idle - sleeping, waiting or
+ * terminated.
+ * <p>
+ * Sleepers are woken one at a time, ordered by deadline and then by the order they started sleeping. The next sleeper
+ * is woken only after the previous one appears to be idle again. As a result, renderers that sleep concurrently
+ * overlap in virtual time as they would in real time, and in most cases events happen in the same order on every run.
+ * <p>
+ * The ordering is best effort though: the participating threads don't report when they're busy, so idleness is
+ * derived by polling their thread states every {@link #SettleMillis} of real time, and the clock waits for that long
+ * after each change. As a result, each virtual sleep takes at least that long in real time. A thread that is woken
+ * or busy but not scheduled yet may still look idle on a loaded machine, and threads that stay busy - or appear to -
+ * for {@link #MaxSettleMillis} are ignored, and the clock advances anyway. In both cases events may happen in a
+ * different order than they would in real time.
+ *
+ * @author Citizen-Cane
+ *
+ */
+final class VirtualClock {
+    static final long SettleMillis = 5;
+    static final long MaxSettleMillis = 1000;
+
+    /**
+     * Deadline of sleepers that are only woken by interrupting them.
+     */
+    static final long Never = Long.MAX_VALUE;
+
+    private static final class Sleeper {
+        final Thread thread;
+        final long deadline;
+        final long sequence;
+
+        Sleeper(Thread thread, long deadline, long sequence) {
+            this.thread = thread;
+            this.deadline = deadline;
+            this.sequence = sequence;
+        }
+    }
+
+    private static final Comparator<Sleeper> EarliestFirst = Comparator
+            .<Sleeper> comparingLong(sleeper -> sleeper.deadline).thenComparingLong(sleeper -> sleeper.sequence);
+
+    private final LongConsumer advance;
+    private final PriorityQueue<Sleeper> sleepers = new PriorityQueue<>(EarliestFirst);
+    private final Set<Thread> participants = Collections.newSetFromMap(new WeakHashMap<>());
+
+    private long now = 0;
+    private long sequence = 0;
+    private long lastChange = System.nanoTime();
+    private boolean stopped = false;
+
+    /**
+     * @param advance
+     *            Advances the time of the session by the given number of milliseconds, or to the end of time for
+     *            {@link #Never}. It's called with the clock locked, so advances are observed in a single order.
+     */
+    VirtualClock(LongConsumer advance) {
+        this.advance = advance;
+    }
+
+    /**
+     * Registers a thread that takes part in virtual time before it sleeps for the first time.
+     */
+    synchronized void participate(Thread thread) {
+        participants.add(thread);
+    }
+
+    /**
+     * Blocks until the clock has advanced by the duration, or the clock has been stopped.
+     */
+    synchronized void sleep(long millis) throws InterruptedException {
+        if (stopped) {
+            return;
+        }
+
+        long deadline = millis >= Never - now ? Never : now + millis;
+        Thread current = Thread.currentThread();
+        Sleeper sleeper = new Sleeper(current, deadline, sequence++);
+        participants.add(current);
+        sleepers.add(sleeper);
+        changed();
+        try {
+            while (!stopped) {
+                if (sleepers.peek() == sleeper && isSettled()) {
+                    sleepers.poll();
+                    if (deadline > now) {
+                        advance.accept(deadline == Never ? Never : deadline - now);
+                        now = deadline;
+                    }
+                    return;
+                }
+                // Thread states can't be observed, so the earliest sleeper polls them
+                wait(sleepers.peek() == sleeper ? SettleMillis : 0);
+            }
+        } finally {
+            sleepers.remove(sleeper);
+            changed();
+        }
+    }
+
+    private void changed() {
+        lastChange = System.nanoTime();
+        notifyAll();
+    }
+
+    private boolean isSettled() {
+        long settled = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastChange);
+        if (settled < SettleMillis) {
+            return false;
+        } else if (settled >= MaxSettleMillis) {
+            return true;
+        } else {
+            Set<Thread> sleeping = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (Sleeper sleeper : sleepers) {
+                sleeping.add(sleeper.thread);
+            }
+            for (Thread thread : participants) {
+                if (!sleeping.contains(thread) && isBusy(thread)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static boolean isBusy(Thread thread) {
+        Thread.State state = thread.getState();
+        return state == Thread.State.RUNNABLE || state == Thread.State.BLOCKED;
+    }
+
+    /**
+     * Wakes all sleepers.
+     */
+    synchronized void stop() {
+        stopped = true;
+        changed();
+    }
+}
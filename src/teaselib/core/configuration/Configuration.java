@@ -13,6 +13,9 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 import teaselib.core.util.FileUtilities;
 import teaselib.core.util.QualifiedItem;
@@ -38,6 +41,18 @@ public class Configuration {
     private final List<Properties> defaultProperties = new ArrayList<>();
     private final Properties sessionProperties = new Properties();
     private Properties persistentProperties;
+    private final AtomicInteger modifications = new AtomicInteger();
+    private final Map<Class<?>, Derived<?>> derivedValues = new ConcurrentHashMap<>();
+
+    private static final class Derived<T> {
+        final int modifications;
+        final T value;
+
+        Derived(int modifications, T value) {
+            this.modifications = modifications;
+            this.value = value;
+        }
+    }
 
     Optional<File> userPath = Optional.empty();
 
@@ -157,6 +172,7 @@ public class Configuration {
         }
         defaultProperties.add(configurationFile);
         persistentProperties = configurationFile;
+        modifications.incrementAndGet();
     }
 
     public void add(String configResource) throws IOException {
@@ -172,6 +188,7 @@ public class Configuration {
         }
         defaultProperties.add(configurationFile);
         persistentProperties = configurationFile;
+        modifications.incrementAndGet();
     }
 
     public boolean has(String property) {
@@ -231,12 +248,45 @@ public class Configuration {
 
     public Configuration set(QualifiedItem property, String value) {
         sessionProperties.setProperty(property.toString(), value);
+        modifications.incrementAndGet();
         return this;
     }
 
     public Configuration setSystemProperty(QualifiedItem property, String value) {
         System.getProperties().setProperty(property.toString(), value);
+        modifications.incrementAndGet();
         return this;
     }
 
+    /**
+     * Counts changes to the configuration, in order to detect when values derived from the configuration have to be
+     * resolved again. System properties set outside of the configuration aren't tracked.
+     * 
+     * @return A number that changes whenever a property is set or a configuration file is added.
+     */
+    public int modifications() {
+        return modifications.get();
+    }
+
+    /**
+     * Caches a value derived from this configuration, until the configuration is modified.
+     * 
+     * @param type
+     *            The type of the derived value, which also serves as the key.
+     * @param resolver
+     *            Resolves the value from this configuration.
+     * @return The cached value, or the newly resolved value if the configuration has been modified since.
+     */
+    public <T> T derived(Class<T> type, Function<Configuration, T> resolver) {
+        int current = modifications.get();
+        Derived<?> derived = derivedValues.get(type);
+        if (derived != null && derived.modifications == current) {
+            return type.cast(derived.value);
+        } else {
+            T value = resolver.apply(this);
+            derivedValues.put(type, new Derived<>(current, value));
+            return value;
+        }
+    }
+
 }
@@ -0,0 +1,63 @@
+package teaselib.core.debug;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sound.sampled.AudioFormat;
+
+import teaselib.core.media.AudioSink;
+
+/**
+ * Discards all audio, for running without a sound device.
+ * 
+ * @author Citizen-Cane
+ *
+ */
+public class NullAudioSink implements AudioSink {
+    private final AtomicInteger opened = new AtomicInteger(0);
+    private final AtomicInteger closed = new AtomicInteger(0);
+    private final AtomicLong written = new AtomicLong(0);
+
+    @Override
+    public Line open(AudioFormat format) {
+        opened.incrementAndGet();
+        return new Line() {
+            @Override
+            public AudioFormat format() {
+                return format;
+            }
+
+            @Override
+            public void write(byte[] data, int offset, int length) {
+                written.addAndGet(length);
+            }
+
+            @Override
+            public void drain() {
+                // Ignore
+            }
+
+            @Override
+            public void flush() {
+                // Ignore
+            }
+
+            @Override
+            public void close() {
+                closed.incrementAndGet();
+            }
+        };
+    }
+
+    public int opened() {
+        return opened.get();
+    }
+
+    public int closed() {
+        return closed.get();
+    }
+
+    public long written() {
+        return written.get();
+    }
+}
@@ -0,0 +1,358 @@
+package teaselib.core.media;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import teaselib.Config;
+import teaselib.core.Audio;
+import teaselib.core.ResourceLoader;
+import teaselib.core.TeaseLib;
+import teaselib.core.configuration.Configuration;
+import teaselib.core.util.ExceptionUtil;
+
+/**
+ * Keeps short sound clips decoded in memory, and plays them on lines that are kept open between playbacks. Repeated
+ * clips like ticks, bells and prompts start playing without reading, decoding or opening an audio line first.
+ * <p>
+ * The memory budget for decoded clips is configured by {@link Config.Render#AudioCacheSize}. The cache is disabled by
+ * default, and clips that are too long, can't be decoded by the Java Sound API or exceed the budget are played by the
+ * host. These clips are remembered by their fingerprint, so they're only read and examined once.
+ * 
+ * @author Citizen-Cane
+ *
+ */
+public class AudioCache implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(AudioCache.class);
+
+    private static final long DefaultAudioCacheSize = 0;
+    static final int MaxClipSeconds = 10;
+    static final int IdleLinesPerFormat = 2;
+    private static final int ChunksPerSecond = 20;
+    static final int Buckets = 24;
+
+    static final class Clip {
+        final AudioFormat format;
+        final byte[] data;
+
+        Clip(AudioFormat format, byte[] data) {
+            this.format = format;
+            this.data = data;
+        }
+    }
+
+    private final AudioSink sink;
+    private final long budget;
+
+    private final Map<String, Clip> clips = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<String> uncached = new HashSet<>();
+    private long size = 0;
+    private final Map<String, Deque<AudioSink.Line>> idleLines = new HashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder plays = new LongAdder();
+    private final LongAdder startLatencyNanos = new LongAdder();
+    private final LongAccumulator maxStartLatencyNanos = new LongAccumulator(Math::max, 0);
+    private final AtomicLongArray startLatencyHistogram = new AtomicLongArray(Buckets);
+
+    public AudioCache(Configuration config) {
+        this(new JavaSoundSink(), megabytes(config) * 1024 * 1024);
+    }
+
+    public AudioCache(AudioSink sink, long budget) {
+        this.sink = sink;
+        this.budget = budget;
+    }
+
+    private static long megabytes(Configuration config) {
+        return config.has(Config.Render.AudioCacheSize)
+                ? Long.parseLong(config.get(Config.Render.AudioCacheSize).trim())
+                : DefaultAudioCacheSize;
+    }
+
+    /**
+     * @return The cached audio of the script, or the audio of the host if the clip isn't cached.
+     */
+    public static Audio audio(TeaseLib teaseLib, ResourceLoader resources, String path) {
+        AudioCache audioCache = teaseLib.globals.get(AudioCache.class);
+        Supplier<Audio> host = () -> teaseLib.host.audio(resources, path);
+        return audioCache != null ? audioCache.audio(resources, path, host) : host.get();
+    }
+
+    /**
+     * @param host
+     *            Supplies the audio of the host, for clips that aren't cached.
+     */
+    public Audio audio(ResourceLoader resources, String path, Supplier<Audio> host) {
+        if (budget <= 0) {
+            return host.get();
+        }
+
+        Clip clip;
+        try {
+            clip = clip(resources, path);
+        } catch (IOException e) {
+            logger.warn("Failed to decode {}: {}", path, e.getMessage());
+            clip = null;
+        }
+
+        if (clip == null) {
+            return host.get();
+        } else {
+            preopen(clip.format);
+            return new CachedAudio(clip);
+        }
+    }
+
+    private Clip clip(ResourceLoader resources, String path) throws IOException {
+        String key = path + "\n" + resources.fingerprint(path);
+        synchronized (clips) {
+            Clip clip = clips.get(key);
+            if (clip != null) {
+                hits.increment();
+                return clip;
+            } else if (uncached.contains(key)) {
+                return null;
+            }
+        }
+
+        misses.increment();
+        Clip clip = decode(resources, path);
+        synchronized (clips) {
+            if (clip == null || clip.data.length > budget) {
+                uncached.add(key);
+                return null;
+            } else if (clips.putIfAbsent(key, clip) == null) {
+                size += clip.data.length;
+                evict();
+            }
+        }
+        return clip;
+    }
+
+    private void evict() {
+        Iterator<Clip> leastRecentlyUsed = clips.values().iterator();
+        while (size > budget && leastRecentlyUsed.hasNext()) {
+            size -= leastRecentlyUsed.next().data.length;
+            leastRecentlyUsed.remove();
+        }
+    }
+
+    /**
+     * @return The decoded clip, or null if the clip is too long or the format isn't supported.
+     */
+    private static Clip decode(ResourceLoader resources, String path) throws IOException {
+        try (InputStream resource = new BufferedInputStream(resources.get(path));
+                AudioInputStream encoded = AudioSystem.getAudioInputStream(resource)) {
+            AudioFormat format = encoded.getFormat();
+            AudioFormat pcm = pcm(format);
+            try (AudioInputStream decoded = pcm.matches(format) ? encoded
+                    : AudioSystem.getAudioInputStream(pcm, encoded)) {
+                long frames = decoded.getFrameLength();
+                if (frames == AudioSystem.NOT_SPECIFIED || frames > pcm.getFrameRate() * MaxClipSeconds) {
+                    logger.info("Not caching {} since it's longer than {} seconds", path, MaxClipSeconds);
+                    return null;
+                }
+                return new Clip(pcm, decoded.readAllBytes());
+            }
+        } catch (UnsupportedAudioFileException | IllegalArgumentException e) {
+            logger.info("Not caching {}: {}", path, e.getMessage());
+            return null;
+        }
+    }
+
+    private static AudioFormat pcm(AudioFormat format) {
+        AudioFormat.Encoding encoding = format.getEncoding();
+        if (encoding == AudioFormat.Encoding.PCM_SIGNED || encoding == AudioFormat.Encoding.PCM_UNSIGNED) {
+            return format;
+        } else {
+            int channels = format.getChannels();
+            return new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, format.getSampleRate(), 16, channels,
+                    channels * 2, format.getSampleRate(), false);
+        }
+    }
+
+    /**
+     * Opens a line for the format ahead of playback, so that the first playback of a clip doesn't have to wait for it.
+     */
+    private void preopen(AudioFormat format) {
+        synchronized (idleLines) {
+            if (!idleLines.computeIfAbsent(format.toString(), k -> new ArrayDeque<>()).isEmpty()) {
+                return;
+            }
+        }
+
+        try {
+            release(sink.open(format));
+        } catch (IOException e) {
+            logger.warn("Failed to open audio line: {}", e.getMessage());
+        }
+    }
+
+    private AudioSink.Line acquire(AudioFormat format) throws IOException {
+        synchronized (idleLines) {
+            Deque<AudioSink.Line> lines = idleLines.get(format.toString());
+            if (lines != null && !lines.isEmpty()) {
+                return lines.pop();
+            }
+        }
+        return sink.open(format);
+    }
+
+    private void release(AudioSink.Line line) {
+        synchronized (idleLines) {
+            Deque<AudioSink.Line> lines = idleLines.computeIfAbsent(line.format().toString(),
+                    k -> new ArrayDeque<>());
+            if (lines.size() < IdleLinesPerFormat) {
+                lines.push(line);
+                return;
+            }
+        }
+        line.close();
+    }
+
+    private final class CachedAudio implements Audio {
+        private final Clip clip;
+        private volatile AudioSink.Line line = null;
+
+        CachedAudio(Clip clip) {
+            this.clip = clip;
+        }
+
+        @Override
+        public void load() {
+            // Decoded already
+        }
+
+        @Override
+        public void play() throws InterruptedException {
+            long start = System.nanoTime();
+            AudioSink.Line playing;
+            try {
+                playing = acquire(clip.format);
+            } catch (IOException e) {
+                throw ExceptionUtil.asRuntimeException(e);
+            }
+
+            line = playing;
+            boolean completed = false;
+            try {
+                int frameSize = Math.max(1, clip.format.getFrameSize());
+                int chunk = Math.max(frameSize,
+                        (int) (clip.format.getFrameRate() / ChunksPerSecond) * frameSize);
+                for (int offset = 0; offset < clip.data.length; offset += chunk) {
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                    playing.write(clip.data, offset, Math.min(chunk, clip.data.length - offset));
+                    if (offset == 0) {
+                        started(System.nanoTime() - start);
+                    }
+                }
+                playing.drain();
+                completed = true;
+            } finally {
+                line = null;
+                if (!completed) {
+                    playing.flush();
+                }
+                release(playing);
+            }
+        }
+
+        @Override
+        public void stop() {
+            AudioSink.Line playing = line;
+            if (playing != null) {
+                playing.flush();
+            }
+        }
+    }
+
+    private void started(long nanos) {
+        plays.increment();
+        startLatencyNanos.add(nanos);
+        maxStartLatencyNanos.accumulate(nanos);
+        long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        startLatencyHistogram.incrementAndGet(Math.min(Buckets - 1, 64 - Long.numberOfLeadingZeros(micros)));
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long size() {
+        synchronized (clips) {
+            return size;
+        }
+    }
+
+    public long plays() {
+        return plays.sum();
+    }
+
+    public long averageStartLatency(TimeUnit unit) {
+        long n = plays.sum();
+        return n > 0 ? unit.convert(startLatencyNanos.sum() / n, TimeUnit.NANOSECONDS) : 0;
+    }
+
+    public long maxStartLatency(TimeUnit unit) {
+        return unit.convert(maxStartLatencyNanos.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return The number of playbacks that started within 1, 2, 4, 8, ... microseconds.
+     */
+    public long[] startLatencyHistogram() {
+        long[] histogram = new long[Buckets];
+        for (int i = 0; i < Buckets; i++) {
+            histogram[i] = startLatencyHistogram.get(i);
+        }
+        return histogram;
+    }
+
+    @Override
+    public String toString() {
+        return "hits=" + hits() + " misses=" + misses() + " size=" + size() + " plays=" + plays()
+                + " averageStartLatency=" + averageStartLatency(TimeUnit.MICROSECONDS) + "us maxStartLatency="
+                + maxStartLatency(TimeUnit.MICROSECONDS) + "us";
+    }
+
+    @Override
+    public void close() {
+        if (budget > 0) {
+            logger.info("Audio cache: {}", this);
+        }
+
+        synchronized (idleLines) {
+            idleLines.values().forEach(lines -> lines.forEach(AudioSink.Line::close));
+            idleLines.clear();
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package teaselib.core.media;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import teaselib.core.ResourceLoader;
+
+/**
+ * Determines the duration of sound resources without decoding them, in order to advance virtual time by the duration
+ * of skipped sounds.
+ * <p>
+ * Formats supported by the Java Sound API provide their frame length. MP3 files - the format of prerecorded speech -
+ * are measured from the frame count of their VBR header, or from the bit rate of their first frame.
+ *
+ * @author Citizen-Cane
+ *
+ */
+final class AudioDuration {
+    private static final Logger logger = LoggerFactory.getLogger(AudioDuration.class);
+
+    static final long Unknown = 0;
+
+    private static final int MaxSyncSearch = 64 * 1024;
+
+    private static final int[][] Mpeg1Bitrates = { //
+            { 0, 32, 64, 96, 128, 160, 192, 224, 256, 288, 320, 352, 384, 416, 448 }, //
+            { 0, 32, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 384 }, //
+            { 0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320 } };
+    private static final int[][] Mpeg2Bitrates = { //
+            { 0, 32, 48, 56, 64, 80, 96, 112, 128, 144, 160, 176, 192, 224, 256 }, //
+            { 0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160 }, //
+            { 0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160 } };
+    private static final int[] Mpeg1SampleRates = { 44100, 48000, 32000 };
+
+    private AudioDuration() {
+    }
+
+    /**
+     * @return The duration of the sound in milliseconds, or {@link #Unknown} if the resource doesn't exist or its
+     *         format isn't supported.
+     */
+    static long millis(ResourceLoader resources, String path) {
+        try {
+            if (path.toLowerCase().endsWith(".mp3")) {
+                ByteBuffer mp3 = resources.buffer(path);
+                return mp3 != null ? mp3Millis(mp3) : Unknown;
+            } else {
+                try (InputStream resource = new BufferedInputStream(resources.get(path))) {
+                    return javaSoundMillis(AudioSystem.getAudioFileFormat(resource));
+                }
+            }
+        } catch (IOException | UnsupportedAudioFileException e) {
+            logger.info("Duration of {} unknown: {}", path, e.getMessage());
+            return Unknown;
+        }
+    }
+
+    private static long javaSoundMillis(AudioFileFormat format) {
+        long frames = format.getFrameLength();
+        float frameRate = format.getFormat().getFrameRate();
+        if (frames == AudioSystem.NOT_SPECIFIED || frameRate <= 0) {
+            return Unknown;
+        } else {
+            return (long) (frames * 1000 / frameRate);
+        }
+    }
+
+    static long mp3Millis(ByteBuffer buffer) {
+        ByteBuffer mp3 = buffer.duplicate();
+        int start = mp3.position();
+        int end = mp3.limit();
+        if (end - start >= 128 && ascii(mp3, end - 128, 3).equals("TAG")) {
+            end -= 128;
+        }
+
+        int frame = firstFrame(mp3, skipId3v2(mp3, start), end);
+        if (frame < 0) {
+            return Unknown;
+        }
+
+        int header = mp3.getInt(frame);
+        int version = (header >>> 19) & 3;
+        int layer = 4 - ((header >>> 17) & 3);
+        boolean mpeg1 = version == 3;
+        int bitrate = (mpeg1 ? Mpeg1Bitrates : Mpeg2Bitrates)[layer - 1][(header >>> 12) & 15];
+        int sampleRate = Mpeg1SampleRates[(header >>> 10) & 3] >> (mpeg1 ? 0 : version == 2 ? 1 : 2);
+        int samplesPerFrame = layer == 1 ? 384 : layer == 3 && !mpeg1 ? 576 : 1152;
+
+        long frames = vbrFrames(mp3, frame, end, mpeg1, layer, ((header >>> 6) & 3) == 3);
+        if (frames > 0) {
+            return frames * samplesPerFrame * 1000 / sampleRate;
+        } else {
+            return (long) (end - frame) * 8 / bitrate;
+        }
+    }
+
+    private static int skipId3v2(ByteBuffer mp3, int start) {
+        if (mp3.limit() - start >= 10 && ascii(mp3, start, 3).equals("ID3")) {
+            int size = 0;
+            for (int i = 6; i < 10; i++) {
+                size = (size << 7) | (mp3.get(start + i) & 0x7f);
+            }
+            boolean footer = (mp3.get(start + 5) & 0x10) != 0;
+            return start + 10 + size + (footer ? 10 : 0);
+        } else {
+            return start;
+        }
+    }
+
+    private static int firstFrame(ByteBuffer mp3, int start, int end) {
+        int last = Math.min(end - 4, start + MaxSyncSearch);
+        for (int position = start; position <= last; position++) {
+            if (isFrameHeader(mp3.getInt(position))) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isFrameHeader(int header) {
+        return (header >>> 21) == 0x7ff // frame sync
+                && ((header >>> 19) & 3) != 1 // version
+                && ((header >>> 17) & 3) != 0 // layer
+                && ((header >>> 12) & 15) != 0 && ((header >>> 12) & 15) != 15 // bit rate
+                && ((header >>> 10) & 3) != 3; // sample rate
+    }
+
+    /**
+     * @return The number of frames stated by the Xing, Info or VBRI header of the first frame, or 0 if there's none.
+     */
+    private static long vbrFrames(ByteBuffer mp3, int frame, int end, boolean mpeg1, int layer, boolean mono) {
+        if (layer == 3) {
+            int sideInfo = mpeg1 ? (mono ? 17 : 32) : (mono ? 9 : 17);
+            int xing = frame + 4 + sideInfo;
+            if (xing + 12 <= end) {
+                String tag = ascii(mp3, xing, 4);
+                if ((tag.equals("Xing") || tag.equals("Info")) && (mp3.getInt(xing + 4) & 1) != 0) {
+                    return Integer.toUnsignedLong(mp3.getInt(xing + 8));
+                }
+            }
+        }
+
+        int vbri = frame + 4 + 32;
+        if (vbri + 18 <= end && ascii(mp3, vbri, 4).equals("VBRI")) {
+            return Integer.toUnsignedLong(mp3.getInt(vbri + 14));
+        }
+        return 0;
+    }
+
+    private static String ascii(ByteBuffer buffer, int index, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(index + i);
+        }
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+}
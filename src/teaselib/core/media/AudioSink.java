@@ -0,0 +1,40 @@
+package teaselib.core.media;
+
+import java.io.IOException;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Output for decoded audio.
+ * 
+ * @author Citizen-Cane
+ *
+ */
+public interface AudioSink {
+    /**
+     * Opens and starts a line for the given format.
+     */
+    Line open(AudioFormat format) throws IOException;
+
+    interface Line extends AutoCloseable {
+        AudioFormat format();
+
+        /**
+         * Writes audio data, blocking until the line has accepted it.
+         */
+        void write(byte[] data, int offset, int length);
+
+        /**
+         * Waits until all written data has been played.
+         */
+        void drain();
+
+        /**
+         * Discards written data that hasn't been played yet.
+         */
+        void flush();
+
+        @Override
+        void close();
+    }
+}
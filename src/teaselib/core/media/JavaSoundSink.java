@@ -0,0 +1,56 @@
+package teaselib.core.media;
+
+import java.io.IOException;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+/**
+ * Plays audio on the default mixer of the Java Sound API.
+ * 
+ * @author Citizen-Cane
+ *
+ */
+final class JavaSoundSink implements AudioSink {
+
+    @Override
+    public Line open(AudioFormat format) throws IOException {
+        SourceDataLine line;
+        try {
+            line = AudioSystem.getSourceDataLine(format);
+            line.open(format);
+        } catch (LineUnavailableException | IllegalArgumentException e) {
+            throw new IOException(format + ": " + e.getMessage(), e);
+        }
+        line.start();
+
+        return new Line() {
+            @Override
+            public AudioFormat format() {
+                return format;
+            }
+
+            @Override
+            public void write(byte[] data, int offset, int length) {
+                line.write(data, offset, length);
+            }
+
+            @Override
+            public void drain() {
+                line.drain();
+            }
+
+            @Override
+            public void flush() {
+                line.flush();
+            }
+
+            @Override
+            public void close() {
+                line.close();
+            }
+        };
+    }
+}
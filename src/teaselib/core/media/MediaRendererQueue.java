@@ -1,9 +1,10 @@
 package teaselib.core.media;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
@@ -17,14 +18,23 @@ import teaselib.core.ScriptInterruptedException;
 import teaselib.core.concurrency.NamedExecutorService;
 import teaselib.core.media.MessageRendererQueue.Batch;
 import teaselib.core.util.ExceptionUtil;
+import teaselib.core.util.Trace;
 
+/**
+ * Runs threaded renderers, and waits for them to complete their phases.
+ * <p>
+ * Starting, replaying, submitting and ending renderers is serialized, but waiting for and querying the completion of
+ * the active renderers doesn't take a lock. So script function threads waiting for renderers don't block each other,
+ * nor the script thread while it's starting the next batch of renderers.
+ */
 public class MediaRendererQueue {
     private static final Logger logger = LoggerFactory.getLogger(MediaRendererQueue.class);
 
     static final String RenderTaskBaseName = "RenderTask ";
 
-    private final Map<MediaRenderer.Threaded, Future<?>> activeRenderers = new HashMap<>();
+    private final Map<MediaRenderer.Threaded, Future<?>> activeRenderers = new ConcurrentHashMap<>();
     private final ExecutorService executor;
+    private volatile StartBarrier lastStart = null;
 
     public MediaRendererQueue() {
         executor = NamedExecutorService.newUnlimitedThreadPool(RenderTaskBaseName, 1, TimeUnit.HOURS);
@@ -75,40 +85,93 @@ public class MediaRendererQueue {
         }
     }
 
+    /**
+     * Starts the threaded renderers of the set at once, behind a start barrier. The message renderers are set up on the
+     * calling thread, as they may have to wait for message preparation or the previous message, and the threaded
+     * renderers are submitted in the meantime. So the time to the first output is bounded by the slowest setup instead
+     * of the sum of all. The message renderers are parties of the barrier as well, so all renderers start together.
+     * <p>
+     * Renderers that aren't threaded, like script actions queued along with the message, are run on the calling thread
+     * in the order they've been queued, before the message starts.
+     * <p>
+     * If setting up the set fails, for instance because the script thread is interrupted, the barrier isn't released.
+     * Instead the renderers that have been submitted so far are cancelled.
+     */
     private void play(List<MediaRenderer> mediaRenderers) {
-        for (MediaRenderer r : mediaRenderers) {
-            // TODO Resolve interfaces - Batch has its own thread already
-            if (r instanceof MediaRenderer.Threaded) {
-                submit((MediaRenderer.Threaded) r);
-            } else {
-                r.run();
+        try (Trace.Span span = Trace.Enabled ? Trace.span("play", mediaRenderers.size()) : Trace.span("play")) {
+            List<Batch.RendererFacade> batches = new ArrayList<>();
+            List<MediaRenderer.Threaded> threaded = new ArrayList<>();
+            List<MediaRenderer> others = new ArrayList<>();
+            for (MediaRenderer r : mediaRenderers) {
+                if (r instanceof Batch.RendererFacade) {
+                    batches.add((Batch.RendererFacade) r);
+                } else if (r instanceof MediaRenderer.Threaded) {
+                    threaded.add((MediaRenderer.Threaded) r);
+                } else {
+                    others.add(r);
+                }
+            }
+
+            StartBarrier barrier = new StartBarrier(threaded.size() + batches.size());
+            lastStart = barrier;
+            List<MediaRenderer.Threaded> submitted = new ArrayList<>(threaded.size() + batches.size());
+            boolean setUp = false;
+            try {
+                for (MediaRenderer.Threaded r : threaded) {
+                    submit(r, barrier);
+                    submitted.add(r);
+                }
+
+                for (MediaRenderer r : others) {
+                    r.run();
+                }
+
+                for (Batch.RendererFacade batch : batches) {
+                    submit(batch, barrier);
+                    submitted.add(batch);
+                }
+                setUp = true;
+            } finally {
+                if (setUp) {
+                    barrier.release();
+                } else {
+                    for (MediaRenderer.Threaded r : submitted) {
+                        interrupt(r);
+                    }
+                }
             }
         }
     }
 
+    StartBarrier lastStart() {
+        return lastStart;
+    }
+
+    private List<MediaRenderer.Threaded> active() {
+        return new ArrayList<>(activeRenderers.keySet());
+    }
+
     public void completeStarts() {
-        synchronized (activeRenderers) {
-            if (!activeRenderers.isEmpty()) {
-                logger.debug("Completing all threaded renderers starts");
-                for (MediaRenderer.Threaded renderer : activeRenderers.keySet()) {
-                    renderer.completeStart();
-                }
-            } else {
-                logger.debug("Threaded Renderers completeStarts : queue empty");
+        List<MediaRenderer.Threaded> renderers = active();
+        if (!renderers.isEmpty()) {
+            logger.debug("Completing all threaded renderers starts");
+            for (MediaRenderer.Threaded renderer : renderers) {
+                renderer.completeStart();
             }
+        } else {
+            logger.debug("Threaded Renderers completeStarts : queue empty");
         }
     }
 
     public void completeMandatories() {
-        synchronized (activeRenderers) {
-            if (!activeRenderers.isEmpty()) {
-                logger.debug("Completing all threaded renderers mandatory part");
-                for (MediaRenderer.Threaded renderer : activeRenderers.keySet()) {
-                    renderer.completeMandatory();
-                }
-            } else {
-                logger.debug("Threaded Renderers completeMandatories : queue empty");
+        List<MediaRenderer.Threaded> renderers = active();
+        if (!renderers.isEmpty()) {
+            logger.debug("Completing all threaded renderers mandatory part");
+            for (MediaRenderer.Threaded renderer : renderers) {
+                renderer.completeMandatory();
             }
+        } else {
+            logger.debug("Threaded Renderers completeMandatories : queue empty");
         }
     }
 
@@ -117,17 +180,16 @@ public class MediaRendererQueue {
      * this method have been finished.
      */
     public void completeAll() {
-        synchronized (activeRenderers) {
-            if (!activeRenderers.isEmpty()) {
-                if (logger.isDebugEnabled()) {
-                    logger.debug("Completing all threaded renderers {}", activeRenderers);
-                }
-                for (MediaRenderer.Threaded renderer : activeRenderers.keySet()) {
-                    renderer.completeAll();
-                }
-            } else if (logger.isDebugEnabled()) {
-                logger.debug("Threaded Renderers completeAll: queue empty");
+        List<MediaRenderer.Threaded> renderers = active();
+        if (!renderers.isEmpty()) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Completing all threaded renderers {}", renderers);
             }
+            for (MediaRenderer.Threaded renderer : renderers) {
+                renderer.completeAll();
+            }
+        } else if (logger.isDebugEnabled()) {
+            logger.debug("Threaded Renderers completeAll: queue empty");
         }
     }
 
@@ -176,45 +238,37 @@ public class MediaRendererQueue {
     }
 
     public boolean hasCompletedStarts() {
-        synchronized (activeRenderers) {
-            if (!activeRenderers.isEmpty()) {
-                for (MediaRenderer.Threaded renderer : activeRenderers.keySet()) {
-                    if (!renderer.hasCompletedStart()) {
-                        return false;
-                    }
-                }
+        for (MediaRenderer.Threaded renderer : activeRenderers.keySet()) {
+            if (!renderer.hasCompletedStart()) {
+                return false;
             }
         }
         return true;
     }
 
     public boolean hasCompletedMandatory() {
-        synchronized (activeRenderers) {
-            if (!activeRenderers.isEmpty()) {
-                for (MediaRenderer.Threaded renderer : activeRenderers.keySet()) {
-                    if (!renderer.hasCompletedMandatory()) {
-                        return false;
-                    }
-                }
+        for (MediaRenderer.Threaded renderer : activeRenderers.keySet()) {
+            if (!renderer.hasCompletedMandatory()) {
+                return false;
             }
         }
         return true;
     }
 
     public boolean hasCompletedAll() {
-        synchronized (activeRenderers) {
-            if (!activeRenderers.isEmpty()) {
-                for (MediaRenderer.Threaded renderer : activeRenderers.keySet()) {
-                    if (!renderer.hasCompletedAll()) {
-                        return false;
-                    }
-                }
+        for (MediaRenderer.Threaded renderer : activeRenderers.keySet()) {
+            if (!renderer.hasCompletedAll()) {
+                return false;
             }
         }
         return true;
     }
 
     public Future<?> submit(MediaRenderer.Threaded mediaRenderer) {
+        return submit(mediaRenderer, StartBarrier.Released);
+    }
+
+    private Future<?> submit(MediaRenderer.Threaded mediaRenderer, StartBarrier barrier) {
         synchronized (activeRenderers) {
             // TODO Must be managed by named executor service
             // setThreadName(nameForActiveThread());
@@ -222,11 +276,26 @@ public class MediaRendererQueue {
             // TODO Batch renderer facade and ThreadedMediaRendererhave duplicated code -> merge
             // TODO encapsulate this instanceof branches into the referenced classes
             if (mediaRenderer instanceof Batch.RendererFacade) {
-                mediaRenderer.run();
-                future = ((Batch.RendererFacade) mediaRenderer).getTask();
+                Batch.RendererFacade batch = (Batch.RendererFacade) mediaRenderer;
+                batch.startBehind(barrier);
+                batch.run();
+                future = batch.getTask();
             } else if (mediaRenderer instanceof MediaRendererThread) {
-                future = new MediaFutureTask<MediaRendererThread>((MediaRendererThread) mediaRenderer,
-                        (Future<Void>) executor.submit(mediaRenderer)) {
+                MediaRendererThread renderer = (MediaRendererThread) mediaRenderer;
+                Callable<Void> task = () -> {
+                    try {
+                        barrier.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        renderer.startCompleted();
+                        renderer.mandatoryCompleted();
+                        renderer.allCompleted();
+                        return null;
+                    }
+                    renderer.run();
+                    return null;
+                };
+                future = new MediaFutureTask<MediaRendererThread>(renderer, executor.submit(task)) {
                     @Override
                     public boolean cancel(boolean mayInterruptIfRunning) {
                         boolean cancel = super.cancel(mayInterruptIfRunning);
@@ -237,7 +306,11 @@ public class MediaRendererQueue {
                     }
                 };
             } else {
-                future = executor.submit(mediaRenderer);
+                future = executor.submit(() -> {
+                    barrier.await();
+                    mediaRenderer.run();
+                    return null;
+                });
             }
             activeRenderers.put(mediaRenderer, future);
             return future;
@@ -1,7 +1,6 @@
 package teaselib.core.media;
 
 import java.io.IOException;
-import java.util.concurrent.CountDownLatch;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -10,6 +9,7 @@ import teaselib.Replay;
 import teaselib.core.ScriptInterruptedException;
 import teaselib.core.TeaseLib;
 import teaselib.core.util.ExceptionUtil;
+import teaselib.core.util.Trace;
 
 /**
  * @author Citizen-Cane
@@ -21,9 +21,7 @@ public abstract class MediaRendererThread implements MediaRenderer.Threaded {
     protected final TeaseLib teaseLib;
     protected Replay.Position position = Replay.Position.FromCurrentPosition;
 
-    private CountDownLatch completedStart = new CountDownLatch(1);
-    private CountDownLatch completedMandatory = new CountDownLatch(1);
-    private CountDownLatch completedAll = new CountDownLatch(1);
+    private final RenderPhases phases = new RenderPhases();
 
     private long startMillis = 0;
 
@@ -34,7 +32,7 @@ public abstract class MediaRendererThread implements MediaRenderer.Threaded {
     @Override
     public final void run() {
         startMillis = System.currentTimeMillis();
-        try {
+        try (Trace.Span span = Trace.span(getClass())) {
             renderMedia();
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
@@ -76,34 +74,19 @@ public abstract class MediaRendererThread implements MediaRenderer.Threaded {
     }
 
     private void replayFromStart() {
-        clearCurrentLatches();
-        completedStart = new CountDownLatch(1);
-        completedMandatory = new CountDownLatch(1);
-        completedAll = new CountDownLatch(1);
+        phases.restart();
     }
 
     private void replayFromCurrent() {
-        clearCurrentLatches();
-        completedStart = new CountDownLatch(0);
-        completedMandatory = new CountDownLatch(1);
-        completedAll = new CountDownLatch(1);
+        phases.restartAfter(RenderPhases.Phase.Start);
     }
 
     private void replayEnd() {
-        clearCurrentLatches();
-        completedStart = new CountDownLatch(0);
-        completedMandatory = new CountDownLatch(0);
-        completedAll = new CountDownLatch(1);
-    }
-
-    private void clearCurrentLatches() {
-        completedStart.countDown();
-        completedMandatory.countDown();
-        completedAll.countDown();
+        phases.restartAfter(RenderPhases.Phase.Mandatory);
     }
 
     protected final void startCompleted() {
-        completedStart.countDown();
+        phases.complete(RenderPhases.Phase.Start);
         if (logger.isDebugEnabled()) {
             logger.debug(getClass().getSimpleName() + " completed start after "
                     + String.format("%.2f seconds", getElapsedSeconds()));
@@ -111,7 +94,7 @@ public abstract class MediaRendererThread implements MediaRenderer.Threaded {
     }
 
     protected final void mandatoryCompleted() {
-        completedMandatory.countDown();
+        phases.complete(RenderPhases.Phase.Mandatory);
         if (logger.isDebugEnabled()) {
             logger.debug("{} completed mandatory after {}", getClass().getSimpleName(),
                     String.format("%.2f seconds", getElapsedSeconds()));
@@ -122,7 +105,7 @@ public abstract class MediaRendererThread implements MediaRenderer.Threaded {
      * Called by the base class only to signal that the renderer has completed.
      */
     final void allCompleted() {
-        completedAll.countDown();
+        phases.complete(RenderPhases.Phase.All);
         if (logger.isDebugEnabled()) {
             logger.debug("{} completed all after {}", getClass().getSimpleName(), getElapsedSecondsFormatted());
         }
@@ -130,47 +113,32 @@ public abstract class MediaRendererThread implements MediaRenderer.Threaded {
 
     @Override
     public void completeStart() {
-        try {
-            completedStart.await();
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new ScriptInterruptedException(e);
-        }
+        phases.await(RenderPhases.Phase.Start);
     }
 
     @Override
     public void completeMandatory() {
-        try {
-            completedMandatory.await();
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new ScriptInterruptedException(e);
-        }
+        phases.await(RenderPhases.Phase.Mandatory);
     }
 
     @Override
     public void completeAll() {
-        try {
-            completedAll.await();
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new ScriptInterruptedException(e);
-        }
+        phases.await(RenderPhases.Phase.All);
     }
 
     @Override
     public boolean hasCompletedStart() {
-        return completedStart.getCount() == 0;
+        return phases.isCompleted(RenderPhases.Phase.Start);
     }
 
     @Override
     public boolean hasCompletedMandatory() {
-        return completedMandatory.getCount() == 0;
+        return phases.isCompleted(RenderPhases.Phase.Mandatory);
     }
 
     @Override
     public boolean hasCompletedAll() {
-        return completedAll.getCount() == 0;
+        return phases.isCompleted(RenderPhases.Phase.All);
     }
 
     public String getElapsedSecondsFormatted() {
@@ -3,16 +3,19 @@ package teaselib.core.media;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.function.BinaryOperator;
+import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -27,14 +30,17 @@ import teaselib.Replay;
 import teaselib.Replay.Position;
 import teaselib.Replay.Replayable;
 import teaselib.core.AbstractMessage;
+import teaselib.core.Host;
 import teaselib.core.ResourceLoader;
 import teaselib.core.ScriptInterruptedException;
 import teaselib.core.TeaseLib;
 import teaselib.core.concurrency.NamedExecutorService;
+import teaselib.core.media.RenderedMessage.Decorator;
 import teaselib.core.texttospeech.TextToSpeechPlayer;
 import teaselib.core.util.ExceptionUtil;
 import teaselib.core.util.PrefetchImage;
 import teaselib.core.util.Prefetcher;
+import teaselib.core.util.Trace;
 
 public class MessageRendererQueue implements AutoCloseable {
     private static final Logger logger = LoggerFactory.getLogger(MessageRendererQueue.class);
@@ -48,13 +54,15 @@ public class MessageRendererQueue implements AutoCloseable {
 
     private final TeaseLib teaseLib;
     private final MediaRendererQueue renderQueue;
-    // TODO Handle message decorator processing here in order to make textToSpeechPlayer private
     public final TextToSpeechPlayer textToSpeechPlayer;
 
     private final NamedExecutorService executor = NamedExecutorService.singleThreadedQueue("Message renderer queue", 1,
             TimeUnit.HOURS);
+    private final NamedExecutorService preparation = NamedExecutorService.singleThreadedQueue("Message preparation", 1,
+            TimeUnit.HOURS);
     private final Prefetcher<byte[]> imageFetcher;
     private Future<?> running = null;
+    private MessageTextAccumulator displayedText = null;
 
     private MediaRenderer.Threaded currentRenderer = null;
     private RenderSound backgroundSoundRenderer = null;
@@ -62,14 +70,18 @@ public class MessageRendererQueue implements AutoCloseable {
     public MessageRendererQueue(TeaseLib teaseLib, MediaRendererQueue renderQueue) {
         this.teaseLib = teaseLib;
         this.renderQueue = renderQueue;
-        this.imageFetcher = new Prefetcher<>(renderQueue.getExecutorService());
+        this.imageFetcher = PrefetchImage.prefetcher(renderQueue.getExecutorService(), teaseLib.config);
         this.textToSpeechPlayer = new TextToSpeechPlayer(teaseLib.config);
     }
 
     @Override
     public void close() {
+        logger.info("Image prefetcher: {}", imageFetcher.statistics());
+        logger.info("Message batches: {}", statistics());
         executor.shutdown();
         executor.getQueue().drainTo(new ArrayList<>());
+        preparation.shutdown();
+        preparation.getQueue().drainTo(new ArrayList<>());
     }
 
     public MediaRenderer.Threaded say(Actor actor, List<RenderedMessage> messages, ResourceLoader resources) {
@@ -84,25 +96,199 @@ public class MessageRendererQueue implements AutoCloseable {
         return createBatch(actor, messages, replace, resources);
     }
 
+    /**
+     * Renders the messages after decorating them on the preparation worker. Text variables and actor images are
+     * resolved on the calling script thread. Preparing the messages, including the lookup of prerecorded speech and
+     * prefetching images, overlaps with rendering the current message.
+     */
+    public MediaRenderer.Threaded say(Actor actor, List<Message> messages, Decorator[] decorators,
+            ResourceLoader resources) {
+        return createBatch(actor, messages, decorators, say, resources);
+    }
+
+    public MediaRenderer.Threaded append(Actor actor, List<Message> messages, Decorator[] decorators,
+            ResourceLoader resources) {
+        return createBatch(actor, messages, decorators, append, resources);
+    }
+
+    public MediaRenderer.Threaded replace(Actor actor, List<Message> messages, Decorator[] decorators,
+            ResourceLoader resources) {
+        return createBatch(actor, messages, decorators, replace, resources);
+    }
+
+    /**
+     * Describes the batches that have been created but not started yet.
+     */
+    public static final class Statistics {
+        public final long batches;
+        public final long coalesced;
+        public final int depth;
+        public final int maxDepth;
+
+        Statistics(long batches, long coalesced, int depth, int maxDepth) {
+            this.batches = batches;
+            this.coalesced = coalesced;
+            this.depth = depth;
+            this.maxDepth = maxDepth;
+        }
+
+        @Override
+        public String toString() {
+            return "batches=" + batches + " coalesced=" + coalesced + " depth=" + depth + " maxDepth=" + maxDepth;
+        }
+    }
+
     Batch current = null;
+    private final List<Batch> upcoming = new ArrayList<>();
+    private long batches = 0;
+    private long coalesced = 0;
+    private int maxDepth = 0;
+
+    public Statistics statistics() {
+        synchronized (upcoming) {
+            return new Statistics(batches, coalesced, upcoming.size(), maxDepth);
+        }
+    }
 
     public MediaRenderer.Threaded createBatch(Actor actor, List<RenderedMessage> messages,
             BinaryOperator<Batch> operator, ResourceLoader resources) {
-        Batch next = new Batch(actor, messages, operator, resources) {
+        Batch next = createBatch(actor, operator, resources);
+        synchronized (upcoming) {
+            enqueue(next);
+            prepared(next, messages);
+        }
+        next.preparation = CompletableFuture.completedFuture(null);
+        return next.renderer;
+    }
+
+    private MediaRenderer.Threaded createBatch(Actor actor, List<Message> messages, Decorator[] decorators,
+            BinaryOperator<Batch> operator, ResourceLoader resources) {
+        Batch next = createBatch(actor, operator, resources);
+        List<Decorator[]> prepared = messages.stream().map(message -> prepare(message, decorators))
+                .collect(Collectors.toList());
+        synchronized (upcoming) {
+            enqueue(next);
+        }
+        next.preparation = preparation.submit(() -> {
+            try (Trace.Span span = Trace.span("prepare")) {
+                List<RenderedMessage> rendered = new ArrayList<>(messages.size());
+                for (int i = 0; i < messages.size(); i++) {
+                    rendered.add(RenderedMessage.of(messages.get(i), prepared.get(i)));
+                }
+                synchronized (upcoming) {
+                    prepared(next, rendered);
+                }
+            }
+        });
+        return next.renderer;
+    }
+
+    /**
+     * Resolves script state like text variables and actor images on the script thread, in message order, so that only
+     * the rendering of the message is left to the preparation worker.
+     */
+    private static Decorator[] prepare(Message message, Decorator[] decorators) {
+        Decorator[] prepared = new Decorator[decorators.length];
+        for (int i = 0; i < decorators.length; i++) {
+            prepared[i] = decorators[i].prepare(message);
+        }
+        return prepared;
+    }
+
+    /**
+     * Queues the batch until it's started. Batches aren't dropped to bound the queue - the script thread that creates a
+     * batch waits for the previous message to complete before starting it, so the queue only grows with the number of
+     * script threads that render messages at the same time.
+     * <p>
+     * Replacing a message that hasn't been started yet supersedes it, since the replaced message would be visible only
+     * for a moment. The superseded batch is coalesced into the replacing one: it's still applied to keep the message
+     * history consistent, but it isn't rendered. Only replaces queued by the same thread are coalesced - messages of
+     * other script threads must still be shown.
+     */
+    private void enqueue(Batch batch) {
+        if (batch.operator == replace && !upcoming.isEmpty()) {
+            Batch previous = upcoming.get(upcoming.size() - 1);
+            if (previous.operator == replace && previous.source == batch.source && !previous.superseded) {
+                previous.superseded = true;
+                coalesced++;
+            }
+        }
+        upcoming.add(batch);
+        batches++;
+        maxDepth = Math.max(maxDepth, upcoming.size());
+    }
+
+    private void prepared(Batch batch, List<RenderedMessage> messages) {
+        batch.messages = messages;
+        batch.lastSection = RenderedMessage.getLastSection(batch.getLastMessage());
+        if (!batch.superseded) {
+            prefetchImages(batch);
+        }
+    }
+
+    /**
+     * @return Whether the batch has been superseded while it was queued.
+     */
+    private boolean dequeue(Batch batch) {
+        synchronized (upcoming) {
+            upcoming.remove(batch);
+            return batch.superseded;
+        }
+    }
+
+    private Batch createBatch(Actor actor, BinaryOperator<Batch> operator, ResourceLoader resources) {
+        return new Batch(actor, operator, resources) {
             @Override
             public void run() {
+                boolean skip;
+                try {
+                    awaitPreparation();
+                } finally {
+                    skip = dequeue(this);
+                }
                 current = applyOperator();
+                cancelStalePrefetches();
                 completePreviousTask();
-                submitTask();
+                if (skip) {
+                    skipTask();
+                } else {
+                    submitTask();
+                }
+            }
+
+            @Override
+            void resetSuperseded() {
+                synchronized (upcoming) {
+                    superseded = false;
+                }
+            }
+
+            private void awaitPreparation() {
+                try (Trace.Span span = Trace.span("await preparation")) {
+                    preparation.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new ScriptInterruptedException(e);
+                } catch (ExecutionException e) {
+                    renderer.startCompleted();
+                    renderer.mandatoryCompleted();
+                    renderer.allCompleted();
+                    throw ExceptionUtil.asRuntimeException(ExceptionUtil.reduce(e));
+                }
             }
 
             private Batch applyOperator() {
-                return current == null ? this : this.operator.apply(current, this);
+                if (replay) {
+                    replay = false;
+                    return this;
+                } else {
+                    return current == null ? this : this.operator.apply(current, this);
+                }
             }
 
             private void completePreviousTask() {
                 if (running != null && !running.isCancelled() && !running.isDone()) {
-                    try {
+                    try (Trace.Span span = Trace.span("await previous batch")) {
                         running.get();
                     } catch (InterruptedException e) {
                         Thread.currentThread().interrupt();
@@ -116,8 +302,10 @@ public class MessageRendererQueue implements AutoCloseable {
             }
 
             private void submitTask() {
+                StartBarrier barrier = start;
                 Future<?> future = executor.submit(() -> {
                     try {
+                        barrier.await();
                         MessageRendererQueue.this.run(current);
                     } catch (InterruptedException e) {
                         Thread.currentThread().interrupt();
@@ -132,23 +320,57 @@ public class MessageRendererQueue implements AutoCloseable {
                     @Override
                     public boolean cancel(boolean mayInterruptIfRunning) {
                         boolean cancel = super.cancel(mayInterruptIfRunning);
-                        renderer.completedStart.countDown();
-                        renderer.completedMandatory.countDown();
-                        renderer.completedAll.countDown();
+                        renderer.phases.complete(RenderPhases.Phase.All);
                         return cancel;
                     }
                 };
             }
-        };
 
-        prefetchImages(next);
-        return next.renderer;
+            /**
+             * Completes the batch as if it had been rendered, so that the replacing batch continues after it.
+             */
+            private void skipTask() {
+                logger.info("Skipping superseded message");
+                start.skip();
+                currentMessage = messages.size();
+                renderer.phases.complete(RenderPhases.Phase.All);
+                running = thisTask = new MediaFutureTask<>(renderer, CompletableFuture.completedFuture(null));
+            }
+        };
     }
 
     private void prefetchImages(Batch batch) {
         prefetchImages(batch.messages, batch.resources);
     }
 
+    /**
+     * Cancels prefetching images that are neither part of the current batch nor of any batch queued after it, since
+     * the batches they belonged to have been replaced. Batches that are still being prepared haven't queued their
+     * images yet.
+     */
+    private void cancelStalePrefetches() {
+        Set<String> images = new HashSet<>();
+        synchronized (upcoming) {
+            images(current.messages, images);
+            for (Batch next : upcoming) {
+                if (next.messages != null && !next.superseded) {
+                    images(next.messages, images);
+                }
+            }
+            imageFetcher.retain(images);
+        }
+    }
+
+    private static void images(List<RenderedMessage> messages, Set<String> images) {
+        for (RenderedMessage message : messages) {
+            for (MessagePart part : message) {
+                if (part.type == Message.Type.Image && part.value != Message.NoImage) {
+                    images.add(part.value);
+                }
+            }
+        }
+    }
+
     private void prefetchImages(List<RenderedMessage> messages, ResourceLoader resources) {
         for (RenderedMessage message : messages) {
             prefetchImages(message, resources);
@@ -172,11 +394,7 @@ public class MessageRendererQueue implements AutoCloseable {
     };
 
     static BinaryOperator<Batch> append = (batch, next) -> {
-        List<RenderedMessage> current = batch.messages;
-
-        next.accumulatedText = new MessageTextAccumulator();
-        current.forEach(m -> m.forEach(next.accumulatedText::add));
-        next.messages.addAll(0, current);
+        next.prepend(batch, batch.messages, batch.messagesText());
 
         next.position = batch.position;
         next.currentMessage = batch.currentMessage;
@@ -189,10 +407,7 @@ public class MessageRendererQueue implements AutoCloseable {
 
         List<RenderedMessage> current = new ArrayList<>(batch.messages);
         current.remove(current.size() - 1);
-
-        next.accumulatedText = new MessageTextAccumulator();
-        current.forEach(m -> m.forEach(next.accumulatedText::add));
-        next.messages.addAll(0, current);
+        next.prepend(batch, current, batch.textBeforeLastMessage());
 
         next.position = batch.position;
         next.currentMessage = batch.currentMessage - 1;
@@ -202,27 +417,79 @@ public class MessageRendererQueue implements AutoCloseable {
 
     public abstract static class Batch implements Runnable {
         final Actor actor;
-        final List<RenderedMessage> messages;
         final ResourceLoader resources;
         final BinaryOperator<Batch> operator;
+        /**
+         * The thread that has queued the batch.
+         */
+        final Thread source = Thread.currentThread();
 
+        Future<?> preparation = null;
+        List<RenderedMessage> messages = null;
         Future<Void> thisTask = null;
         RendererFacade renderer = new RendererFacade();
         Replay.Position position = Replay.Position.FromCurrentPosition;
         MessageTextAccumulator accumulatedText = new MessageTextAccumulator();
 
+        int prependedMessages = 0;
+        MessageTextAccumulator prependedText = null;
+        private MessageTextAccumulator messagesText = null;
+        private int lastMessageText = 0;
+
         int currentMessage = 0;
         String displayImage = null;
         AbstractMessage lastSection;
 
-        public Batch(Actor actor, List<RenderedMessage> messages, BinaryOperator<Batch> operator,
-                ResourceLoader resources) {
+        /**
+         * Written on the render thread, and read on the script thread when the batch is merged into the next one.
+         */
+        final Map<RenderedMessage, ReplaySnapshot> snapshots = Collections.synchronizedMap(new IdentityHashMap<>());
+        boolean replay = false;
+        boolean superseded = false;
+        StartBarrier start = StartBarrier.Released;
+
+        /**
+         * The messages of the batch are available once the batch has been prepared.
+         */
+        public Batch(Actor actor, BinaryOperator<Batch> operator, ResourceLoader resources) {
             this.actor = actor;
             this.resources = resources;
-            this.messages = messages;
             this.operator = operator;
+        }
+
+        void prepend(Batch batch, List<RenderedMessage> previous, MessageTextAccumulator text) {
+            messages.addAll(0, previous);
+            for (RenderedMessage message : previous) {
+                ReplaySnapshot snapshot = batch.snapshots.get(message);
+                if (snapshot != null) {
+                    snapshots.put(message, snapshot);
+                }
+            }
+            prependedMessages = previous.size();
+            prependedText = text;
+            accumulatedText = text.copy();
+        }
+
+        /**
+         * The text of all messages, built upon the text of the prepended messages instead of adding all parts again.
+         * 
+         * @return The accumulated text of all messages of the batch.
+         */
+        MessageTextAccumulator messagesText() {
+            if (messagesText == null) {
+                MessageTextAccumulator text = prependedText != null ? prependedText.copy()
+                        : new MessageTextAccumulator();
+                for (int i = prependedMessages; i < messages.size(); i++) {
+                    lastMessageText = text.size();
+                    messages.get(i).forEach(text::add);
+                }
+                messagesText = text;
+            }
+            return messagesText;
+        }
 
-            this.lastSection = RenderedMessage.getLastSection(getLastMessage());
+        MessageTextAccumulator textBeforeLastMessage() {
+            return messagesText().prefix(lastMessageText);
         }
 
         private RenderedMessage getLastMessage() {
@@ -237,6 +504,28 @@ public class MessageRendererQueue implements AutoCloseable {
             return RenderedMessage.getLastSection(getLastMessage());
         }
 
+        /**
+         * Records the accumulated text and the displayed image of the batch at the replay position of the message, by
+         * replacing the snapshot of the message with an updated copy.
+         */
+        void record(RenderedMessage message, Replay.Position position, int messagePart) {
+            snapshots.compute(message, (key, snapshot) -> (snapshot != null ? snapshot : ReplaySnapshot.None)
+                    .with(position, accumulatedText, displayImage, messagePart));
+        }
+
+        /**
+         * Resets the batch to be rendered again, under the lock of the queue that decides about superseding batches.
+         */
+        abstract void resetSuperseded();
+
+        /**
+         * @return The snapshot of the last message, if it has been rendered completely, otherwise null.
+         */
+        private ReplaySnapshot getLastSnapshot() {
+            ReplaySnapshot snapshot = snapshots.get(getLastMessage());
+            return snapshot != null && snapshot.isComplete() ? snapshot : null;
+        }
+
         private RenderedMessage getEnd() {
             return stripAudio(RenderedMessage.getLastSection(getLastMessage()));
         }
@@ -247,10 +536,8 @@ public class MessageRendererQueue implements AutoCloseable {
         }
 
         // TODO Contains duplicated code from ThreadedMediaRenderer
-        class RendererFacade implements MediaRenderer.Threaded {
-            final CountDownLatch completedStart = new CountDownLatch(1);
-            final CountDownLatch completedMandatory = new CountDownLatch(1);;
-            final CountDownLatch completedAll = new CountDownLatch(1);;
+        class RendererFacade implements MediaRenderer.Threaded, ReplayableMediaRenderer {
+            final RenderPhases phases = new RenderPhases();
 
             private long startMillis = 0;
 
@@ -260,40 +547,50 @@ public class MessageRendererQueue implements AutoCloseable {
                 Batch.this.run();
             }
 
+            /**
+             * Holds back rendering the batch until the other renderers of the set have been set up.
+             */
+            void startBehind(StartBarrier barrier) {
+                start = barrier;
+            }
+
+            /**
+             * Renders the batch again instead of merging it with the current batch. Messages that have been rendered
+             * completely are restored from their snapshots.
+             */
             @Override
-            public void completeStart() {
-                try {
-                    // TODO Blocks in PCM tests because the message renderer task is cancelled,
-                    // before startCompleted is reached - executor is idle
-                    completedStart.await();
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    throw new ScriptInterruptedException(e);
+            public void replay(Replay.Position replayPosition) {
+                position = replayPosition;
+                replay = true;
+                resetSuperseded();
+                if (replayPosition == Replay.Position.FromStart) {
+                    phases.restart();
+                } else if (replayPosition == Replay.Position.End) {
+                    phases.restartAfter(RenderPhases.Phase.Mandatory);
+                } else {
+                    phases.restartAfter(RenderPhases.Phase.Start);
                 }
             }
 
+            @Override
+            public void completeStart() {
+                // TODO Blocks in PCM tests because the message renderer task is cancelled,
+                // before startCompleted is reached - executor is idle
+                phases.await(RenderPhases.Phase.Start);
+            }
+
             @Override
             public void completeMandatory() {
-                try {
-                    completedMandatory.await();
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    throw new ScriptInterruptedException(e);
-                }
+                phases.await(RenderPhases.Phase.Mandatory);
             }
 
             @Override
             public void completeAll() {
-                try {
-                    completedAll.await();
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    throw new ScriptInterruptedException(e);
-                }
+                phases.await(RenderPhases.Phase.All);
             }
 
             protected final void startCompleted() {
-                completedStart.countDown();
+                phases.complete(RenderPhases.Phase.Start);
                 if (logger.isDebugEnabled()) {
                     logger.debug(getClass().getSimpleName() + " completed start after "
                             + String.format("%.2f seconds", getElapsedSeconds()));
@@ -301,7 +598,7 @@ public class MessageRendererQueue implements AutoCloseable {
             }
 
             protected final void mandatoryCompleted() {
-                completedMandatory.countDown();
+                phases.complete(RenderPhases.Phase.Mandatory);
                 if (logger.isDebugEnabled()) {
                     logger.debug("{} completed mandatory after {}", getClass().getSimpleName(),
                             String.format("%.2f seconds", getElapsedSeconds()));
@@ -309,7 +606,7 @@ public class MessageRendererQueue implements AutoCloseable {
             }
 
             protected final void allCompleted() {
-                completedAll.countDown();
+                phases.complete(RenderPhases.Phase.All);
                 if (logger.isDebugEnabled()) {
                     logger.debug("{} completed all after {}", getClass().getSimpleName(), getElapsedSecondsFormatted());
                 }
@@ -317,17 +614,17 @@ public class MessageRendererQueue implements AutoCloseable {
 
             @Override
             public boolean hasCompletedStart() {
-                return completedStart.getCount() == 0;
+                return phases.isCompleted(RenderPhases.Phase.Start);
             }
 
             @Override
             public boolean hasCompletedMandatory() {
-                return completedMandatory.getCount() == 0;
+                return phases.isCompleted(RenderPhases.Phase.Mandatory);
             }
 
             @Override
             public boolean hasCompletedAll() {
-                return completedAll.getCount() == 0;
+                return phases.isCompleted(RenderPhases.Phase.All);
             }
 
             public String getElapsedSecondsFormatted() {
@@ -346,7 +643,7 @@ public class MessageRendererQueue implements AutoCloseable {
     }
 
     public void run(Batch batch) throws InterruptedException, IOException {
-        try {
+        try (Trace.Span span = Trace.span("render batch")) {
             // TOOO Avoid locks caused by interrupting before start
             batch.renderer.startCompleted();
 
@@ -392,21 +689,44 @@ public class MessageRendererQueue implements AutoCloseable {
             }
             replay.run();
         } else if (batch.position == Position.FromMandatory) {
-            // TODO remember accumulated text so that all but the last section
-            // is displayed, rendered, but the text not added again
-            // TODO Remove all but last speech and delay parts
-            renderMessage(batch, batch.getMandatory());
+            ReplaySnapshot snapshot = batch.getLastSnapshot();
+            if (snapshot != null) {
+                ReplaySnapshot.Position mandatory = snapshot.get(Position.FromMandatory);
+                restore(batch, mandatory);
+                renderMessage(batch, RenderedMessage.copyTextHeader(batch.getLastMessage(), mandatory.messagePart));
+            } else {
+                renderMessage(batch, batch.getMandatory());
+            }
         } else if (batch.position == Position.End) {
-            renderMessage(batch, batch.getEnd());
+            ReplaySnapshot snapshot = batch.getLastSnapshot();
+            if (snapshot != null) {
+                restore(batch, snapshot.get(Position.End));
+                show(batch.accumulatedText, batch.displayImage);
+                batch.renderer.startCompleted();
+            } else {
+                renderMessage(batch, batch.getEnd());
+            }
         } else {
             throw new IllegalStateException(batch.position.toString());
         }
     }
 
+    /**
+     * Restores the accumulated text and the image of a replay position. The text is shortened to the text parts of the
+     * position, so restoring the end of the last message doesn't copy anything.
+     */
+    private static void restore(Batch batch, ReplaySnapshot.Position position) {
+        if (position.textParts < batch.accumulatedText.size()) {
+            batch.accumulatedText = batch.accumulatedText.prefix(position.textParts);
+        }
+        batch.displayImage = position.displayImage;
+    }
+
     private void renderMessages(Batch batch) throws IOException, InterruptedException {
         while (haveMoreMessages(batch)) {
             RenderedMessage message = batch.messages.get(batch.currentMessage);
-            renderMessage(batch, message);
+            batch.snapshots.remove(message);
+            renderMessage(batch, message, true);
             batch.currentMessage++;
 
             boolean last = batch.currentMessage == batch.messages.size();
@@ -442,10 +762,25 @@ public class MessageRendererQueue implements AutoCloseable {
      * @throws InterruptedException
      */
     private void renderMessage(Batch batch, RenderedMessage message) throws IOException, InterruptedException {
+        renderMessage(batch, message, false);
+    }
+
+    /**
+     * @param snapshot
+     *            Whether to record the replay positions of the message, which isn't done when rendering a section of a
+     *            message.
+     */
+    private void renderMessage(Batch batch, RenderedMessage message, boolean snapshot)
+            throws IOException, InterruptedException {
+        int mandatory = snapshot ? RenderedMessage.getLastSectionStart(message) : -1;
         String mood = Mood.Neutral;
-        for (Iterator<MessagePart> it = message.iterator(); it.hasNext();) {
-            MessagePart part = it.next();
-            boolean lastPart = !it.hasNext();
+        int size = message.size();
+        for (int index = 0; index < size; index++) {
+            MessagePart part = message.get(index);
+            boolean lastPart = index == size - 1;
+            if (index == mandatory) {
+                batch.record(message, Position.FromMandatory, index);
+            }
             if (!ManuallyLoggedMessageTypes.contains(part.type)) {
                 teaseLib.transcript.info("" + part.type.name() + " = " + part.value);
             }
@@ -454,22 +789,30 @@ public class MessageRendererQueue implements AutoCloseable {
             if (part.type == Message.Type.Mood) {
                 mood = part.value;
             } else {
-                renderPart(part, batch, mood);
+                try (Trace.Span span = Trace.span("render part", part.type)) {
+                    renderPart(part, batch, mood);
+                }
             }
 
-            completeSectionAll();
+            try (Trace.Span span = Trace.span("complete section")) {
+                completeSectionAll();
+            }
             if (part.type == Message.Type.Text) {
                 show(batch.actor, part.value, batch.accumulatedText, mood, batch.displayImage);
                 batch.renderer.startCompleted();
             } else if (lastPart && definesPageLayout(part)) {
-                show(batch.accumulatedText.toString(), batch.displayImage);
+                show(batch.accumulatedText, batch.displayImage);
                 batch.renderer.startCompleted();
             }
 
             if (Thread.currentThread().isInterrupted()) {
-                break;
+                return;
             }
         }
+
+        if (snapshot) {
+            batch.record(message, Position.End, size);
+        }
     }
 
     private static boolean definesPageLayout(MessagePart part) {
@@ -526,7 +869,7 @@ public class MessageRendererQueue implements AutoCloseable {
             throws IOException, InterruptedException {
         accumulatedText.add(new MessagePart(Message.Type.Text, e.getMessage()));
         completeSectionAll();
-        show(batch.actor, accumulatedText.toString(), mood, batch.displayImage);
+        show(batch.actor, accumulatedText, mood, batch.displayImage);
         batch.renderer.startCompleted();
     }
 
@@ -564,7 +907,7 @@ public class MessageRendererQueue implements AutoCloseable {
     private void show(Actor actor, String text, MessageTextAccumulator accumulatedText, String mood,
             String displayImage) throws IOException, InterruptedException {
         teaseLib.transcript.info(text);
-        show(actor, accumulatedText.toString(), mood, displayImage);
+        show(actor, accumulatedText, mood, displayImage);
     }
 
     private void completeSectionMandatory() {
@@ -581,7 +924,7 @@ public class MessageRendererQueue implements AutoCloseable {
     }
 
     // COMPLETE
-    private void show(Actor actor, String text, String mood, String displayImage)
+    private void show(Actor actor, MessageTextAccumulator text, String mood, String displayImage)
             throws IOException, InterruptedException {
         logMoodToTranscript(actor, mood, displayImage);
         logImageToTranscript(actor, displayImage);
@@ -609,25 +952,40 @@ public class MessageRendererQueue implements AutoCloseable {
     }
 
     // COMPLETE
-    private void show(String text, String displayImage) throws IOException, InterruptedException {
+    private void show(MessageTextAccumulator text, String displayImage) throws IOException, InterruptedException {
         if (!Thread.currentThread().isInterrupted()) {
-            teaseLib.host.show(getImageBytes(displayImage), text);
+            byte[] imageBytes = getImageBytes(displayImage);
+            if (text == null) {
+                displayedText = null;
+                teaseLib.host.show(imageBytes, null);
+                return;
+            }
+
+            if (text != displayedText) {
+                if (displayedText != null) {
+                    text.continueFrom(displayedText);
+                }
+                displayedText = text;
+            }
+
+            MessageTextAccumulator.Delta delta = text.render();
+            try (Trace.Span span = Trace.span("show")) {
+                if (teaseLib.host instanceof Host.PartialUpdates) {
+                    ((Host.PartialUpdates) teaseLib.host).show(imageBytes, delta.offset, delta.text);
+                } else {
+                    teaseLib.host.show(imageBytes, text.toString());
+                }
+            }
         }
     }
 
     // TODO Rename parameter
     private byte[] getImageBytes(String displayImage) throws IOException, InterruptedException {
         if (displayImage != null && displayImage != Message.NoImage) {
-            try {
+            try (Trace.Span span = Trace.span("fetch image", displayImage)) {
                 return imageFetcher.get(displayImage);
             } catch (IOException e) {
                 handleIOException(e);
-            } finally {
-                synchronized (imageFetcher) {
-                    if (!imageFetcher.isEmpty()) {
-                        imageFetcher.fetch();
-                    }
-                }
             }
         }
         return new byte[] {};
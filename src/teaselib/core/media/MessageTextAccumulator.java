@@ -1,36 +1,234 @@
 package teaselib.core.media;
 
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+
 import teaselib.Message;
 import teaselib.MessagePart;
 
+/**
+ * Accumulates the text of message parts into paragraphs.
+ * <p>
+ * Accumulators share an append-only buffer, and each accumulator marks how much of it belongs to its text. Copies and
+ * prefixes are just marks, and an accumulator that adds the same parts as another one that has already been extended
+ * only advances its marks. A copy that adds different parts moves its text to a buffer of its own. The text that has
+ * been added since the last call to {@link #render()} is available as a {@link Delta}, for hosts that can update the
+ * displayed text in place.
+ */
 public class MessageTextAccumulator {
-    private final StringBuilder message;
+    /**
+     * Describes how to get from the previously rendered text to the current one: keep the first {@code offset}
+     * characters, and replace the rest with {@code text}.
+     */
+    public static class Delta {
+        public final int offset;
+        public final String text;
+
+        Delta(int offset, String text) {
+            this.offset = offset;
+            this.text = text;
+        }
+
+        public String applyTo(String rendered) {
+            return rendered.substring(0, offset) + text;
+        }
+
+        @Override
+        public String toString() {
+            return offset + "+\"" + text + "\"";
+        }
+    }
+
+    /**
+     * The append-only text buffer, along with the end and the paragraph state of each part. Batches share buffers
+     * between the script thread and the render thread, so access is synchronized.
+     */
+    private static final class Buffer {
+        /**
+         * Buffers aren't kept alive by their forks, so a long session doesn't accumulate the text of all messages.
+         */
+        final WeakReference<Buffer> parent;
+        /**
+         * The length of the text this buffer has in common with its parent.
+         */
+        final int forkedAt;
+
+        private final StringBuilder chars = new StringBuilder();
+        private int[] ends = new int[16];
+        private boolean[] appendable = new boolean[16];
+        private int parts = 0;
+
+        Buffer() {
+            this(null, 0);
+        }
+
+        Buffer parent() {
+            return parent.get();
+        }
+
+        private Buffer(Buffer parent, int forkedAt) {
+            this.parent = new WeakReference<>(parent);
+            this.forkedAt = forkedAt;
+        }
+
+        synchronized Buffer fork(int parts) {
+            Buffer fork = new Buffer(this, end(parts));
+            fork.chars.append(chars, 0, fork.forkedAt);
+            fork.ends = Arrays.copyOf(ends, Math.max(16, parts * 2));
+            fork.appendable = Arrays.copyOf(appendable, fork.ends.length);
+            fork.parts = parts;
+            return fork;
+        }
+
+        synchronized int end(int parts) {
+            return parts > 0 ? ends[parts - 1] : 0;
+        }
+
+        synchronized boolean appendable(int parts) {
+            return parts > 0 ? appendable[parts - 1] : true;
+        }
+
+        /**
+         * Adds the part to the buffer if the accumulator is at the end of the buffer, or checks whether the buffer
+         * continues with the same part.
+         * 
+         * @return Whether the text of the accumulator with the given number of parts can be extended by the part.
+         */
+        synchronized boolean add(int parts, String part, boolean canAppend) {
+            int start = end(parts);
+            if (parts == this.parts) {
+                chars.append(part);
+                if (this.parts == ends.length) {
+                    ends = Arrays.copyOf(ends, ends.length * 2);
+                    appendable = Arrays.copyOf(appendable, ends.length);
+                }
+                ends[this.parts] = chars.length();
+                appendable[this.parts] = canAppend;
+                this.parts++;
+                return true;
+            } else {
+                if (ends[parts] - start != part.length() || appendable[parts] != canAppend) {
+                    return false;
+                }
+                for (int i = 0; i < part.length(); i++) {
+                    if (chars.charAt(start + i) != part.charAt(i)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
+
+        synchronized String substring(int start, int end) {
+            return chars.substring(start, end);
+        }
+
+        synchronized char charAt(int index) {
+            return chars.charAt(index);
+        }
+    }
+
+    private Buffer buffer;
+    private int parts;
+    private int length;
+    private int rendered = 0;
+    private String string = null;
     boolean appendToParagraph = true;
 
     public MessageTextAccumulator() {
-        message = new StringBuilder();
+        this(new Buffer(), 0);
+    }
+
+    private MessageTextAccumulator(Buffer buffer, int parts) {
+        this.buffer = buffer;
+        this.parts = parts;
+        this.length = buffer.end(parts);
+        this.appendToParagraph = buffer.appendable(parts);
+    }
+
+    MessageTextAccumulator copy() {
+        return new MessageTextAccumulator(buffer, parts);
+    }
+
+    /**
+     * @param segments
+     *            The number of parts to keep.
+     * @return A copy of the text accumulated by the first parts.
+     */
+    MessageTextAccumulator prefix(int segments) {
+        return new MessageTextAccumulator(buffer, segments);
+    }
+
+    /**
+     * Continues rendering where the displayed text has left off, so that the next delta doesn't contain the part of the
+     * text that is already visible.
+     * 
+     * @param displayed
+     *            The text that has been rendered last.
+     */
+    void continueFrom(MessageTextAccumulator displayed) {
+        rendered = Math.min(displayed.rendered, commonPrefixLength(displayed));
+    }
+
+    /**
+     * Text in the same buffer or in a common ancestor buffer is known to be equal, so only the text that has been
+     * added after forking has to be compared.
+     */
+    private int commonPrefixLength(MessageTextAccumulator other) {
+        int length = Math.min(this.length, other.length);
+        for (int i = Math.min(knownEqualLength(other), length); i < length; i++) {
+            if (buffer.charAt(i) != other.buffer.charAt(i)) {
+                return i;
+            }
+        }
+        return length;
+    }
+
+    private int knownEqualLength(MessageTextAccumulator other) {
+        int known = length;
+        for (Buffer a = buffer; a != null; known = Math.min(known, a.forkedAt), a = a.parent()) {
+            int otherKnown = other.length;
+            for (Buffer b = other.buffer; b != null; otherKnown = Math.min(otherKnown, b.forkedAt), b = b.parent()) {
+                if (a == b) {
+                    return Math.min(known, otherKnown);
+                }
+            }
+        }
+        return 0;
     }
 
     public final void add(MessagePart part) {
+        StringBuilder segment = new StringBuilder();
         if (part.type == Message.Type.Text) {
             if (!appendToParagraph) {
-                newParagraph();
+                newParagraph(segment);
             } else {
-                message.append(" ");
+                segment.append(" ");
             }
-            message.append(part.value);
-            appendToParagraph = canAppendToParagraph();
+            segment.append(part.value);
+            appendToParagraph = canAppendTo(segment);
         } else if (part.type == Message.Type.Item) {
-            newParagraph();
-            message.append(" ");
-            message.append(removeKeyword(part));
+            newParagraph(segment);
+            segment.append(" ");
+            segment.append(removeKeyword(part));
             appendToParagraph = true;
+        } else {
+            return;
+        }
+
+        String text = segment.toString();
+        if (!buffer.add(parts, text, appendToParagraph)) {
+            buffer = buffer.fork(parts);
+            buffer.add(parts, text, appendToParagraph);
         }
+        parts++;
+        length += text.length();
+        string = null;
     }
 
-    protected void newParagraph() {
-        if (message.length() > 0) {
-            message.append("\n\n");
+    private void newParagraph(StringBuilder segment) {
+        if (length > 0) {
+            segment.append("\n\n");
         }
     }
 
@@ -45,12 +243,8 @@ public class MessageTextAccumulator {
         }
     }
 
-    private boolean canAppendToParagraph() {
-        return canAppendTo(message.toString());
-    }
-
-    public static boolean canAppendTo(String string) {
-        String ending = string.isEmpty() ? " " : string.substring(string.length() - 1, string.length());
+    public static boolean canAppendTo(CharSequence string) {
+        String ending = string.length() == 0 ? " " : String.valueOf(string.charAt(string.length() - 1));
         return Message.MainClauseAppendableCharacters.contains(ending);
     }
 
@@ -58,9 +252,33 @@ public class MessageTextAccumulator {
         return appendToParagraph;
     }
 
+    /**
+     * @return The number of parts that contributed to the text.
+     */
+    int size() {
+        return parts;
+    }
+
+    /**
+     * Marks the accumulated text as rendered.
+     * 
+     * @return The change since the text has been rendered the last time.
+     */
+    public Delta render() {
+        int offset = rendered;
+        rendered = length;
+        return new Delta(offset, buffer.substring(offset, length));
+    }
+
+    /**
+     * @return The accumulated text, which is cached until the next part is added.
+     */
     @Override
     public String toString() {
-        return message.toString();
+        if (string == null) {
+            string = buffer.substring(0, length);
+        }
+        return string;
     }
 
 }
@@ -86,7 +86,7 @@ public class RenderMessage extends MediaRendererThread implements ReplayableMedi
             throw new NullPointerException();
         }
 
-        this.imageFetcher = new Prefetcher<>(renderQueue.getExecutorService());
+        this.imageFetcher = PrefetchImage.prefetcher(renderQueue.getExecutorService(), teaseLib.config);
         this.renderQueue = new MediaRendererQueue(renderQueue);
         this.actor = actor;
         this.resources = resources;
@@ -0,0 +1,89 @@
+package teaselib.core.media;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import teaselib.core.ScriptInterruptedException;
+
+/**
+ * Signals the completion of the start, mandatory and all phases of a renderer. Completing a phase completes all
+ * previous phases as well.
+ * <p>
+ * Each phase is a completable future, so any number of threads can wait for or query a phase without sharing a
+ * monitor.
+ *
+ * @author Citizen-Cane
+ *
+ */
+final class RenderPhases {
+    enum Phase {
+        Start,
+        Mandatory,
+        All
+    }
+
+    private static final class Completion {
+        final CompletableFuture<?>[] phases = new CompletableFuture<?>[Phase.values().length];
+
+        Completion() {
+            for (int i = 0; i < phases.length; i++) {
+                phases[i] = new CompletableFuture<>();
+            }
+        }
+
+        void complete(Phase phase) {
+            for (int i = 0; i <= phase.ordinal(); i++) {
+                phases[i].complete(null);
+            }
+        }
+    }
+
+    private volatile Completion completion = new Completion();
+
+    /**
+     * Starts over with all phases pending. Threads waiting for the previous phases are released.
+     */
+    void restart() {
+        Completion previous = completion;
+        completion = new Completion();
+        previous.complete(Phase.All);
+    }
+
+    /**
+     * Starts over with the given phase and all its previous phases already completed. Threads waiting for the previous
+     * phases are released.
+     */
+    void restartAfter(Phase phase) {
+        Completion next = new Completion();
+        next.complete(phase);
+        Completion previous = completion;
+        completion = next;
+        previous.complete(Phase.All);
+    }
+
+    void complete(Phase phase) {
+        completion.complete(phase);
+    }
+
+    /**
+     * Waits for the phase to complete. Like a latch, interrupted threads fail even if the phase has already been
+     * completed.
+     */
+    void await(Phase phase) {
+        try {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            completion.phases[phase.ordinal()].get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ScriptInterruptedException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    boolean isCompleted(Phase phase) {
+        return completion.phases[phase.ordinal()].isDone();
+    }
+}
@@ -1,26 +1,34 @@
 package teaselib.core.media;
 
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
 import teaselib.core.Audio;
 import teaselib.core.ResourceLoader;
 import teaselib.core.TeaseLib;
 
 public class RenderPrerecordedSpeech extends RenderSpeech {
+    private final ResourceLoader resources;
     private final String speechSoundFile;
     private final Audio audio;
 
     public RenderPrerecordedSpeech(String speechSoundFile, ResourceLoader resources, TeaseLib teaseLib)
             throws IOException {
         super(teaseLib);
+        this.resources = resources;
         this.speechSoundFile = speechSoundFile;
-        this.audio = teaseLib.host.audio(resources, speechSoundFile);
+        this.audio = AudioCache.audio(teaseLib, resources, speechSoundFile);
 
         audio.load();
     }
 
     @Override
     protected void renderSpeech() throws IOException, InterruptedException {
+        if (teaseLib.isTimeVirtual()) {
+            teaseLib.sleep(AudioDuration.millis(resources, speechSoundFile), TimeUnit.MILLISECONDS);
+            return;
+        }
+
         try {
             audio.play();
         } catch (InterruptedException e) {
@@ -1,6 +1,7 @@
 package teaselib.core.media;
 
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -12,13 +13,15 @@ import teaselib.core.TeaseLib;
 public class RenderSound extends MediaRendererThread {
     private static final Logger logger = LoggerFactory.getLogger(RenderSound.class);
 
+    private final ResourceLoader resources;
     private final String soundFile;
     private final Audio audio;
 
     public RenderSound(ResourceLoader resources, String soundFile, TeaseLib teaseLib) throws IOException {
         super(teaseLib);
+        this.resources = resources;
         this.soundFile = soundFile;
-        this.audio = teaseLib.host.audio(resources, soundFile);
+        this.audio = AudioCache.audio(teaseLib, resources, soundFile);
 
         try {
             audio.load();
@@ -33,8 +36,13 @@ public class RenderSound extends MediaRendererThread {
             teaseLib.transcript.info("Message sound = " + soundFile);
             logger.info("{} started", soundFile);
             startCompleted();
-            audio.play();
-            logger.info("{} completed", soundFile);
+            if (teaseLib.isTimeVirtual()) {
+                teaseLib.sleep(AudioDuration.millis(resources, soundFile), TimeUnit.MILLISECONDS);
+                logger.info("{} skipped in virtual time", soundFile);
+            } else {
+                audio.play();
+                logger.info("{} completed", soundFile);
+            }
         } catch (InterruptedException e) {
             audio.stop();
             throw e;
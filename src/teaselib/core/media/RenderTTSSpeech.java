@@ -1,7 +1,10 @@
 package teaselib.core.media;
 
+import java.util.concurrent.TimeUnit;
+
 import teaselib.Actor;
 import teaselib.core.TeaseLib;
+import teaselib.core.texttospeech.TextToSpeech;
 import teaselib.core.texttospeech.TextToSpeechPlayer;
 
 public class RenderTTSSpeech extends RenderSpeech {
@@ -21,6 +24,11 @@ public class RenderTTSSpeech extends RenderSpeech {
 
     @Override
     protected void renderSpeech() throws InterruptedException {
+        if (teaseLib.isTimeVirtual()) {
+            teaseLib.sleep(TextToSpeech.getEstimatedSpeechDuration(prompt), TimeUnit.MILLISECONDS);
+            return;
+        }
+
         try {
             ttsPlayer.speak(actor, prompt, mood);
         } catch (InterruptedException e) {
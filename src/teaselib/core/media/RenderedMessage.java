@@ -12,6 +12,18 @@ public class RenderedMessage extends AbstractMessage {
     @FunctionalInterface
     public interface Decorator {
         AbstractMessage process(AbstractMessage message);
+
+        /**
+         * Resolves the script state the decoration depends on, on the script thread, so that the message can be
+         * decorated on another thread.
+         * 
+         * @param message
+         *            The undecorated message.
+         * @return A decorator that decorates the message without accessing script state.
+         */
+        default Decorator prepare(Message message) {
+            return this;
+        }
     }
 
     RenderedMessage(Message message, List<Decorator> decorators) {
@@ -56,6 +68,14 @@ public class RenderedMessage extends AbstractMessage {
         return copyTextHeader(message, index);
     }
 
+    /**
+     * @return The index of the first part of the last section.
+     */
+    public static int getLastSectionStart(AbstractMessage message) {
+        int index = findLastTextElement(message);
+        return index < 0 ? 0 : Math.max(0, findStartOfHeader(message, index));
+    }
+
     static int findStartOfHeader(AbstractMessage message, int index) {
         AbstractMessage parts = message;
         while (index-- > 0) {
@@ -0,0 +1,61 @@
+package teaselib.core.media;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import teaselib.Replay;
+
+/**
+ * Remembers what has been displayed when rendering a message reached a replay position, so that replaying the message
+ * can restore the position instead of rendering the message again up to that point.
+ * <p>
+ * Snapshots are recorded on the render thread and read on the script thread, so they're immutable - recording a
+ * position returns a new snapshot.
+ *
+ * @author Citizen-Cane
+ *
+ */
+final class ReplaySnapshot {
+    static final class Position {
+        /**
+         * The number of text parts in the accumulated text.
+         */
+        final int textParts;
+        final String displayImage;
+        /**
+         * The index of the first message part to render from this position.
+         */
+        final int messagePart;
+
+        Position(int textParts, String displayImage, int messagePart) {
+            this.textParts = textParts;
+            this.displayImage = displayImage;
+            this.messagePart = messagePart;
+        }
+    }
+
+    static final ReplaySnapshot None = new ReplaySnapshot(new EnumMap<>(Replay.Position.class));
+
+    private final Map<Replay.Position, Position> positions;
+
+    private ReplaySnapshot(Map<Replay.Position, Position> positions) {
+        this.positions = positions;
+    }
+
+    ReplaySnapshot with(Replay.Position position, MessageTextAccumulator text, String displayImage, int messagePart) {
+        Map<Replay.Position, Position> recorded = new EnumMap<>(positions);
+        recorded.put(position, new Position(text.size(), displayImage, messagePart));
+        return new ReplaySnapshot(recorded);
+    }
+
+    Position get(Replay.Position position) {
+        return positions.get(position);
+    }
+
+    /**
+     * @return Whether the message has been rendered completely, so that all positions can be restored.
+     */
+    boolean isComplete() {
+        return positions.containsKey(Replay.Position.End);
+    }
+}
@@ -1,7 +1,12 @@
 package teaselib.core.media;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.function.Function;
@@ -15,7 +20,18 @@ import teaselib.core.AbstractMessage;
 import teaselib.core.ResourceLoader;
 import teaselib.core.configuration.Configuration;
 import teaselib.core.texttospeech.TextToSpeechPlayer;
-
+import teaselib.core.util.Trace;
+
+/**
+ * Decorates script messages with delays, speech, actor images and moods, according to the render settings of the
+ * configuration.
+ * <p>
+ * Debug filtering and delay rules are applied in one pass, as well as text variable expansion and actor image
+ * injection. Render settings are resolved once, and only resolved again when the configuration changes.
+ *
+ * @author Citizen-Cane
+ *
+ */
 public class ScriptMessageDecorator {
     private static final long DELAY_BETWEEN_PARAGRAPHS_MILLIS = 500;
     private static final long DELAY_FOR_APPEND_MILLIS = 0;
@@ -28,6 +44,37 @@ public class ScriptMessageDecorator {
     private static Set<MessagePart> generatedDelays = new HashSet<>(
             Arrays.asList(DelayAfterAppend, DelayBetweenParagraphs));
 
+    /**
+     * The render settings of a configuration, cached by the configuration until it's modified.
+     */
+    static final class RenderSettings {
+        final boolean speech;
+        final boolean sound;
+        final boolean actorImages;
+        final boolean instructionalImages;
+
+        private RenderSettings(Configuration config) {
+            this.speech = Boolean.parseBoolean(config.get(Config.Render.Speech));
+            this.sound = Boolean.parseBoolean(config.get(Config.Render.Sound));
+            this.actorImages = Boolean.parseBoolean(config.get(Config.Render.ActorImages));
+            this.instructionalImages = Boolean.parseBoolean(config.get(Config.Render.InstructionalImages));
+        }
+
+        static RenderSettings of(Configuration config) {
+            return config.derived(RenderSettings.class, RenderSettings::new);
+        }
+
+        boolean renders(MessagePart part) {
+            if (part.type == Message.Type.DesktopItem || part.type == Message.Type.Image) {
+                return instructionalImages;
+            } else if (part.type == Message.Type.Sound || part.type == Message.Type.BackgroundSound) {
+                return sound;
+            } else {
+                return true;
+            }
+        }
+    }
+
     private final Configuration config;
     private final String displayImage;
     private final Actor actor;
@@ -50,155 +97,214 @@ public class ScriptMessageDecorator {
     }
 
     public RenderedMessage.Decorator[] messageModifiers() {
-        return new RenderedMessage.Decorator[] { //
-                this::filterDebug, this::applyDelayRules, this::addTextToSpeech, this::expandTextVariables,
-                this::addActorImages };
+        return new RenderedMessage.Decorator[] { new Decorator() };
     }
 
-    private AbstractMessage filterDebug(AbstractMessage message) {
-        AbstractMessage debugFiltered = new AbstractMessage();
-        for (MessagePart part : message) {
-            if (part.type == Message.Type.DesktopItem
-                    && !Boolean.parseBoolean(config.get(Config.Render.InstructionalImages))) {
-                // Ignore
-            } else if (part.type == Message.Type.Image
-                    && !Boolean.parseBoolean(config.get(Config.Render.InstructionalImages))) {
-                // Ignore
-            } else if (part.type == Message.Type.Sound && !Boolean.parseBoolean(config.get(Config.Render.Sound))) {
-                // Ignore
-            } else if (part.type == Message.Type.BackgroundSound
-                    && !Boolean.parseBoolean(config.get(Config.Render.Sound))) {
-                // Ignore
-            } else {
-                debugFiltered.add(part);
+    /**
+     * Decorates messages on the calling thread, or prepares them on the script thread for being decorated on another
+     * thread.
+     */
+    private final class Decorator implements RenderedMessage.Decorator {
+        @Override
+        public AbstractMessage process(AbstractMessage message) {
+            try (Trace.Span span = Trace.span("decorate")) {
+                RenderSettings settings = RenderSettings.of(config);
+                AbstractMessage withDelays = applyDelayRules(message, settings);
+                AbstractMessage withSpeech = addTextToSpeech(withDelays);
+                return expandTextVariablesAndAddActorImages(withSpeech, settings, expandTextVariables,
+                        ScriptMessageDecorator.this::nextActorImage);
+            }
+        }
+
+        /**
+         * Expands the text variables and selects the actor images of the message on the calling thread, since both
+         * access script state. The speech lookup doesn't, and runs in the returned decorator.
+         */
+        @Override
+        public RenderedMessage.Decorator prepare(Message message) {
+            try (Trace.Span span = Trace.span("prepare decoration")) {
+                RenderSettings settings = RenderSettings.of(config);
+                Map<String, String> textVariables = new HashMap<>();
+                List<String> actorImages = new ArrayList<>();
+                expandTextVariablesAndAddActorImages(applyDelayRules(message, settings), settings, text -> {
+                    String expanded = expandTextVariables.apply(text);
+                    textVariables.put(text, expanded);
+                    return expanded;
+                }, currentMood -> {
+                    String actorImage = nextActorImage(currentMood);
+                    actorImages.add(actorImage);
+                    return actorImage;
+                });
+
+                Iterator<String> selectedActorImages = actorImages.iterator();
+                return prepared -> {
+                    try (Trace.Span decorate = Trace.span("decorate")) {
+                        AbstractMessage withDelays = applyDelayRules(prepared, settings);
+                        AbstractMessage withSpeech = addTextToSpeech(withDelays);
+                        return expandTextVariablesAndAddActorImages(withSpeech, settings,
+                                text -> textVariables.getOrDefault(text, text),
+                                currentMood -> selectedActorImages.hasNext() ? selectedActorImages.next()
+                                        : Message.NoImage);
+                    }
+                };
             }
         }
-        return debugFiltered;
     }
 
     private AbstractMessage addTextToSpeech(AbstractMessage message) {
-        return textToSpeech != null ? textToSpeech.createSpeechMessage(actor, message, resources) : message;
+        if (textToSpeech != null) {
+            try (Trace.Span span = Trace.span("speech lookup")) {
+                return textToSpeech.createSpeechMessage(actor, message, resources);
+            }
+        } else {
+            return message;
+        }
     }
 
-    private AbstractMessage expandTextVariables(AbstractMessage message) {
-        AbstractMessage expandedTextVariables = new AbstractMessage();
+    private AbstractMessage expandTextVariablesAndAddActorImages(AbstractMessage message, RenderSettings settings,
+            Function<String, String> expandTextVariables, Function<String, String> nextActorImage) {
+        ActorImages actorImages = new ActorImages(settings, nextActorImage);
         for (MessagePart part : message) {
             if (part.type == Message.Type.Speech && !Message.Type.isSound(part.value)) {
-                if (Boolean.parseBoolean(config.get(Config.Render.Speech))) {
-                    expandedTextVariables.add(part.type, expandTextVariables.apply(part.value));
+                if (settings.speech) {
+                    actorImages.add(new MessagePart(part.type, expandTextVariables.apply(part.value)));
                 }
             } else if (part.type == Message.Type.Text) {
-                expandedTextVariables.add(new MessagePart(part.type, expandTextVariables.apply(part.value)));
-
+                actorImages.add(new MessagePart(part.type, expandTextVariables.apply(part.value)));
             } else {
-                expandedTextVariables.add(part);
+                actorImages.add(part);
             }
         }
-        return expandedTextVariables;
+        return actorImages.message();
     }
 
     public AbstractMessage addActorImages(AbstractMessage message) {
-        AbstractMessage parsedMessage = new AbstractMessage();
+        ActorImages actorImages = new ActorImages(RenderSettings.of(config), this::nextActorImage);
+        for (MessagePart part : message) {
+            actorImages.add(part);
+        }
+        return actorImages.message();
+    }
 
-        if (message.isEmpty()) {
-            ensureEmptyMessageContainsDisplayImage(parsedMessage, getActorOrDisplayImage(displayImage, mood));
-        } else {
-            String imageType = displayImage;
-            String nextImage = null;
-            String lastMood = null;
-            String nextMood = null;
-
-            for (MessagePart part : message) {
-                if (part.type == Message.Type.Image) {
-                    // Remember what type of image to display
-                    // with the next text element
-                    if (Message.ActorImage.equalsIgnoreCase(part.value)) {
-                        imageType = part.value;
-                    } else if (Message.NoImage.equalsIgnoreCase(part.value)) {
-                        imageType = part.value;
-                    } else {
-                        String currentMood;
-                        if (nextMood == null) {
-                            currentMood = mood;
-                        } else {
-                            currentMood = nextMood;
-                        }
-                        // Inject mood if changed
-                        if (currentMood != lastMood) {
-                            parsedMessage.add(Message.Type.Mood, currentMood);
-                            lastMood = currentMood;
-                        }
-                        imageType = nextImage = getActorOrDisplayImage(part.value, currentMood);
-                        parsedMessage.add(part.type, nextImage);
-                    }
-                } else if (part.type == Message.Type.Keyword) {
-                    parsedMessage.add(part);
-                } else if (part.type == Message.Type.Mood) {
-                    nextMood = part.value;
-                } else if (part.type == Message.Type.Text) {
-                    // set mood if not done already
+    /**
+     * Injects actor images and moods into the message parts added to it.
+     */
+    private final class ActorImages {
+        private final RenderSettings settings;
+        private final Function<String, String> nextActorImage;
+        private final AbstractMessage parsedMessage = new AbstractMessage();
+
+        private String imageType = displayImage;
+        private String nextImage = null;
+        private String lastMood = null;
+        private String nextMood = null;
+
+        ActorImages(RenderSettings settings, Function<String, String> nextActorImage) {
+            this.settings = settings;
+            this.nextActorImage = nextActorImage;
+        }
+
+        void add(MessagePart part) {
+            if (part.type == Message.Type.Image) {
+                // Remember what type of image to display
+                // with the next text element
+                if (Message.ActorImage.equalsIgnoreCase(part.value)) {
+                    imageType = part.value;
+                } else if (Message.NoImage.equalsIgnoreCase(part.value)) {
+                    imageType = part.value;
+                } else {
                     String currentMood;
                     if (nextMood == null) {
                         currentMood = mood;
                     } else {
                         currentMood = nextMood;
-                        nextMood = null;
                     }
                     // Inject mood if changed
                     if (currentMood != lastMood) {
                         parsedMessage.add(Message.Type.Mood, currentMood);
                         lastMood = currentMood;
                     }
-                    // Update image if changed
-                    if (imageType != nextImage) {
-                        nextImage = getActorOrDisplayImage(imageType, currentMood);
-                        parsedMessage.add(Message.Type.Image, nextImage);
-                    }
-                    parsedMessage.add(part);
+                    imageType = nextImage = getActorOrDisplayImage(part.value, currentMood);
+                    parsedMessage.add(part.type, nextImage);
+                }
+            } else if (part.type == Message.Type.Keyword) {
+                parsedMessage.add(part);
+            } else if (part.type == Message.Type.Mood) {
+                nextMood = part.value;
+            } else if (part.type == Message.Type.Text) {
+                // set mood if not done already
+                String currentMood;
+                if (nextMood == null) {
+                    currentMood = mood;
                 } else {
-                    parsedMessage.add(part);
+                    currentMood = nextMood;
+                    nextMood = null;
+                }
+                // Inject mood if changed
+                if (currentMood != lastMood) {
+                    parsedMessage.add(Message.Type.Mood, currentMood);
+                    lastMood = currentMood;
+                }
+                // Update image if changed
+                if (imageType != nextImage) {
+                    nextImage = getActorOrDisplayImage(imageType, currentMood);
+                    parsedMessage.add(Message.Type.Image, nextImage);
                 }
+                parsedMessage.add(part);
+            } else {
+                parsedMessage.add(part);
             }
+        }
 
+        AbstractMessage message() {
             if (parsedMessage.isEmpty()) {
                 ensureEmptyMessageContainsDisplayImage(parsedMessage, getActorOrDisplayImage(imageType, mood));
             }
+            return parsedMessage;
         }
 
-        return parsedMessage;
-    }
-
-    private String getActorOrDisplayImage(String imageType, String currentMood) {
-        final String nextImage;
-        if (Message.ActorImage.equalsIgnoreCase(imageType)
-                && !Boolean.parseBoolean(config.get(Config.Render.ActorImages))) {
-            nextImage = Message.NoImage;
-        } else if (!Message.ActorImage.equalsIgnoreCase(imageType)
-                && !Boolean.parseBoolean(config.get(Config.Render.InstructionalImages))) {
-            nextImage = Message.NoImage;
-        } else if (Message.ActorImage.equalsIgnoreCase(imageType)) {
-            if (actor.images.hasNext()) {
-                actor.images.hint(currentMood);
-                nextImage = actor.images.next();
-            } else {
+        private String getActorOrDisplayImage(String imageType, String currentMood) {
+            final String nextImage;
+            if (Message.ActorImage.equalsIgnoreCase(imageType) && !settings.actorImages) {
+                nextImage = Message.NoImage;
+            } else if (!Message.ActorImage.equalsIgnoreCase(imageType) && !settings.instructionalImages) {
                 nextImage = Message.NoImage;
+            } else if (Message.ActorImage.equalsIgnoreCase(imageType)) {
+                nextImage = nextActorImage.apply(currentMood);
+            } else {
+                nextImage = imageType;
             }
+            return nextImage;
+        }
+    }
+
+    private String nextActorImage(String currentMood) {
+        if (actor.images.hasNext()) {
+            actor.images.hint(currentMood);
+            return actor.images.next();
         } else {
-            nextImage = imageType;
+            return Message.NoImage;
         }
-        return nextImage;
     }
 
     private static void ensureEmptyMessageContainsDisplayImage(AbstractMessage parsedMessage, String nextImage) {
         parsedMessage.add(Message.Type.Image, nextImage);
     }
 
-    private AbstractMessage applyDelayRules(AbstractMessage message) {
-        AbstractMessage lastSection = RenderedMessage.getLastSection(message);
+    /**
+     * Removes the message parts that aren't rendered, and injects delays between paragraphs.
+     */
+    private static AbstractMessage applyDelayRules(AbstractMessage message, RenderSettings settings) {
+        int lastSection = startOfLastSection(message, settings);
         MessagePart currentDelay = null;
         AbstractMessage messageWithDelays = new AbstractMessage();
 
-        for (MessagePart messagePart : message) {
+        for (int i = 0; i < message.size(); i++) {
+            MessagePart messagePart = message.get(i);
+            if (!settings.renders(messagePart)) {
+                continue;
+            }
+
             if (messagePart.type == Type.Delay) {
                 currentDelay = accumulateDelay(currentDelay, messagePart);
             } else {
@@ -209,7 +315,8 @@ public class ScriptMessageDecorator {
                     injectDelay(messageWithDelays, currentDelay);
 
                     if (messagePart.type == Type.Speech) {
-                        currentDelay = injectSpeechDelay(messageWithDelays, messagePart, lastSection);
+                        currentDelay = injectSpeechDelay(messageWithDelays, messagePart,
+                                i >= lastSection || isInLastSection(message, lastSection, messagePart));
                     } else {
                         currentDelay = null;
                         messageWithDelays.add(messagePart);
@@ -223,14 +330,51 @@ public class ScriptMessageDecorator {
         return messageWithDelays;
     }
 
+    /**
+     * Same as {@link RenderedMessage#getLastSection}, but without copying the section, and applied to the rendered
+     * parts of the message only.
+     * 
+     * @return Index of the first part of the last section.
+     */
+    private static int startOfLastSection(AbstractMessage message, RenderSettings settings) {
+        int index = message.size();
+        while (index-- > 0) {
+            if (message.get(index).type == Type.Text) {
+                break;
+            }
+        }
+
+        if (index < 0) {
+            return 0;
+        }
+
+        while (index-- > 0) {
+            MessagePart part = message.get(index);
+            if (settings.renders(part) && (part.type == Type.Text || part.type == Type.Speech
+                    || part.type == Type.Sound || part.type == Type.Delay)) {
+                return index + 1;
+            }
+        }
+        return 0;
+    }
+
+    private static boolean isInLastSection(AbstractMessage message, int lastSection, MessagePart speech) {
+        for (int i = lastSection; i < message.size(); i++) {
+            if (message.get(i).equals(speech)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private static MessagePart injectSpeechDelay(AbstractMessage messageWithDelays, MessagePart messagePart,
-            AbstractMessage lastSection) {
+            boolean inLastSection) {
         MessagePart currentDelay;
         messageWithDelays.add(messagePart);
 
         if (MessageTextAccumulator.canAppendTo(messagePart.value)) {
             currentDelay = DelayAfterAppend;
-        } else if (lastSection.contains(messagePart)) {
+        } else if (inLastSection) {
             currentDelay = null;
         } else {
             currentDelay = DelayBetweenParagraphs;
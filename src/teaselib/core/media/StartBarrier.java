@@ -0,0 +1,82 @@
+package teaselib.core.media;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holds back a set of renderers until all of them have been set up, then starts them at once. Records how far apart
+ * the renderers actually started.
+ * 
+ * @author Citizen-Cane
+ *
+ */
+final class StartBarrier {
+    private static final Logger logger = LoggerFactory.getLogger(StartBarrier.class);
+
+    private final int parties;
+    private final CountDownLatch released = new CountDownLatch(1);
+    private final AtomicInteger started = new AtomicInteger(0);
+    private final AtomicLong first = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong last = new AtomicLong(Long.MIN_VALUE);
+
+    /**
+     * For renderers that are started on their own.
+     */
+    static final StartBarrier Released = new StartBarrier(1);
+
+    static {
+        Released.release();
+    }
+
+    StartBarrier(int parties) {
+        this.parties = parties;
+    }
+
+    /**
+     * Waits until the barrier is released.
+     */
+    void await() throws InterruptedException {
+        released.await();
+        long now = System.nanoTime();
+        first.accumulateAndGet(now, Math::min);
+        last.accumulateAndGet(now, Math::max);
+        started();
+    }
+
+    /**
+     * Counts a party that won't render, without waiting for the barrier.
+     */
+    void skip() {
+        started();
+    }
+
+    private void started() {
+        if (started.incrementAndGet() == parties && parties > 1 && logger.isDebugEnabled()) {
+            logger.debug("Started {} renderers within {}ms", parties,
+                    String.format("%.3f", skew(TimeUnit.MICROSECONDS) / 1000.0));
+        }
+    }
+
+    void release() {
+        released.countDown();
+    }
+
+    /**
+     * @return The time between the first and the last renderer start, or -1 if not all renderers have been started
+     *         yet.
+     */
+    long skew(TimeUnit unit) {
+        if (started.get() < parties) {
+            return -1;
+        } else if (parties == 0) {
+            return 0;
+        } else {
+            return unit.convert(last.get() - first.get(), TimeUnit.NANOSECONDS);
+        }
+    }
+}
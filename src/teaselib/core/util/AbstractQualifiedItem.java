@@ -1,8 +1,15 @@
 package teaselib.core.util;
 
+/**
+ * Qualified items are immutable, so their lookup keys and hash code are computed once on first use.
+ */
 abstract class AbstractQualifiedItem<T> extends QualifiedItem {
     public final T value;
 
+    private String namespaceKey = null;
+    private String nameKey = null;
+    private int hash = 0;
+
     public AbstractQualifiedItem(T value) {
         if (value == null) {
             throw new IllegalArgumentException("null");
@@ -20,15 +27,34 @@ abstract class AbstractQualifiedItem<T> extends QualifiedItem {
         return value;
     }
 
+    @Override
+    public String namespaceKey() {
+        if (namespaceKey == null) {
+            namespaceKey = super.namespaceKey();
+        }
+        return namespaceKey;
+    }
+
+    @Override
+    public String nameKey() {
+        if (nameKey == null) {
+            nameKey = super.nameKey();
+        }
+        return nameKey;
+    }
+
     @Override
     public abstract boolean equals(Object obj);
 
     @Override
     public int hashCode() {
-        final int prime = 31;
-        int result = 1;
-        result = prime * result + toString().toLowerCase().hashCode();
-        return result;
+        if (hash == 0) {
+            final int prime = 31;
+            int result = 1;
+            result = prime * result + toString().toLowerCase().hashCode();
+            hash = result;
+        }
+        return hash;
     }
 
 }
@@ -0,0 +1,93 @@
+package teaselib.core.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assigns dense ids to attributes, so that sets of attributes can be represented as bit sets, see
+ * {@link AttributeSet}.
+ * <p>
+ * Only enumeration values and strings are indexed, since they're equal when their qualified names are equal
+ * independent of case. Items, states and classes compare by their own rules, which aren't transitive, so they have to
+ * be compared one by one with {@link QualifiedItem#equals}.
+ * 
+ * @author Citizen-Cane
+ *
+ */
+public final class AttributeIndex {
+    public static final int None = -1;
+
+    /**
+     * Bounds the number of ids, in case a script creates names on the fly.
+     */
+    private static final int MaxIds = 4096;
+
+    private static final Map<String, Integer> ids = new HashMap<>();
+    private static final Map<String, Enum<?>> enums = new HashMap<>();
+    private static final Map<String, Integer> strings = new ConcurrentHashMap<>();
+
+    private static final ClassValue<int[]> enumIds = new ClassValue<int[]>() {
+        @Override
+        protected int[] computeValue(Class<?> type) {
+            Object[] values = type.getEnumConstants();
+            int[] values2ids = new int[values.length];
+            for (int i = 0; i < values.length; i++) {
+                values2ids[i] = id((Enum<?>) values[i]);
+            }
+            return values2ids;
+        }
+    };
+
+    private AttributeIndex() {
+    }
+
+    /**
+     * @return The id of the attribute, or {@link #None} if the attribute isn't indexed.
+     */
+    public static int of(Object attribute) {
+        if (attribute instanceof Enum<?>) {
+            Enum<?> value = (Enum<?>) attribute;
+            return enumIds.get(value.getDeclaringClass())[value.ordinal()];
+        } else if (attribute instanceof String) {
+            String value = (String) attribute;
+            Integer id = strings.get(value);
+            if (id == null) {
+                id = id(QualifiedItem.of(value));
+                if (id != None && strings.size() < MaxIds) {
+                    strings.put(value, id);
+                }
+            }
+            return id;
+        } else {
+            return None;
+        }
+    }
+
+    private static synchronized int id(Enum<?> value) {
+        String key = key(QualifiedEnum.of(value));
+        Enum<?> existing = enums.putIfAbsent(key, value);
+        // Enumeration values that differ only in case aren't equal, but both equal the same string
+        return existing == null || existing == value ? assign(key) : None;
+    }
+
+    private static synchronized int id(QualifiedItem value) {
+        return assign(key(value));
+    }
+
+    private static int assign(String key) {
+        Integer id = ids.get(key);
+        if (id == null) {
+            if (ids.size() >= MaxIds) {
+                return None;
+            }
+            id = ids.size();
+            ids.put(key, id);
+        }
+        return id;
+    }
+
+    private static String key(QualifiedItem item) {
+        return item.toString().toLowerCase();
+    }
+}
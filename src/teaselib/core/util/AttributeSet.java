@@ -0,0 +1,95 @@
+package teaselib.core.util;
+
+import java.util.Arrays;
+
+/**
+ * Immutable bit set of the ids of indexed attributes, to test whether an item or state has all of the desired
+ * attributes with a few word-wide operations.
+ * 
+ * @author Citizen-Cane
+ *
+ */
+public final class AttributeSet {
+    private static final long[] Empty = new long[0];
+
+    private final long[] words;
+
+    private AttributeSet(long[] words) {
+        this.words = words;
+    }
+
+    public static AttributeSet of(Object... attributes) {
+        return of(Arrays.asList(attributes));
+    }
+
+    /**
+     * @return The attribute set, or null if any of the attributes isn't indexed, or if any two attributes are equal.
+     *         Queries on such attributes have to compare them one by one.
+     */
+    public static AttributeSet of(Iterable<?> attributes) {
+        long[] words = Empty;
+        for (Object attribute : attributes) {
+            int id = AttributeIndex.of(attribute);
+            if (id == AttributeIndex.None) {
+                return null;
+            }
+
+            int index = id >>> 6;
+            long bit = 1L << id;
+            if (index >= words.length) {
+                words = Arrays.copyOf(words, index + 1);
+            } else if ((words[index] & bit) != 0) {
+                return null;
+            }
+            words[index] |= bit;
+        }
+        return new AttributeSet(words);
+    }
+
+    public boolean contains(int id) {
+        int index = id >>> 6;
+        return id >= 0 && index < words.length && (words[index] & (1L << id)) != 0;
+    }
+
+    public boolean containsAll(AttributeSet attributes) {
+        long[] other = attributes.words;
+        for (int i = 0; i < other.length; i++) {
+            long mine = i < words.length ? words[i] : 0;
+            if ((other[i] & ~mine) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(words);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null)
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+        AttributeSet other = (AttributeSet) obj;
+        return Arrays.equals(words, other.words);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder ids = new StringBuilder("[");
+        for (int id = 0; id < words.length * Long.SIZE; id++) {
+            if (contains(id)) {
+                if (ids.length() > 1) {
+                    ids.append(", ");
+                }
+                ids.append(id);
+            }
+        }
+        return ids.append("]").toString();
+    }
+}
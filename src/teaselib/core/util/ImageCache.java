@@ -0,0 +1,239 @@
+package teaselib.core.util;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import javax.imageio.ImageIO;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import teaselib.core.ResourceLoader;
+
+/**
+ * Caches downscaled versions of images on disk, in order to avoid reading and decoding large images from archives on
+ * every start.
+ * <p>
+ * Cached images are keyed by resource path, the fingerprint of the resource content and the resolution, so changed
+ * resources are picked up automatically. Images that already fit into the resolution are cached as they are.
+ * <p>
+ * The total size of the cache folder is bounded by a budget. Reading a cached image marks it as recently used, and
+ * when a new image exceeds the budget the least recently used images are deleted. The size of the cache folder is
+ * measured once, and then tracked as images are added, so the folder is only listed again when the budget is
+ * exceeded. Use {@link #of} to share the size among all users of a folder.
+ *
+ * @author Citizen-Cane
+ *
+ */
+public class ImageCache {
+    private static final Logger logger = LoggerFactory.getLogger(ImageCache.class);
+
+    public static final long DefaultBudget = 256L * 1024 * 1024;
+
+    private static final String TemporarySuffix = ".tmp";
+    private static final long Unknown = -1;
+
+    private static final Map<Path, ImageCache> caches = new HashMap<>();
+
+    private final Path folder;
+    private final int resolution;
+    private final long budget;
+    private long size = Unknown;
+
+    /**
+     * @param folder
+     *            The cache folder.
+     * @param resolution
+     *            The maximum width and height of cached images.
+     */
+    public ImageCache(Path folder, int resolution) {
+        this(folder, resolution, DefaultBudget);
+    }
+
+    /**
+     * @param budget
+     *            The maximum total size of the cached images in bytes.
+     */
+    public ImageCache(Path folder, int resolution, long budget) {
+        this.folder = folder;
+        this.resolution = resolution;
+        this.budget = budget;
+    }
+
+    /**
+     * @return The cache of the folder, shared process-wide by all users with the same resolution and budget.
+     */
+    public static synchronized ImageCache of(Path folder, int resolution, long budget) {
+        Path key = folder.toAbsolutePath().normalize();
+        ImageCache imageCache = caches.get(key);
+        if (imageCache == null || imageCache.resolution != resolution || imageCache.budget != budget) {
+            imageCache = new ImageCache(folder, resolution, budget);
+            caches.put(key, imageCache);
+        }
+        return imageCache;
+    }
+
+    public byte[] get(String resource, ResourceLoader resources) throws IOException {
+        Path file = folder.resolve(key(resource, resources.fingerprint(resource)));
+        if (Files.isRegularFile(file)) {
+            byte[] cached = Files.readAllBytes(file);
+            touch(file);
+            return cached;
+        } else {
+            byte[] imageBytes = resources.bytes(resource);
+            byte[] cached = downscaled(resource, imageBytes);
+            try {
+                write(file, cached);
+                added(file, cached.length);
+            } catch (IOException e) {
+                logger.warn("Failed to cache {}: {}", resource, e.getMessage());
+            }
+            return cached;
+        }
+    }
+
+    private static void touch(Path file) {
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            logger.warn("Failed to mark {} as recently used: {}", file, e.getMessage());
+        }
+    }
+
+    private synchronized void added(Path written, long bytes) throws IOException {
+        if (size == Unknown) {
+            size = prune(written);
+        } else {
+            size += bytes;
+            if (size > budget) {
+                size = prune(written);
+            }
+        }
+    }
+
+    /**
+     * Deletes the least recently used images until the cache fits into the budget. Temporary files of images that are
+     * just being written aren't counted, and never deleted.
+     *
+     * @param written
+     *            The image just written, which is never deleted.
+     * @return The size of the cached images.
+     */
+    private long prune(Path written) throws IOException {
+        List<Path> files = new ArrayList<>();
+        Map<Path, BasicFileAttributes> attributes = new HashMap<>();
+        long size = 0;
+        try (Stream<Path> list = Files.list(folder)) {
+            for (Path file : (Iterable<Path>) list::iterator) {
+                try {
+                    BasicFileAttributes fileAttributes = Files.readAttributes(file, BasicFileAttributes.class);
+                    if (fileAttributes.isRegularFile() && !file.getFileName().toString().endsWith(TemporarySuffix)) {
+                        files.add(file);
+                        attributes.put(file, fileAttributes);
+                        size += fileAttributes.size();
+                    }
+                } catch (NoSuchFileException e) {
+                    // Deleted concurrently
+                }
+            }
+        }
+
+        if (size > budget) {
+            files.sort(Comparator.comparing(file -> attributes.get(file).lastModifiedTime()));
+            for (Iterator<Path> iterator = files.iterator(); size > budget && iterator.hasNext();) {
+                Path file = iterator.next();
+                if (!file.equals(written) && Files.deleteIfExists(file)) {
+                    size -= attributes.get(file).size();
+                }
+            }
+        }
+        return size;
+    }
+
+    private String key(String resource, String fingerprint) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw ExceptionUtil.asRuntimeException(e);
+        }
+        String key = resource + "\n" + fingerprint + "\n" + resolution;
+        byte[] hash = digest.digest(key.getBytes(StandardCharsets.UTF_8));
+        StringBuilder hexString = new StringBuilder();
+        for (int i = 0; i < hash.length; i++) {
+            String hex = Integer.toHexString(0xff & hash[i]);
+            if (hex.length() == 1)
+                hexString.append('0');
+            hexString.append(hex);
+        }
+        return hexString.toString();
+    }
+
+    /**
+     * @return The image scaled down to the resolution, or the original image bytes if the image already fits or
+     *         can't be decoded.
+     */
+    private byte[] downscaled(String resource, byte[] imageBytes) throws IOException {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(imageBytes));
+        if (image == null) {
+            logger.warn("Caching image {} as is since the format isn't supported", resource);
+            return imageBytes;
+        }
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        if (width <= resolution && height <= resolution) {
+            return imageBytes;
+        }
+
+        double scale = Math.min((double) resolution / width, (double) resolution / height);
+        int scaledWidth = Math.max(1, (int) Math.round(width * scale));
+        int scaledHeight = Math.max(1, (int) Math.round(height * scale));
+        boolean alpha = image.getColorModel().hasAlpha();
+        BufferedImage scaled = new BufferedImage(scaledWidth, scaledHeight,
+                alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = scaled.createGraphics();
+        try {
+            g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+            g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g2d.drawImage(image, 0, 0, scaledWidth, scaledHeight, null);
+        } finally {
+            g2d.dispose();
+        }
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream(scaledWidth * scaledHeight);
+        ImageIO.write(scaled, alpha ? "png" : "jpg", output);
+        return output.toByteArray();
+    }
+
+    private static void write(Path file, byte[] bytes) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), TemporarySuffix);
+        try {
+            Files.write(temp, bytes);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
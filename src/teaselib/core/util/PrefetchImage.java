@@ -1,19 +1,23 @@
 package teaselib.core.util;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import teaselib.Config;
 import teaselib.core.ResourceLoader;
 import teaselib.core.configuration.Configuration;
 
 public final class PrefetchImage implements Callable<byte[]> {
     private static final Logger logger = LoggerFactory.getLogger(PrefetchImage.class);
 
+    private static final long DefaultImageCacheSize = 64;
+    private static final long DefaultImageLookahead = 3;
+    private static final long DefaultImageDiskCacheSize = ImageCache.DefaultBudget / (1024 * 1024);
+
     private final String resourcePath;
     private final ResourceLoader resources;
     private final Configuration config;
@@ -24,28 +28,43 @@ public final class PrefetchImage implements Callable<byte[]> {
         this.config = config;
     }
 
+    /**
+     * Creates an image prefetcher that keeps the images within the memory budget configured by
+     * {@link Config.Render#ImageCacheSize}, and fetches {@link Config.Render#ImageLookahead} images ahead.
+     */
+    public static Prefetcher<byte[]> prefetcher(ExecutorService executorService, Configuration config) {
+        long megabytes = get(config, Config.Render.ImageCacheSize, DefaultImageCacheSize);
+        int lookahead = (int) get(config, Config.Render.ImageLookahead, DefaultImageLookahead);
+        return new Prefetcher<>(executorService, imageBytes -> imageBytes.length, megabytes * 1024 * 1024,
+                lookahead);
+    }
+
+    private static long get(Configuration config, Config.Render property, long defaultValue) {
+        return config.has(property) ? Long.parseLong(config.get(property).trim()) : defaultValue;
+    }
+
     @Override
     public byte[] call() throws Exception {
-        return getImageBytes(resourcePath);
+        try (Trace.Span span = Trace.span("prefetch image", resourcePath)) {
+            return getImageBytes(resourcePath);
+        }
     }
 
     private byte[] getImageBytes(String path) throws IOException {
         byte[] imageBytes = null;
-        try (InputStream resource = resources.get(path);) {
-            imageBytes = convertInputStreamToByte(resource);
+        try {
+            int resolution = (int) get(config, Config.Render.ImageDiskCacheResolution, 0);
+            if (resolution > 0) {
+                long megabytes = get(config, Config.Render.ImageDiskCacheSize, DefaultImageDiskCacheSize);
+                ImageCache imageCache = ImageCache.of(resources.getCachePath("images").toPath(), resolution,
+                        megabytes * 1024 * 1024);
+                imageBytes = imageCache.get(path, resources);
+            } else {
+                imageBytes = resources.bytes(path);
+            }
         } catch (IOException e) {
             ExceptionUtil.handleIOException(e, config, logger);
         }
         return imageBytes;
     }
-
-    private static byte[] convertInputStreamToByte(InputStream is) throws IOException {
-        byte[] buffer = new byte[8192];
-        int bytesRead;
-        ByteArrayOutputStream output = new ByteArrayOutputStream();
-        while ((bytesRead = is.read(buffer)) != -1) {
-            output.write(buffer, 0, bytesRead);
-        }
-        return output.toByteArray();
-    }
 }
\ No newline at end of file
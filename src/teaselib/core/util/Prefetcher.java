@@ -2,23 +2,110 @@ package teaselib.core.util;
 
 import java.io.IOException;
 import java.util.ArrayDeque;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
 
+/**
+ * Fetches resources in the background. Fetched resources are kept until their total weight exceeds the budget, then
+ * the least recently used resources are evicted. Evicted resources are fetched again on demand.
+ * <p>
+ * Added resources are prefetched one after another in the order they've been added, up to the lookahead window. So the
+ * next resource doesn't have to compete with later ones for I/O bandwidth. Requesting a resource that hasn't been
+ * prefetched yet fetches it immediately, ahead of all queued resources.
+ *
+ * @author Citizen-Cane
+ *
+ * @param <T>
+ *            Resource type
+ */
 public class Prefetcher<T> {
     private final ExecutorService executorService;
+    private final ToLongFunction<T> weigher;
+    private final long budget;
+    private final int lookahead;
 
     private final Queue<String> resources = new ArrayDeque<>();
     private final Map<String, Callable<T>> toFetch = new HashMap<>();
-    private final Map<String, Future<T>> fetched = new HashMap<>();
+    private final Map<String, Entry> fetched = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<String> ahead = new HashSet<>();
+    private Entry loadingAhead = null;
 
+    private long weight = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long loads = 0;
+    private long loadNanos = 0;
+
+    private final class Entry {
+        final Callable<T> callable;
+        Future<T> future;
+        long weight = -1;
+        boolean removed = false;
+
+        Entry(Callable<T> callable) {
+            this.callable = callable;
+        }
+    }
+
+    public static final class Statistics {
+        public final long hits;
+        public final long misses;
+        public final long evictions;
+        public final long loads;
+        public final long averageLoadMillis;
+        public final long weight;
+        public final long budget;
+
+        Statistics(long hits, long misses, long evictions, long loads, long loadNanos, long weight, long budget) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.loads = loads;
+            this.averageLoadMillis = loads > 0 ? TimeUnit.NANOSECONDS.toMillis(loadNanos / loads) : 0;
+            this.weight = weight;
+            this.budget = budget;
+        }
+
+        @Override
+        public String toString() {
+            return "hits=" + hits + " misses=" + misses + " evictions=" + evictions + " loads=" + loads
+                    + " averageLoadTime=" + averageLoadMillis + "ms weight=" + weight + "/" + budget;
+        }
+    }
+
+    /**
+     * Creates a prefetcher that keeps all fetched resources, and prefetches one resource ahead.
+     */
     public Prefetcher(ExecutorService executorService) {
+        this(executorService, resource -> 0, Long.MAX_VALUE, 1);
+    }
+
+    /**
+     * @param weigher
+     *            Computes the weight of a fetched resource, for instance its size in bytes.
+     * @param budget
+     *            The total weight of fetched resources to keep.
+     * @param lookahead
+     *            The number of resources to fetch ahead of requests.
+     */
+    public Prefetcher(ExecutorService executorService, ToLongFunction<T> weigher, long budget, int lookahead) {
         this.executorService = executorService;
+        this.weigher = weigher;
+        this.budget = budget;
+        this.lookahead = lookahead;
     }
 
     public void add(String key, Callable<T> prefetcher) {
@@ -32,45 +119,162 @@ public class Prefetcher<T> {
         return resources.isEmpty();
     }
 
+    /**
+     * Starts prefetching queued resources, unless the lookahead window is full.
+     */
     public void fetch() {
         synchronized (this) {
-            String key = resources.poll();
-            if (!isEmpty() && !fetched.containsKey(key)) {
-                fetch(key);
+            while (loadingAhead == null && ahead.size() < lookahead && !resources.isEmpty()) {
+                String key = resources.poll();
+                if (!fetched.containsKey(key)) {
+                    loadingAhead = fetchEntry(key);
+                    ahead.add(key);
+                }
             }
         }
     }
 
     public void fetch(String key) {
         synchronized (this) {
-            Callable<T> callable = toFetch.remove(key);
-            fetched.put(key, executorService.submit(callable));
+            resources.remove(key);
+            fetchEntry(key);
         }
     }
 
-    public T get(String key) throws IOException, InterruptedException {
+    private Entry fetchEntry(String key) {
+        Callable<T> callable = toFetch.remove(key);
+        Entry entry = new Entry(callable);
+        entry.future = executorService.submit(() -> load(entry));
+        fetched.put(key, entry);
+        return entry;
+    }
+
+    private T load(Entry entry) throws Exception {
+        long start = System.nanoTime();
+        try {
+            T resource = entry.callable.call();
+            long resourceWeight = resource != null ? weigher.applyAsLong(resource) : 0;
+            synchronized (this) {
+                loads++;
+                loadNanos += System.nanoTime() - start;
+                if (!entry.removed) {
+                    entry.weight = resourceWeight;
+                    weight += resourceWeight;
+                    evict(entry);
+                }
+            }
+            return resource;
+        } finally {
+            synchronized (this) {
+                if (loadingAhead == entry) {
+                    loadingAhead = null;
+                    fetch();
+                }
+            }
+        }
+    }
+
+    /**
+     * Cancels prefetching resources that are no longer needed, for instance because the message they belong to has been
+     * replaced. Resources that have already been fetched are kept until evicted.
+     * <p>
+     * Loads in progress aren't interrupted, since interrupting a thread that reads from a file channel closes the
+     * channel, and with it the zip file system shared by all resources of an archive. The loaded resource is just
+     * discarded.
+     *
+     * @param keys
+     *            The resources that are still needed.
+     */
+    public void retain(Collection<String> keys) {
         synchronized (this) {
-            if (fetched.containsKey(key)) {
-                try {
-                    return fetched.get(key).get();
-                } catch (ExecutionException e) {
-                    if (e.getCause() instanceof IOException) {
-                        throw (IOException) e.getCause();
-                    } else {
-                        throw new IOException(e.getMessage(), e);
+            resources.removeIf(key -> !keys.contains(key));
+            for (Iterator<String> stale = ahead.iterator(); stale.hasNext();) {
+                String key = stale.next();
+                if (!keys.contains(key)) {
+                    stale.remove();
+                    Entry entry = fetched.get(key);
+                    if (entry != null && !entry.future.isDone()) {
+                        entry.future.cancel(false);
+                        fetched.remove(key);
+                        entry.removed = true;
+                        toFetch.putIfAbsent(key, entry.callable);
+                        if (loadingAhead == entry) {
+                            loadingAhead = null;
+                        }
                     }
                 }
+            }
+            fetch();
+        }
+    }
+
+    /**
+     * Evicts the least recently used resources that have completed loading, until the total weight fits into the
+     * budget.
+     *
+     * @param loaded
+     *            The resource just loaded, which is never evicted.
+     */
+    private void evict(Entry loaded) {
+        Iterator<Map.Entry<String, Entry>> entries = fetched.entrySet().iterator();
+        while (weight > budget && entries.hasNext()) {
+            Map.Entry<String, Entry> element = entries.next();
+            Entry entry = element.getValue();
+            if (entry != loaded && entry.weight >= 0) {
+                entries.remove();
+                ahead.remove(element.getKey());
+                entry.removed = true;
+                weight -= entry.weight;
+                evictions++;
+                toFetch.putIfAbsent(element.getKey(), entry.callable);
+            }
+        }
+    }
+
+    public T get(String key) throws IOException, InterruptedException {
+        Future<T> future;
+        synchronized (this) {
+            Entry entry = fetched.get(key);
+            if (entry != null) {
+                hits++;
+            } else {
+                misses++;
+                resources.remove(key);
+                entry = fetchEntry(key);
+            }
+            future = entry.future;
+            if (ahead.remove(key)) {
+                fetch();
+            }
+        }
+
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
             } else {
-                fetch(key);
-                return get(key);
+                throw new IOException(e.getMessage(), e);
             }
         }
     }
 
     public void remove(String key) {
         synchronized (this) {
+            resources.remove(key);
+            ahead.remove(key);
             toFetch.remove(key);
-            fetched.remove(key);
+            Entry entry = fetched.remove(key);
+            if (entry != null) {
+                entry.removed = true;
+                if (entry.weight > 0) {
+                    weight -= entry.weight;
+                }
+            }
         }
     }
+
+    public synchronized Statistics statistics() {
+        return new Statistics(hits, misses, evictions, loads, loadNanos, weight, budget);
+    }
 }
@@ -1,15 +1,40 @@
 package teaselib.core.util;
 
 public class QualifiedEnum extends AbstractQualifiedItem<Enum<?>> {
+    private static final ClassValue<QualifiedEnum[]> interned = new ClassValue<QualifiedEnum[]>() {
+        @Override
+        protected QualifiedEnum[] computeValue(Class<?> type) {
+            Object[] values = type.getEnumConstants();
+            QualifiedEnum[] qualifiedValues = new QualifiedEnum[values.length];
+            for (int i = 0; i < values.length; i++) {
+                qualifiedValues[i] = new QualifiedEnum((Enum<?>) values[i]);
+            }
+            return qualifiedValues;
+        }
+    };
+
+    /**
+     * @return The interned qualified item of the enumeration value.
+     */
+    public static QualifiedEnum of(Enum<?> value) {
+        return interned.get(value.getDeclaringClass())[value.ordinal()];
+    }
+
+    private final String namespace;
+    private final String qualifiedName;
 
     public QualifiedEnum(Enum<?> value) {
         super(value);
+        this.namespace = ReflectionUtils.normalizedClassName(value.getClass());
+        this.qualifiedName = namespace + '.' + value.name();
     }
 
     @Override
     public boolean equals(Object obj) {
         if (obj == null)
             return false;
+        if (obj == value)
+            return true;
         if (obj instanceof QualifiedEnum) {
             if (this == obj)
                 return true;
@@ -20,7 +45,7 @@ public class QualifiedEnum extends AbstractQualifiedItem<Enum<?>> {
                 return value.equals(other.value);
             }
         } else if (obj instanceof Enum<?>) {
-            return value == obj;
+            return false;
         } else {
             return this.toString().equalsIgnoreCase(obj.toString());
         }
@@ -33,7 +58,7 @@ public class QualifiedEnum extends AbstractQualifiedItem<Enum<?>> {
 
     @Override
     public String namespace() {
-        return ReflectionUtils.normalizedClassName(value.getClass());
+        return namespace;
     }
 
     @Override
@@ -43,6 +68,6 @@ public class QualifiedEnum extends AbstractQualifiedItem<Enum<?>> {
 
     @Override
     public String toString() {
-        return ReflectionUtils.qualifiedName(value);
+        return qualifiedName;
     }
 }
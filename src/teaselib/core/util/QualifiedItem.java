@@ -17,6 +17,20 @@ public abstract class QualifiedItem {
 
     public abstract Object value();
 
+    /**
+     * @return The namespace in lower case, to look up items independent of case.
+     */
+    public String namespaceKey() {
+        return namespace().toLowerCase();
+    }
+
+    /**
+     * @return The name in lower case, to look up items independent of case.
+     */
+    public String nameKey() {
+        return name().toLowerCase();
+    }
+
     public static String namespaceOf(Object item) {
         if (item instanceof Enum<?>) {
             return ReflectionUtils.normalizedClassName(item.getClass());
@@ -55,17 +69,20 @@ public abstract class QualifiedItem {
         return name;
     }
 
+    /**
+     * Enumeration values and strings are interned, so the same instance is returned for the same value.
+     */
     public static QualifiedItem of(Object value) {
         if (value instanceof QualifiedItem) {
             return (QualifiedItem) value;
         } else if (value instanceof Enum) {
-            return new QualifiedEnum((Enum<?>) value);
+            return QualifiedEnum.of((Enum<?>) value);
         } else if (value instanceof Item) {
             return new QualifiedItemImpl((Item) value);
         } else if (value instanceof State) {
             return new QualifiedStateImpl((State) value);
         } else {
-            return new QualifiedObject(value);
+            return QualifiedObject.forValue(value);
         }
     }
 }
\ No newline at end of file
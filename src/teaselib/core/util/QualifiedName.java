@@ -31,6 +31,12 @@ public class QualifiedName implements Comparable<QualifiedName> {
     public final String namespace;
     public final String name;
 
+    /**
+     * Qualified names are used as persistence keys, so their string form and hash code are computed once on first use.
+     */
+    private String string = null;
+    private int hash = 0;
+
     public QualifiedName(String domain, String namespace, String name) {
         Objects.requireNonNull(domain);
         Objects.requireNonNull(namespace);
@@ -43,6 +49,13 @@ public class QualifiedName implements Comparable<QualifiedName> {
 
     @Override
     public String toString() {
+        if (string == null) {
+            string = qualifiedName();
+        }
+        return string;
+    }
+
+    private String qualifiedName() {
         // TODO general solution from PropertyNameMapping
         if (domain.equals(NONE)) {
             return namespace + SEPARATOR + name;
@@ -62,12 +75,15 @@ public class QualifiedName implements Comparable<QualifiedName> {
 
     @Override
     public int hashCode() {
-        final int prime = 31;
-        int result = 1;
-        result = prime * result + ((domain == null) ? 0 : domain.hashCode());
-        result = prime * result + ((name == null) ? 0 : name.hashCode());
-        result = prime * result + ((namespace == null) ? 0 : namespace.hashCode());
-        return result;
+        if (hash == 0) {
+            final int prime = 31;
+            int result = 1;
+            result = prime * result + ((domain == null) ? 0 : domain.hashCode());
+            result = prime * result + ((name == null) ? 0 : name.hashCode());
+            result = prime * result + ((namespace == null) ? 0 : namespace.hashCode());
+            hash = result;
+        }
+        return hash;
     }
 
     @Override
@@ -79,6 +95,8 @@ public class QualifiedName implements Comparable<QualifiedName> {
         if (getClass() != obj.getClass())
             return false;
         QualifiedName other = (QualifiedName) obj;
+        if (hashCode() != other.hashCode())
+            return false;
         if (domain == null) {
             if (other.domain != null)
                 return false;
@@ -1,6 +1,37 @@
 package teaselib.core.util;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 class QualifiedObject extends AbstractQualifiedItem<Object> {
+    /**
+     * Bounds the number of interned values, in case a script creates names on the fly.
+     */
+    private static final int MaxInterned = 4096;
+    private static final Map<String, QualifiedObject> interned = new ConcurrentHashMap<>();
+
+    /**
+     * @return The interned qualified item for strings, or a new instance for any other value. Classes aren't interned
+     *         since that would prevent unloading script classes.
+     */
+    static QualifiedObject forValue(Object value) {
+        if (value instanceof String) {
+            QualifiedObject qualifiedObject = interned.get(value);
+            if (qualifiedObject == null) {
+                qualifiedObject = new QualifiedObject(value);
+                if (interned.size() < MaxInterned) {
+                    QualifiedObject existing = interned.putIfAbsent((String) value, qualifiedObject);
+                    if (existing != null) {
+                        qualifiedObject = existing;
+                    }
+                }
+            }
+            return qualifiedObject;
+        } else {
+            return new QualifiedObject(value);
+        }
+    }
+
     public QualifiedObject(Object value) {
         super(value);
         if (value instanceof Enum<?>) {
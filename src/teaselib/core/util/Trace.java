@@ -0,0 +1,231 @@
+package teaselib.core.util;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import teaselib.Config;
+
+/**
+ * Records timing spans of the render pipeline as a timeline in the Chrome trace event format, with one lane per
+ * thread. The timeline can be loaded into chrome://tracing or https://ui.perfetto.dev.
+ * <p>
+ * Tracing is enabled via the system property {@link Config.Debug#TraceRendering}. When disabled, {@link #span} returns
+ * a shared no-op span, so call sites don't allocate anything.
+ * <p>
+ * Usage:
+ * <p>
+ * {@code try (Trace.Span span = Trace.span("show")) { ... }}
+ *
+ * @author Citizen-Cane
+ *
+ */
+public final class Trace {
+    public static final boolean Enabled = Boolean
+            .parseBoolean(System.getProperty(QualifiedItem.of(Config.Debug.TraceRendering).toString()));
+
+    static final int DefaultCapacity = 1 << 20;
+
+    public interface Span extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private static final Span None = () -> {
+        // Nothing to record
+    };
+
+    private static final Trace Global = new Trace(DefaultCapacity);
+
+    private static final class Event {
+        final Object name;
+        final Object detail;
+        final long tid;
+        final long start;
+        final long duration;
+
+        Event(Object name, Object detail, long tid, long start, long duration) {
+            this.name = name;
+            this.detail = detail;
+            this.tid = tid;
+            this.start = start;
+            this.duration = duration;
+        }
+    }
+
+    private final class Recording implements Span {
+        final Object name;
+        final Object detail;
+        final long start = System.nanoTime();
+
+        Recording(Object name, Object detail) {
+            this.name = name;
+            this.detail = detail;
+        }
+
+        @Override
+        public void close() {
+            record(name, detail, start, System.nanoTime() - start);
+        }
+    }
+
+    private final int capacity;
+    private final long origin = System.nanoTime();
+    private final Queue<Event> events = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicInteger dropped = new AtomicInteger();
+    private final Map<Long, String> threads = new ConcurrentHashMap<>();
+
+    Trace(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Starts a span on the current thread, to be closed on the same thread.
+     */
+    public static Span span(String name) {
+        return Enabled ? Global.start(name, null) : None;
+    }
+
+    /**
+     * Starts a span on the current thread, to be closed on the same thread.
+     *
+     * @param detail
+     *            Shown as argument of the span - converted to a string only when tracing is enabled.
+     */
+    public static Span span(String name, Object detail) {
+        return Enabled ? Global.start(name, detail) : None;
+    }
+
+    /**
+     * Starts a span named after the simple name of the type, to be closed on the same thread.
+     */
+    public static Span span(Class<?> type) {
+        return Enabled ? Global.start(type, null) : None;
+    }
+
+    /**
+     * Writes the timeline recorded since it has been written the last time, if tracing is enabled. The written spans
+     * are removed from the recording.
+     */
+    public static void writeTimeline(Path file) throws IOException {
+        if (Enabled) {
+            Global.write(file);
+        }
+    }
+
+    Span start(Object name, Object detail) {
+        return new Recording(name, detail);
+    }
+
+    void record(Object name, Object detail, long start, long duration) {
+        if (size.incrementAndGet() > capacity) {
+            size.decrementAndGet();
+            dropped.incrementAndGet();
+        } else {
+            Thread thread = Thread.currentThread();
+            threads.computeIfAbsent(thread.getId(), id -> thread.getName());
+            events.add(new Event(name, detail, thread.getId(), start, duration));
+        }
+    }
+
+    int size() {
+        return size.get();
+    }
+
+    int dropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Writes the recorded spans and removes them from the recording, so that the next timeline starts where this one
+     * ends.
+     */
+    void write(Writer writer) throws IOException {
+        writer.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+        boolean first = true;
+        for (Map.Entry<Long, String> thread : new ArrayList<>(threads.entrySet())) {
+            first = separate(writer, first);
+            writer.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":");
+            writer.write(Long.toString(thread.getKey()));
+            writer.write(",\"args\":{\"name\":");
+            writeString(writer, thread.getValue());
+            writer.write("}}");
+        }
+        Event event;
+        while ((event = events.poll()) != null) {
+            size.decrementAndGet();
+            first = separate(writer, first);
+            writer.write("{\"name\":");
+            writeString(writer, event.name instanceof Class ? ((Class<?>) event.name).getSimpleName()
+                    : event.name.toString());
+            writer.write(",\"cat\":\"render\",\"ph\":\"X\",\"pid\":1,\"tid\":");
+            writer.write(Long.toString(event.tid));
+            writer.write(",\"ts\":");
+            writer.write(Long.toString(TimeUnit.NANOSECONDS.toMicros(event.start - origin)));
+            writer.write(",\"dur\":");
+            writer.write(Long.toString(TimeUnit.NANOSECONDS.toMicros(event.duration)));
+            if (event.detail != null) {
+                writer.write(",\"args\":{\"detail\":");
+                writeString(writer, event.detail.toString());
+                writer.write('}');
+            }
+            writer.write('}');
+        }
+        writer.write("],\"otherData\":{\"dropped\":");
+        writer.write(Integer.toString(dropped.getAndSet(0)));
+        writer.write("}}\n");
+    }
+
+    private static boolean separate(Writer writer, boolean first) throws IOException {
+        if (!first) {
+            writer.write(",\n");
+        } else {
+            writer.write('\n');
+        }
+        return false;
+    }
+
+    private static void writeString(Writer writer, String value) throws IOException {
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                writer.write('\\');
+                writer.write(c);
+            } else if (c < 0x20) {
+                writer.write(String.format("\\u%04x", (int) c));
+            } else {
+                writer.write(c);
+            }
+        }
+        writer.write('"');
+    }
+
+    /**
+     * Writes the timeline to a file, replacing the previous timeline.
+     */
+    void write(Path file) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                write(writer);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
@@ -2,34 +2,37 @@ package teaselib.core.util.resource;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.List;
 
 public abstract class FileSystemLocation implements ResourceLocation {
+    /**
+     * Files smaller than this are read into heap buffers, since mapping small files costs more than copying them.
+     */
+    static final long MappingThreshold = 64 * 1024;
+
     final Path root;
     final Path project;
 
-    List<Path> rootDirectories = new ArrayList<>();
-
     FileSystemLocation(Path root, Path project) {
         if (project != null && !project.startsWith("/"))
             project = Paths.get(project.toString());
         this.root = root;
         this.project = project;
-
-        rootDirectories = new ArrayList<>();
     }
 
-    void addRootDirectory(Path path) {
-        rootDirectories.add(path);
-        return;
-    }
+    abstract List<Path> rootDirectories() throws IOException;
 
     @Override
     public Path root() {
@@ -43,14 +46,53 @@ public abstract class FileSystemLocation implements ResourceLocation {
 
     @Override
     public InputStream get(String resource) throws IOException {
+        return Files.newInputStream(path(resource));
+    }
+
+    Path path(String resource) throws IOException {
         String relative = resource.substring(1);
-        return Files.newInputStream(rootDirectories.get(0).resolve(relative));
+        return rootDirectories().get(0).resolve(relative);
+    }
+
+    @Override
+    public ByteBuffer buffer(String resource) throws IOException {
+        Path path = path(resource);
+        long size = Files.size(path);
+        if (size >= MappingThreshold && path.getFileSystem() == FileSystems.getDefault()) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+        } else {
+            try (InputStream inputStream = Files.newInputStream(path)) {
+                return read(inputStream, size);
+            }
+        }
+    }
+
+    @Override
+    public byte[] bytes(String resource) throws IOException {
+        return Files.readAllBytes(path(resource));
+    }
+
+    @Override
+    public String fingerprint(String resource) throws IOException {
+        Path path = path(resource);
+        return Files.size(path) + ":" + Files.getLastModifiedTime(path).toMillis();
+    }
+
+    static ByteBuffer read(InputStream inputStream, long size) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Resource too large: " + size + " bytes");
+        }
+        byte[] bytes = new byte[(int) size];
+        int length = inputStream.readNBytes(bytes, 0, bytes.length);
+        return ByteBuffer.wrap(bytes, 0, length);
     }
 
     @Override
     public List<String> resources() throws IOException {
         List<String> resources = new ArrayList<>();
-        for (Path directory : rootDirectories) {
+        for (Path directory : rootDirectories()) {
             Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
                 @Override
                 public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
@@ -60,19 +102,44 @@ public abstract class FileSystemLocation implements ResourceLocation {
                     }
                     return FileVisitResult.CONTINUE;
                 }
-
-                private Path subpath(Path directory, Path file) {
-                    return file.subpath(directory.getNameCount(), file.getNameCount());
-                }
-
-                private String resourcePath(Path path) {
-                    return path.startsWith("/") ? "" : "/" + path.toString().replace('\\', '/');
-                }
             });
         }
         return resources;
     }
 
+    @Override
+    public List<String> list(String folder) throws IOException {
+        String projectPath = project != null ? resourcePath(project) : "/";
+        List<String> children = new ArrayList<>();
+        for (Path directory : rootDirectories()) {
+            Path path = directory.resolve(folder.substring(1));
+            if (Files.isDirectory(path)) {
+                try (DirectoryStream<Path> entries = Files.newDirectoryStream(path)) {
+                    for (Path entry : entries) {
+                        String child = resourcePath(subpath(directory, entry));
+                        if (Files.isDirectory(entry)) {
+                            String subFolder = child + "/";
+                            if (subFolder.startsWith(projectPath) || projectPath.startsWith(subFolder)) {
+                                children.add(subFolder);
+                            }
+                        } else if (child.startsWith(projectPath)) {
+                            children.add(child);
+                        }
+                    }
+                }
+            }
+        }
+        return children;
+    }
+
+    private static Path subpath(Path directory, Path file) {
+        return file.subpath(directory.getNameCount(), file.getNameCount());
+    }
+
+    private static String resourcePath(Path path) {
+        return path.startsWith("/") ? "" : "/" + path.toString().replace('\\', '/');
+    }
+
     @Override
     public String toString() {
         return root + (!project.toString().isEmpty() ? " -> " + project : "");
@@ -2,15 +2,24 @@ package teaselib.core.util.resource;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
 
 public class FolderLocation extends FileSystemLocation {
+    private final List<Path> rootDirectories;
+
     public FolderLocation(Path root) {
         this(root, null);
     }
 
     FolderLocation(Path root, Path project) {
         super(root, project);
-        addRootDirectory(root);
+        this.rootDirectories = Collections.singletonList(root);
+    }
+
+    @Override
+    List<Path> rootDirectories() {
+        return rootDirectories;
     }
 
     @Override
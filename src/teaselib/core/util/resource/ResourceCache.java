@@ -1,65 +1,229 @@
 package teaselib.core.util.resource;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.regex.Pattern;
 
-public class ResourceCache {
-    static final class Entry {
-        String key;
-        ResourceLocation resourceLocation;
+import teaselib.core.util.ExceptionUtil;
 
-        Entry(String data, ResourceLocation resourceLocation) {
-            this.key = data;
-            this.resourceLocation = resourceLocation;
-        }
+/**
+ * Resolves resources from a sequence of locations. Locations and their indices are shared process-wide between all
+ * resource caches, and released when the cache is closed.
+ */
+public class ResourceCache implements Closeable {
+    public enum Enumeration {
+        /**
+         * All resources are enumerated when a location is added.
+         */
+        Eager,
+        /**
+         * Only the top-level folder is listed when a location is added. Sub-folders are enumerated on first access.
+         * Archive listings are persisted in a manifest, in order to skip enumeration on the next start.
+         */
+        Lazy
+    }
+
+    private final Enumeration enumeration;
+    private final Path manifests;
+
+    private final List<ResourceIndex> indices = new ArrayList<>();
+    private volatile ResourceProfile profile = null;
+    private Path unpackFolder = null;
+
+    public ResourceCache() {
+        this(Enumeration.Eager, null);
+    }
+
+    /**
+     * @param enumeration
+     *            How to enumerate the resources of added locations.
+     * @param manifests
+     *            Folder to store archive manifests, or null to disable manifests.
+     */
+    public ResourceCache(Enumeration enumeration, Path manifests) {
+        this.enumeration = enumeration;
+        this.manifests = manifests;
+    }
+
+    public synchronized void add(ResourceLocation location) throws IOException {
+        indices.add(SharedResourceLocations.acquire(location, enumeration, manifests));
+    }
 
-        @Override
-        public String toString() {
-            return key + "->" + resourceLocation;
+    @Override
+    public synchronized void close() throws IOException {
+        for (ResourceIndex index : indices) {
+            SharedResourceLocations.release(index);
         }
+        indices.clear();
     }
 
-    private Map<String, ResourceLocation> resourceLocations = new LinkedHashMap<>();
-    private List<Entry> dataSequence = new ArrayList<>();
-    private Map<String, ResourceLocation> dataLookup = new HashMap<>();
+    /**
+     * Resources of the folder that are provided by other locations as well are copies that have been unpacked from
+     * these locations, and aren't listed.
+     */
+    synchronized void unpacksTo(Path folder) {
+        unpackFolder = folder.toAbsolutePath().normalize();
+    }
 
-    public void add(ResourceLocation location) throws IOException {
-        resourceLocations.put(location.root().toString(), location);
-        List<String> resources = location.resources();
-        for (String key : resources) {
-            dataSequence.add(new Entry(key, location));
-            dataLookup.put(key, location);
+    /**
+     * Starts recording resource accesses. Profiling is disabled by default, since it adds overhead to each access.
+     */
+    public synchronized void startProfiling() {
+        if (profile == null) {
+            profile = new ResourceProfile();
         }
     }
 
+    /**
+     * @return Access statistics of the resources requested from this cache since profiling has been started, or null
+     *         if profiling is disabled.
+     */
+    public ResourceProfile profile() {
+        return profile;
+    }
+
     public InputStream get(String key) throws IOException {
+        ResourceProfile resourceProfile = profile;
+        if (resourceProfile == null) {
+            ResourceLocation resourceLocation = getLocation(key);
+            return resourceLocation != null ? resourceLocation.get(key) : null;
+        }
+
+        long start = System.nanoTime();
         ResourceLocation resourceLocation = getLocation(key);
-        return resourceLocation != null ? resourceLocation.get(key) : null;
+        InputStream inputStream = resourceLocation != null ? resourceLocation.get(key) : null;
+        resourceProfile.record(key, resourceLocation, start);
+        return resourceProfile.counting(key, inputStream);
     }
 
-    private ResourceLocation getLocation(String key) {
-        return dataLookup.get(key);
+    /**
+     * @return The content of the resource, memory-mapped if possible, or null if the resource doesn't exist.
+     */
+    public ByteBuffer buffer(String key) throws IOException {
+        ResourceProfile resourceProfile = profile;
+        if (resourceProfile == null) {
+            ResourceLocation resourceLocation = getLocation(key);
+            return resourceLocation != null ? resourceLocation.buffer(key) : null;
+        }
+
+        long start = System.nanoTime();
+        ResourceLocation resourceLocation = getLocation(key);
+        ByteBuffer buffer = resourceLocation != null ? resourceLocation.buffer(key) : null;
+        resourceProfile.record(key, resourceLocation, start);
+        if (buffer != null) {
+            resourceProfile.read(key, buffer.remaining());
+        }
+        return buffer;
+    }
+
+    /**
+     * @return The content of the resource in an array of the exact size, or null if the resource doesn't exist.
+     */
+    public byte[] bytes(String key) throws IOException {
+        ResourceProfile resourceProfile = profile;
+        if (resourceProfile == null) {
+            ResourceLocation resourceLocation = getLocation(key);
+            return resourceLocation != null ? resourceLocation.bytes(key) : null;
+        }
+
+        long start = System.nanoTime();
+        ResourceLocation resourceLocation = getLocation(key);
+        byte[] bytes = resourceLocation != null ? resourceLocation.bytes(key) : null;
+        resourceProfile.record(key, resourceLocation, start);
+        if (bytes != null) {
+            resourceProfile.read(key, bytes.length);
+        }
+        return bytes;
+    }
+
+    /**
+     * @return The fingerprint of the resource content, or null if the resource doesn't exist.
+     */
+    public String fingerprint(String key) throws IOException {
+        ResourceLocation resourceLocation = getLocation(key);
+        return resourceLocation != null ? resourceLocation.fingerprint(key) : null;
+    }
+
+    /**
+     * Resolves the location that provides a resource, ignoring the location rooted at the given folder. Used to find
+     * the origin of resources that have been unpacked into a folder location.
+     * 
+     * @param key
+     *            The resource path.
+     * @param excluded
+     *            Root of the location to ignore.
+     * @return The location that provides the resource, or null if no other location provides it.
+     */
+    ResourceLocation location(String key, Path excluded) throws IOException {
+        return getLocation(key, excluded.toAbsolutePath().normalize());
+    }
+
+    private ResourceLocation getLocation(String key) throws IOException {
+        return getLocation(key, null);
+    }
+
+    /**
+     * Resources of later added locations override resources of previously added locations, regardless of how the
+     * locations are enumerated.
+     */
+    private synchronized ResourceLocation getLocation(String key, Path excluded) throws IOException {
+        for (int i = indices.size() - 1; i >= 0; i--) {
+            ResourceIndex index = indices.get(i);
+            if (!isExcluded(index, excluded) && index.contains(key)) {
+                return index.location;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isExcluded(ResourceIndex index, Path excluded) {
+        return excluded != null && index.location.root().toAbsolutePath().normalize().equals(excluded);
     }
 
     public boolean has(String key) {
-        return dataLookup.containsKey(key);
+        try {
+            return getLocation(key) != null;
+        } catch (IOException e) {
+            throw ExceptionUtil.asRuntimeException(e);
+        }
     }
 
-    public List<String> get(Pattern pattern) {
-        List<String> resources = new ArrayList<>();
-        for (Entry entry : dataSequence) {
-            if (pattern.matcher(entry.key).matches()) {
-                resources.add(entry.key);
+    /**
+     * Retrieves the resources matching the pattern, in the order of registration. Literal paths, folder prefixes and
+     * file extensions are resolved via the index, other patterns are matched against all resources.
+     * <p>
+     * Resources of lazily enumerated locations are registered in the order their folders have been expanded.
+     * Resources provided by multiple locations are listed once per location, as with eager enumeration - except for
+     * the copies in the unpack folder.
+     *
+     * @param pattern
+     *            Pattern for resource selection.
+     * @return Matching resource paths.
+     */
+    public synchronized List<String> get(Pattern pattern) {
+        try {
+            List<String> resources = new ArrayList<>();
+            for (ResourceIndex index : indices) {
+                if (isExcluded(index, unpackFolder)) {
+                    for (String resource : index.get(pattern)) {
+                        if (getLocation(resource, unpackFolder) == null) {
+                            resources.add(resource);
+                        }
+                    }
+                } else {
+                    resources.addAll(index.get(pattern));
+                }
             }
+            return resources;
+        } catch (IOException e) {
+            throw ExceptionUtil.asRuntimeException(e);
         }
-        return resources;
     }
 
     public static ResourceLocation location(String path, String project) throws IOException {
@@ -0,0 +1,337 @@
+package teaselib.core.util.resource;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Indexes the resource paths of a location by prefix and by extension, in order to resolve common wildcard patterns
+ * without matching all resources.
+ * <p>
+ * Patterns that can't be analyzed are matched against all resources in registration order.
+ * <p>
+ * Lazily enumerated locations are listed folder by folder. A folder is expanded when a query or lookup may match
+ * resources inside it. When the location has been enumerated completely, its resources are written to the
+ * manifest, if any.
+ * <p>
+ * Indices are shared between resource caches and therefore thread-safe.
+ *
+ * @author Citizen-Cane
+ *
+ */
+final class ResourceIndex {
+    private static final Logger logger = LoggerFactory.getLogger(ResourceIndex.class);
+
+    static final class Entry {
+        final String key;
+        final int sequence;
+
+        Entry(String key, int sequence) {
+            this.key = key;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public String toString() {
+            return key;
+        }
+    }
+
+    private static final Comparator<Entry> RegistrationOrder = (a, b) -> Integer.compare(a.sequence, b.sequence);
+
+    final ResourceLocation location;
+    private final Path manifest;
+    private boolean lazy = false;
+
+    private final List<Entry> dataSequence = new ArrayList<>();
+    private final NavigableMap<String, Entry> paths = new TreeMap<>();
+    private final Map<String, List<Entry>> extensions = new HashMap<>();
+    private final NavigableSet<String> pendingFolders = new TreeSet<>();
+
+    ResourceIndex(ResourceLocation location) {
+        this(location, null);
+    }
+
+    private ResourceIndex(ResourceLocation location, Path manifest) {
+        this.location = location;
+        this.manifest = manifest;
+    }
+
+    static ResourceIndex eager(ResourceLocation location) throws IOException {
+        return of(location, location.resources());
+    }
+
+    static ResourceIndex of(ResourceLocation location, List<String> resources) {
+        ResourceIndex index = new ResourceIndex(location);
+        for (String key : resources) {
+            index.add(key);
+        }
+        return index;
+    }
+
+    /**
+     * @param manifest
+     *            Manifest file to write when the location has been enumerated completely, or null.
+     */
+    static ResourceIndex lazy(ResourceLocation location, Path manifest) throws IOException {
+        ResourceIndex index = new ResourceIndex(location, manifest);
+        index.lazy = true;
+        index.pendingFolders.add("/");
+        index.expandFolder("/");
+        return index;
+    }
+
+    /**
+     * Discards the resources listed so far, so that a lazily enumerated location is listed again on the next query or
+     * lookup. Eagerly enumerated indices aren't affected.
+     */
+    synchronized void invalidate() {
+        if (lazy) {
+            dataSequence.clear();
+            paths.clear();
+            extensions.clear();
+            pendingFolders.clear();
+            pendingFolders.add("/");
+        }
+    }
+
+    synchronized void add(String key) {
+        if (!paths.containsKey(key)) {
+            Entry entry = new Entry(key, dataSequence.size());
+            dataSequence.add(entry);
+            paths.put(key, entry);
+            String extension = extension(key);
+            if (extension != null) {
+                extensions.computeIfAbsent(extension, k -> new ArrayList<>()).add(entry);
+            }
+        }
+    }
+
+    synchronized boolean isEnumerated() {
+        return pendingFolders.isEmpty();
+    }
+
+    /**
+     * @return All resources of the location in registration order, or null if the location hasn't been enumerated
+     *         completely yet.
+     */
+    synchronized List<String> resources() {
+        if (isEnumerated()) {
+            List<String> resources = new ArrayList<>(dataSequence.size());
+            for (Entry entry : dataSequence) {
+                resources.add(entry.key);
+            }
+            return resources;
+        } else {
+            return null;
+        }
+    }
+
+    synchronized boolean contains(String key) throws IOException {
+        expand(key);
+        return paths.containsKey(key);
+    }
+
+    synchronized List<String> get(Pattern pattern) throws IOException {
+        Query query = Query.of(pattern);
+        expand(query != null ? query.prefix : "");
+        List<Entry> candidates = query != null ? candidates(query) : dataSequence;
+
+        List<String> resources = new ArrayList<>();
+        for (Entry entry : candidates) {
+            if (pattern.matcher(entry.key).matches()) {
+                resources.add(entry.key);
+            }
+        }
+        return resources;
+    }
+
+    private void expand(String prefix) throws IOException {
+        String folder;
+        while ((folder = pending(pendingFolders, prefix)) != null) {
+            expandFolder(folder);
+        }
+    }
+
+    private void expandFolder(String folder) throws IOException {
+        for (String child : location.list(folder)) {
+            if (child.endsWith("/")) {
+                pendingFolders.add(child);
+            } else {
+                add(child);
+            }
+        }
+        pendingFolders.remove(folder);
+
+        if (pendingFolders.isEmpty() && manifest != null) {
+            writeManifest();
+        }
+    }
+
+    private void writeManifest() {
+        try {
+            ResourceManifest.write(manifest, location.root(), location.project(), resources());
+        } catch (IOException e) {
+            logger.warn("Failed to write resource manifest of {}: {}", location, e.getMessage());
+        }
+    }
+
+    /**
+     * @return A pending folder that may contain resources starting with the prefix, or null if there are none.
+     */
+    private static String pending(NavigableSet<String> folders, String prefix) {
+        if (folders.isEmpty()) {
+            return null;
+        }
+
+        String folder = folders.ceiling(prefix);
+        if (folder != null && folder.startsWith(prefix)) {
+            return folder;
+        }
+
+        for (int i = prefix.indexOf('/'); i >= 0; i = prefix.indexOf('/', i + 1)) {
+            String parent = prefix.substring(0, i + 1);
+            if (folders.contains(parent)) {
+                return parent;
+            }
+        }
+
+        return null;
+    }
+
+    private List<Entry> candidates(Query query) {
+        if (query.isLiteral()) {
+            Entry entry = paths.get(query.prefix);
+            return entry != null ? Collections.singletonList(entry) : Collections.emptyList();
+        } else {
+            String extension = extension(query.suffix);
+            if (query.prefix.lastIndexOf('/') > 0 || extension == null) {
+                return sorted(startingWith(query.prefix).values());
+            } else {
+                return extensions.getOrDefault(extension, Collections.emptyList());
+            }
+        }
+    }
+
+    private NavigableMap<String, Entry> startingWith(String prefix) {
+        if (prefix.isEmpty()) {
+            return paths;
+        } else {
+            return paths.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+        }
+    }
+
+    private static List<Entry> sorted(Collection<Entry> entries) {
+        List<Entry> candidates = new ArrayList<>(entries);
+        candidates.sort(RegistrationOrder);
+        return candidates;
+    }
+
+    static String extension(String path) {
+        int dot = path.lastIndexOf('.');
+        if (dot < 0 || path.indexOf('/', dot) >= 0) {
+            return null;
+        } else {
+            return path.substring(dot + 1);
+        }
+    }
+
+    /**
+     * The literal prefix and suffix of a pattern compiled by {@link teaselib.core.util.WildcardPattern}, or of any
+     * other pattern that consists only of literals, escaped literals and the wildcards ".*" and ".".
+     */
+    static final class Query {
+        final String prefix;
+        final String suffix;
+        final boolean hasWildcards;
+
+        private Query(String prefix, String suffix, boolean hasWildcards) {
+            this.prefix = prefix;
+            this.suffix = suffix;
+            this.hasWildcards = hasWildcards;
+        }
+
+        boolean isLiteral() {
+            return !hasWildcards;
+        }
+
+        /**
+         * @return The literal parts of the pattern, or null if the pattern contains unsupported regex constructs.
+         */
+        static Query of(Pattern pattern) {
+            if (pattern.flags() != 0) {
+                return null;
+            }
+
+            String regex = pattern.pattern();
+            StringBuilder prefix = new StringBuilder();
+            StringBuilder literal = new StringBuilder();
+            boolean hasWildcards = false;
+
+            int i = 0;
+            while (i < regex.length()) {
+                char c = regex.charAt(i);
+                if (c == '\\') {
+                    if (i + 1 >= regex.length()) {
+                        return null;
+                    }
+                    char escaped = regex.charAt(i + 1);
+                    if (escaped == 'Q') {
+                        int end = regex.indexOf("\\E", i + 2);
+                        if (end < 0) {
+                            literal.append(regex, i + 2, regex.length());
+                            i = regex.length();
+                        } else {
+                            literal.append(regex, i + 2, end);
+                            i = end + 2;
+                        }
+                    } else if (Character.isLetterOrDigit(escaped)) {
+                        return null;
+                    } else {
+                        literal.append(escaped);
+                        i += 2;
+                    }
+                } else if (c == '.') {
+                    if (!hasWildcards) {
+                        prefix.append(literal);
+                        hasWildcards = true;
+                    }
+                    literal.setLength(0);
+                    if (i + 1 < regex.length() && regex.charAt(i + 1) == '*') {
+                        i += 2;
+                    } else {
+                        i++;
+                    }
+                } else if ("[](){}*+?^$|".indexOf(c) >= 0) {
+                    return null;
+                } else {
+                    literal.append(c);
+                    i++;
+                }
+                if (i < regex.length() && "*+?{".indexOf(regex.charAt(i)) >= 0 && regex.charAt(i - 1) != '*') {
+                    return null;
+                }
+            }
+
+            if (hasWildcards) {
+                return new Query(prefix.toString(), literal.toString(), true);
+            } else {
+                return new Query(literal.toString(), literal.toString(), false);
+            }
+        }
+    }
+}
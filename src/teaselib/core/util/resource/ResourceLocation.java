@@ -3,6 +3,7 @@ package teaselib.core.util.resource;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
 import java.util.List;
 
@@ -13,6 +14,48 @@ interface ResourceLocation extends Closeable {
 
     List<String> resources() throws IOException;
 
+    /**
+     * Lists the direct children of a folder.
+     * 
+     * @param folder
+     *            Absolute resource path of the folder, ending with a slash.
+     * @return Resource paths of the files and sub-folders in the folder. Sub-folder paths end with a slash.
+     */
+    List<String> list(String folder) throws IOException;
+
     InputStream get(String resource) throws IOException;
 
+    /**
+     * Provides the resource content without copying it through a stream, if possible. Large files are memory-mapped,
+     * small files and compressed archive entries are read into a heap buffer of the exact size.
+     * 
+     * @param resource
+     *            Absolute resource path.
+     * @return A buffer containing the resource content. The content must not be modified.
+     */
+    ByteBuffer buffer(String resource) throws IOException;
+
+    /**
+     * Reads the resource content into an array of the exact size. Unlike {@link #buffer(String)}, files aren't
+     * memory-mapped, since the mapping would be copied into the array anyway.
+     * 
+     * @param resource
+     *            Absolute resource path.
+     */
+    default byte[] bytes(String resource) throws IOException {
+        try (InputStream inputStream = get(resource)) {
+            return inputStream.readAllBytes();
+        }
+    }
+
+    /**
+     * Identifies the current version of the resource content without reading it, for keying data derived from
+     * resources.
+     * 
+     * @param resource
+     *            Absolute resource path.
+     * @return A string that changes when the resource content changes.
+     */
+    String fingerprint(String resource) throws IOException;
+
 }
\ No newline at end of file
@@ -0,0 +1,80 @@
+package teaselib.core.util.resource;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Persists the resource list of an archive, in order to skip enumerating the archive on the next start.
+ * <p>
+ * The manifest is keyed by size and modification time of the archive, as well as the project path the resources have
+ * been filtered with. If any of these differ, the manifest is ignored.
+ *
+ * @author Citizen-Cane
+ *
+ */
+final class ResourceManifest {
+    private static final String Header = "TeaseLib resource manifest 1";
+    private static final String Extension = ".manifest";
+
+    private ResourceManifest() {
+    }
+
+    static Path path(Path folder, Path archive) {
+        String name = archive.getFileName().toString();
+        String location = Integer.toHexString(archive.toAbsolutePath().normalize().toString().hashCode());
+        return folder.resolve(name + "-" + location + Extension);
+    }
+
+    static Optional<List<String>> read(Path manifest, Path archive, Path project) throws IOException {
+        if (!Files.exists(manifest)) {
+            return Optional.empty();
+        }
+
+        String key = key(archive, project);
+        try (BufferedReader reader = Files.newBufferedReader(manifest, StandardCharsets.UTF_8)) {
+            if (!Header.equals(reader.readLine()) || !key.equals(reader.readLine())) {
+                return Optional.empty();
+            }
+
+            List<String> resources = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                resources.add(line);
+            }
+            return Optional.of(resources);
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+    }
+
+    static void write(Path manifest, Path archive, Path project, Collection<String> resources) throws IOException {
+        Files.createDirectories(manifest.getParent());
+        Path temp = manifest.resolveSibling(manifest.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            writer.write(Header);
+            writer.newLine();
+            writer.write(key(archive, project));
+            writer.newLine();
+            for (String resource : resources) {
+                writer.write(resource);
+                writer.newLine();
+            }
+        }
+        Files.move(temp, manifest, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static String key(Path archive, Path project) throws IOException {
+        return Files.size(archive) + " " + Files.getLastModifiedTime(archive).toMillis() + " "
+                + (project != null ? project.toString().replace('\\', '/') : "");
+    }
+}
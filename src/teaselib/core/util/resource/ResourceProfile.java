@@ -0,0 +1,204 @@
+package teaselib.core.util.resource;
+
+import java.io.BufferedWriter;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Records how often each resource is accessed, from which kind of location, how many bytes are read and how long the
+ * lookups take.
+ * <p>
+ * The report lists one resource per line, ordered by access count, as tab-separated values:
+ * <ul>
+ * <li>resource path
+ * <li>location the resource has been resolved from - folder, zip or missing
+ * <li>number of accesses
+ * <li>number of accesses that didn't resolve the resource
+ * <li>number of bytes read
+ * <li>total lookup time in microseconds
+ * <li>lookup time histogram - comma-separated counts of lookups that took less than 1, 2, 4, 8, ... microseconds
+ * </ul>
+ * Lines starting with {@code #} are comments.
+ *
+ * @author Citizen-Cane
+ *
+ */
+public class ResourceProfile {
+    private static final String Header = "# TeaseLib resource profile 1";
+    private static final String Columns = "# resource\tlocation\taccesses\tmisses\tbytes\tmicros\thistogram";
+
+    static final int Buckets = 24;
+
+    private static final class Entry {
+        final LongAdder accesses = new LongAdder();
+        final LongAdder misses = new LongAdder();
+        final LongAdder bytes = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+        final AtomicLongArray histogram = new AtomicLongArray(Buckets);
+        volatile String location = "missing";
+    }
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private Entry entry(String key) {
+        return entries.computeIfAbsent(key, k -> new Entry());
+    }
+
+    void record(String key, ResourceLocation location, long startNanos) {
+        long nanos = System.nanoTime() - startNanos;
+        Entry entry = entry(key);
+        entry.accesses.increment();
+        if (location != null) {
+            entry.location = location instanceof ZipLocation ? "zip" : "folder";
+        } else {
+            entry.misses.increment();
+        }
+        entry.nanos.add(nanos);
+        entry.histogram.incrementAndGet(bucket(nanos));
+    }
+
+    static int bucket(long nanos) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        return Math.min(Buckets - 1, 64 - Long.numberOfLeadingZeros(micros));
+    }
+
+    void read(String key, long bytes) {
+        entry(key).bytes.add(bytes);
+    }
+
+    InputStream counting(String key, InputStream inputStream) {
+        if (inputStream == null) {
+            return null;
+        }
+
+        LongAdder bytes = entry(key).bytes;
+        return new FilterInputStream(inputStream) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    bytes.increment();
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                if (n > 0) {
+                    bytes.add(n);
+                }
+                return n;
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                long skipped = super.skip(n);
+                bytes.add(skipped);
+                return skipped;
+            }
+        };
+    }
+
+    public long accesses(String key) {
+        Entry entry = entries.get(key);
+        return entry != null ? entry.accesses.sum() : 0;
+    }
+
+    public long misses(String key) {
+        Entry entry = entries.get(key);
+        return entry != null ? entry.misses.sum() : 0;
+    }
+
+    public long bytes(String key) {
+        Entry entry = entries.get(key);
+        return entry != null ? entry.bytes.sum() : 0;
+    }
+
+    /**
+     * @return The resources that have been accessed, the most frequently accessed first.
+     */
+    public List<String> hotSet() {
+        return entries.entrySet().stream()
+                .filter(element -> element.getValue().misses.sum() < element.getValue().accesses.sum())
+                .sorted(byAccesses()).map(Map.Entry::getKey).collect(Collectors.toList());
+    }
+
+    private static Comparator<Map.Entry<String, Entry>> byAccesses() {
+        return Comparator.<Map.Entry<String, Entry>> comparingLong(element -> element.getValue().accesses.sum())
+                .reversed().thenComparing(Map.Entry::getKey);
+    }
+
+    public void write(Writer writer) throws IOException {
+        List<Map.Entry<String, Entry>> sorted = new ArrayList<>(entries.entrySet());
+        sorted.sort(byAccesses());
+
+        writer.write(Header);
+        writer.write('\n');
+        writer.write(Columns);
+        writer.write('\n');
+        for (Map.Entry<String, Entry> element : sorted) {
+            Entry entry = element.getValue();
+            writer.write(element.getKey());
+            writer.write('\t');
+            writer.write(entry.location);
+            writer.write('\t');
+            writer.write(Long.toString(entry.accesses.sum()));
+            writer.write('\t');
+            writer.write(Long.toString(entry.misses.sum()));
+            writer.write('\t');
+            writer.write(Long.toString(entry.bytes.sum()));
+            writer.write('\t');
+            writer.write(Long.toString(TimeUnit.NANOSECONDS.toMicros(entry.nanos.sum())));
+            writer.write('\t');
+            writer.write(histogram(entry.histogram));
+            writer.write('\n');
+        }
+    }
+
+    private static String histogram(AtomicLongArray histogram) {
+        int last = Buckets - 1;
+        while (last > 0 && histogram.get(last) == 0) {
+            last--;
+        }
+        StringBuilder counts = new StringBuilder();
+        for (int i = 0; i <= last; i++) {
+            if (i > 0) {
+                counts.append(',');
+            }
+            counts.append(histogram.get(i));
+        }
+        return counts.toString();
+    }
+
+    /**
+     * Writes the report to a file, replacing the previous report.
+     */
+    public void write(Path file) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                write(writer);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
@@ -0,0 +1,341 @@
+package teaselib.core.util.resource;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Unpacks resources into a folder, and records size, modification time and content hash of each unpacked file in a
+ * manifest.
+ * <p>
+ * Files are only written if they're new, or if the resource has changed since it has been unpacked. Files that have
+ * been modified after unpacking, or that haven't been unpacked by this class, are never overwritten or deleted. The
+ * decision to keep a file is recorded as well, so that it's only compared again after the file or the resource has
+ * changed.
+ * <p>
+ * Resources are streamed to the file system, and hashed while being written, so unpacking large resources doesn't
+ * need more memory than a copy buffer.
+ *
+ * @author Citizen-Cane
+ *
+ */
+public final class ResourceUnpacker {
+    private static final Logger logger = LoggerFactory.getLogger(ResourceUnpacker.class);
+
+    private static final String Header = "TeaseLib unpack manifest 1";
+
+    private static final class Entry {
+        final long hash;
+        final long size;
+        final long lastModified;
+        final String source;
+        /**
+         * The file has been modified and is kept, so the hash of its unpacked content is unknown.
+         */
+        final boolean kept;
+
+        Entry(long hash, long size, long lastModified, String source) {
+            this(hash, size, lastModified, source, false);
+        }
+
+        private Entry(long hash, long size, long lastModified, String source, boolean kept) {
+            this.hash = hash;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.source = source;
+            this.kept = kept;
+        }
+
+        static Entry of(Path file, long hash, String source) throws IOException {
+            return new Entry(hash, Files.size(file), Files.getLastModifiedTime(file).toMillis(), source);
+        }
+
+        static Entry kept(Path file, String source) throws IOException {
+            return new Entry(0, Files.size(file), Files.getLastModifiedTime(file).toMillis(), source, true);
+        }
+
+        boolean matches(Path file) throws IOException {
+            return Files.size(file) == size && Files.getLastModifiedTime(file).toMillis() == lastModified;
+        }
+    }
+
+    private final ResourceCache resources;
+    private final Path folder;
+    private final Path manifest;
+    private Map<String, Entry> entries = null;
+    private boolean modified = false;
+
+    /**
+     * @param resources
+     *            The resources to unpack.
+     * @param folder
+     *            The folder to unpack to. If the folder is a location of the resource cache, it's ignored when
+     *            resolving resources, and the unpacked copies aren't listed by the resource cache.
+     * @param manifest
+     *            The manifest file. It's read on first use.
+     */
+    public ResourceUnpacker(ResourceCache resources, Path folder, Path manifest) {
+        this.resources = resources;
+        this.folder = folder;
+        this.manifest = manifest;
+        resources.unpacksTo(folder);
+    }
+
+    /**
+     * @return Whether the resource is provided by any location other than the unpack folder.
+     */
+    public boolean provides(String resource) throws IOException {
+        return resources.location(resource, folder) != null;
+    }
+
+    /**
+     * Unpacks the resource if the file doesn't exist yet, or if the file has been unpacked before and the resource
+     * has changed since.
+     *
+     * @param resource
+     *            The resource path.
+     * @param file
+     *            The file to unpack the resource to.
+     * @return Whether the file has been written.
+     * @throws IOException
+     */
+    public boolean unpack(String resource, Path file) throws IOException {
+        ResourceLocation location = resources.location(resource, folder);
+        if (location == null) {
+            throw new FileNotFoundException(resource);
+        }
+
+        String key = key(file);
+        Entry entry = entry(key);
+        String source = fingerprint(location, resource);
+
+        if (!Files.exists(file)) {
+            put(key, Entry.of(file, write(location, resource, file), source));
+            return true;
+        } else if (entry != null && entry.matches(file) && source != null && source.equals(entry.source)) {
+            return false;
+        } else if (entry != null && entry.matches(file) && !entry.kept) {
+            long hash = hash(location, resource);
+            if (hash != entry.hash) {
+                put(key, Entry.of(file, write(location, resource, file), source));
+                return true;
+            } else {
+                put(key, new Entry(entry.hash, entry.size, entry.lastModified, source));
+                return false;
+            }
+        } else {
+            long hash = hash(location, resource);
+            if (hash == hash(file)) {
+                put(key, Entry.of(file, hash, source));
+            } else {
+                logger.info("Keeping modified file {}", file);
+                put(key, Entry.kept(file, source));
+            }
+            return false;
+        }
+    }
+
+    /**
+     * @return Whether the file has been unpacked and is unmodified since.
+     */
+    public boolean isUnpacked(Path file) throws IOException {
+        Entry entry = entry(key(file));
+        return entry != null && !entry.kept && Files.exists(file) && entry.matches(file);
+    }
+
+    /**
+     * Deletes a file that is no longer provided by any resource location. Files that have been modified since
+     * unpacking are kept.
+     *
+     * @return Whether the file has been deleted.
+     */
+    public boolean prune(Path file) throws IOException {
+        if (isUnpacked(file)) {
+            Files.delete(file);
+            SharedResourceLocations.changed(file);
+            remove(key(file));
+            logger.info("Removed stale file {}", file);
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * Writes the manifest if it has been modified.
+     */
+    public synchronized void save() throws IOException {
+        if (modified) {
+            Files.createDirectories(manifest.getParent());
+            Path temp = temporaryFile(manifest);
+            try {
+                try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                    writer.write(Header);
+                    writer.newLine();
+                    for (Map.Entry<String, Entry> element : entries.entrySet()) {
+                        Entry entry = element.getValue();
+                        writer.write((entry.kept ? "-" : Long.toHexString(entry.hash)) + " " + entry.size + " " + entry.lastModified + " "
+                                + (entry.source != null ? entry.source : "-") + " " + element.getKey());
+                        writer.newLine();
+                    }
+                }
+                replace(temp, manifest);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            modified = false;
+        }
+    }
+
+    private synchronized Entry entry(String key) throws IOException {
+        return entries().get(key);
+    }
+
+    private synchronized void put(String key, Entry entry) throws IOException {
+        entries().put(key, entry);
+        modified = true;
+    }
+
+    private synchronized void remove(String key) throws IOException {
+        if (entries().remove(key) != null) {
+            modified = true;
+        }
+    }
+
+    private Map<String, Entry> entries() throws IOException {
+        if (entries == null) {
+            entries = read(manifest);
+        }
+        return entries;
+    }
+
+    private static Map<String, Entry> read(Path manifest) throws IOException {
+        Map<String, Entry> entries = new HashMap<>();
+        if (Files.exists(manifest)) {
+            try (BufferedReader reader = Files.newBufferedReader(manifest, StandardCharsets.UTF_8)) {
+                if (!Header.equals(reader.readLine())) {
+                    return entries;
+                }
+
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = line.split(" ", 5);
+                    if (fields.length == 5) {
+                        boolean kept = "-".equals(fields[0]);
+                        entries.put(fields[4], new Entry(kept ? 0 : Long.parseUnsignedLong(fields[0], 16),
+                                Long.parseLong(fields[1]), Long.parseLong(fields[2]),
+                                "-".equals(fields[3]) ? null : fields[3], kept));
+                    }
+                }
+            } catch (NoSuchFileException e) {
+                return entries;
+            } catch (NumberFormatException e) {
+                logger.warn("Ignoring corrupt unpack manifest {}: {}", manifest, e.getMessage());
+                return new HashMap<>();
+            }
+        }
+        return entries;
+    }
+
+    private static String key(Path file) {
+        return file.toAbsolutePath().normalize().toString();
+    }
+
+    /**
+     * Archives are identified by their own size and modification time, folder resources by the size and modification
+     * time of the resource file.
+     *
+     * @return A cheap fingerprint of the resource's source, or null if the content has to be hashed to detect changes.
+     */
+    private static String fingerprint(ResourceLocation location, String resource) throws IOException {
+        if (location instanceof FileSystemLocation) {
+            Path root = location.root();
+            Path path = Files.isRegularFile(root) ? root : ((FileSystemLocation) location).path(resource);
+            return Files.size(path) + ":" + Files.getLastModifiedTime(path).toMillis();
+        } else {
+            return null;
+        }
+    }
+
+    private static long hash(ResourceLocation location, String resource) throws IOException {
+        CRC32C crc = new CRC32C();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream content = location.get(resource)) {
+            int length;
+            while ((length = content.read(buffer)) >= 0) {
+                crc.update(buffer, 0, length);
+            }
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * The file is read instead of being mapped, since mapped files can't be replaced or deleted on all platforms
+     * until the mapping has been garbage-collected.
+     */
+    private static long hash(Path file) throws IOException {
+        CRC32C crc = new CRC32C();
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                crc.update(buffer);
+                buffer.clear();
+            }
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * @return The hash of the written content.
+     */
+    private static long write(ResourceLocation location, String resource, Path file) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path temp = temporaryFile(file);
+        try {
+            long hash;
+            try (CheckedInputStream content = new CheckedInputStream(location.get(resource), new CRC32C())) {
+                Files.copy(content, temp, StandardCopyOption.REPLACE_EXISTING);
+                hash = content.getChecksum().getValue();
+            }
+            replace(temp, file);
+            SharedResourceLocations.changed(file);
+            return hash;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Temporary files are unique, so that concurrent unpackers don't overwrite each other's partial output.
+     */
+    private static Path temporaryFile(Path file) throws IOException {
+        return Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+    }
+
+    private static void replace(Path temp, Path file) throws IOException {
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
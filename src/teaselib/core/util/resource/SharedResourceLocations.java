@@ -0,0 +1,128 @@
+package teaselib.core.util.resource;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import teaselib.core.util.resource.ResourceCache.Enumeration;
+
+/**
+ * Process-wide registry of resource locations and their indices. Resource caches that add the same location share a
+ * single location instance and index, so archives are opened and enumerated only once per process.
+ * <p>
+ * Locations are reference-counted, and closed when the last resource cache has released them. Folders may change
+ * while the process is running, for instance by unpacking resources, so lazily enumerated folder indices are listed
+ * again after files have been written to or removed from them.
+ *
+ * @author Citizen-Cane
+ *
+ */
+final class SharedResourceLocations {
+    private static final Logger logger = LoggerFactory.getLogger(SharedResourceLocations.class);
+
+    private static final class Shared {
+        final String key;
+        final ResourceIndex index;
+        int references = 0;
+
+        Shared(String key, ResourceIndex index) {
+            this.key = key;
+            this.index = index;
+        }
+    }
+
+    private static final Map<String, Shared> locations = new HashMap<>();
+    private static final Map<ResourceIndex, Shared> indices = new HashMap<>();
+
+    private SharedResourceLocations() {
+    }
+
+    /**
+     * Returns the shared index of the location. If the location has already been acquired, the shared instance is
+     * used, and the location argument is closed.
+     */
+    static synchronized ResourceIndex acquire(ResourceLocation location, Enumeration enumeration, Path manifests)
+            throws IOException {
+        String key = key(location, enumeration);
+        Shared shared = locations.get(key);
+        if (shared == null) {
+            shared = new Shared(key, index(location, enumeration, manifests));
+            locations.put(key, shared);
+            indices.put(shared.index, shared);
+        } else if (shared.index.location != location) {
+            location.close();
+        }
+        shared.references++;
+        return shared.index;
+    }
+
+    static synchronized void release(ResourceIndex index) throws IOException {
+        Shared shared = indices.get(index);
+        if (shared == null) {
+            throw new IllegalArgumentException("Location not acquired: " + index.location);
+        }
+
+        shared.references--;
+        if (shared.references == 0) {
+            locations.remove(shared.key);
+            indices.remove(index);
+            index.location.close();
+        }
+    }
+
+    /**
+     * Lists the lazily enumerated folder locations that contain the file again on the next query or lookup.
+     */
+    static synchronized void changed(Path file) {
+        Path path = file.toAbsolutePath().normalize();
+        for (Shared shared : locations.values()) {
+            ResourceLocation location = shared.index.location;
+            if (location instanceof FolderLocation && path.startsWith(location.root().toAbsolutePath().normalize())) {
+                shared.index.invalidate();
+            }
+        }
+    }
+
+    static synchronized int references(ResourceLocation location, Enumeration enumeration) {
+        Shared shared = locations.get(key(location, enumeration));
+        return shared != null ? shared.references : 0;
+    }
+
+    private static String key(ResourceLocation location, Enumeration enumeration) {
+        Path project = location.project();
+        return location.root().toAbsolutePath().normalize() + "->" + (project != null ? project : "") + ":"
+                + enumeration;
+    }
+
+    private static ResourceIndex index(ResourceLocation location, Enumeration enumeration, Path manifests)
+            throws IOException {
+        if (enumeration == Enumeration.Eager) {
+            return ResourceIndex.eager(location);
+        } else if (manifests != null && location instanceof ZipLocation) {
+            Path manifest = ResourceManifest.path(manifests, location.root());
+            Optional<List<String>> resources = manifest(location, manifest);
+            if (resources.isPresent()) {
+                return ResourceIndex.of(location, resources.get());
+            } else {
+                return ResourceIndex.lazy(location, manifest);
+            }
+        } else {
+            return ResourceIndex.lazy(location, null);
+        }
+    }
+
+    private static Optional<List<String>> manifest(ResourceLocation location, Path manifest) {
+        try {
+            return ResourceManifest.read(manifest, location.root(), location.project());
+        } catch (IOException e) {
+            logger.warn("Ignoring resource manifest of {}: {}", location, e.getMessage());
+            return Optional.empty();
+        }
+    }
+}
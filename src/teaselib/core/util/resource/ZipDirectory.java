@@ -0,0 +1,191 @@
+package teaselib.core.util.resource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipException;
+
+/**
+ * Reads the central directory of a zip file, in order to read stored (uncompressed) entries directly.
+ * <p>
+ * Only the central directory is kept in memory. Stored entries are read through a file channel into a direct buffer,
+ * so the archive isn't mapped and no file handles are kept open between reads. Zip64 archives and archives larger
+ * than 2GB aren't supported.
+ * <p>
+ * Offsets and lengths are validated against the size of the archive, so truncated or corrupt archives fail with a
+ * {@link ZipException}.
+ *
+ * @author Citizen-Cane
+ *
+ */
+final class ZipDirectory {
+    static final int STORED = 0;
+
+    private static final int EndOfCentralDirectorySignature = 0x06054b50;
+    private static final int CentralDirectorySignature = 0x02014b50;
+    private static final int LocalHeaderSignature = 0x04034b50;
+    private static final int EndOfCentralDirectorySize = 22;
+    private static final int CentralDirectoryHeaderSize = 46;
+    private static final int LocalHeaderSize = 30;
+    private static final int MaxCommentSize = 0xffff;
+
+    static final class Entry {
+        final int method;
+        final long crc;
+        final long compressedSize;
+        final long size;
+        final long localHeaderOffset;
+
+        Entry(int method, long crc, long compressedSize, long size, long localHeaderOffset) {
+            this.method = method;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+    }
+
+    private final Path zip;
+    private final Map<String, Entry> entries;
+
+    private ZipDirectory(Path zip, Map<String, Entry> entries) {
+        this.zip = zip;
+        this.entries = entries;
+    }
+
+    /**
+     * @return The directory of the archive, or null if the archive format isn't supported.
+     */
+    static ZipDirectory of(Path zip) throws IOException {
+        try (FileChannel channel = FileChannel.open(zip, StandardOpenOption.READ)) {
+            long archiveSize = channel.size();
+            if (archiveSize > Integer.MAX_VALUE) {
+                return null;
+            }
+
+            int tailSize = (int) Math.min(archiveSize, EndOfCentralDirectorySize + MaxCommentSize);
+            ByteBuffer tail = read(channel, archiveSize - tailSize, tailSize, zip);
+            int end = endOfCentralDirectory(tail);
+            if (end < 0) {
+                throw new ZipException("End of central directory not found: " + zip);
+            }
+
+            int count = Short.toUnsignedInt(tail.getShort(end + 10));
+            long directorySize = Integer.toUnsignedLong(tail.getInt(end + 12));
+            long offset = Integer.toUnsignedLong(tail.getInt(end + 16));
+            if (count == 0xffff || offset == 0xffffffffL || directorySize == 0xffffffffL) {
+                return null;
+            }
+            if (offset + directorySize > archiveSize) {
+                throw new ZipException("Central directory exceeds archive: " + zip);
+            }
+
+            ByteBuffer directory = read(channel, offset, (int) directorySize, zip);
+            return new ZipDirectory(zip, entries(directory, count, zip));
+        }
+    }
+
+    private static Map<String, Entry> entries(ByteBuffer directory, int count, Path zip) throws ZipException {
+        Map<String, Entry> entries = new HashMap<>(count * 2);
+        int position = 0;
+        for (int i = 0; i < count; i++) {
+            if (position + CentralDirectoryHeaderSize > directory.limit()
+                    || directory.getInt(position) != CentralDirectorySignature) {
+                throw new ZipException("Invalid central directory header #" + i + ": " + zip);
+            }
+            int method = Short.toUnsignedInt(directory.getShort(position + 10));
+            long crc = Integer.toUnsignedLong(directory.getInt(position + 16));
+            long compressedSize = Integer.toUnsignedLong(directory.getInt(position + 20));
+            long size = Integer.toUnsignedLong(directory.getInt(position + 24));
+            int nameLength = Short.toUnsignedInt(directory.getShort(position + 28));
+            int extraLength = Short.toUnsignedInt(directory.getShort(position + 30));
+            int commentLength = Short.toUnsignedInt(directory.getShort(position + 32));
+            long localHeaderOffset = Integer.toUnsignedLong(directory.getInt(position + 42));
+
+            int next = position + CentralDirectoryHeaderSize + nameLength + extraLength + commentLength;
+            if (next > directory.limit()) {
+                throw new ZipException("Central directory header #" + i + " exceeds directory: " + zip);
+            }
+
+            byte[] name = new byte[nameLength];
+            ByteBuffer nameBuffer = directory.duplicate();
+            nameBuffer.position(position + CentralDirectoryHeaderSize);
+            nameBuffer.get(name);
+            entries.put(new String(name, StandardCharsets.UTF_8),
+                    new Entry(method, crc, compressedSize, size, localHeaderOffset));
+
+            position = next;
+        }
+        return entries;
+    }
+
+    private static int endOfCentralDirectory(ByteBuffer tail) {
+        int last = tail.limit() - EndOfCentralDirectorySize;
+        for (int position = last; position >= 0; position--) {
+            if (tail.getInt(position) == EndOfCentralDirectorySignature) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int size, Path zip) throws IOException {
+        return read(channel, position, ByteBuffer.allocate(size), zip).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, ByteBuffer buffer, Path zip)
+            throws IOException {
+        long offset = position;
+        while (buffer.hasRemaining()) {
+            int bytesRead = channel.read(buffer, offset);
+            if (bytesRead < 0) {
+                throw new ZipException("Unexpected end of archive: " + zip);
+            }
+            offset += bytesRead;
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    Entry get(String name) {
+        return entries.get(name);
+    }
+
+    /**
+     * @return A read-only direct buffer with the entry data, or null if the entry isn't stored uncompressed.
+     */
+    ByteBuffer stored(String name) throws IOException {
+        Entry entry = entries.get(name);
+        if (entry == null || entry.method != STORED || entry.compressedSize != entry.size) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(zip, StandardOpenOption.READ)) {
+            long archiveSize = channel.size();
+            long header = entry.localHeaderOffset;
+            if (header + LocalHeaderSize > archiveSize) {
+                throw new ZipException("Local header of " + name + " exceeds archive: " + zip);
+            }
+
+            ByteBuffer localHeader = read(channel, header, LocalHeaderSize, zip);
+            if (localHeader.getInt(0) != LocalHeaderSignature) {
+                throw new ZipException("Invalid local header of " + name + ": " + zip);
+            }
+            int nameLength = Short.toUnsignedInt(localHeader.getShort(26));
+            int extraLength = Short.toUnsignedInt(localHeader.getShort(28));
+            long data = header + LocalHeaderSize + nameLength + extraLength;
+            if (data + entry.size > archiveSize) {
+                throw new ZipException("Data of " + name + " exceeds archive: " + zip);
+            }
+
+            ByteBuffer content = read(channel, data, ByteBuffer.allocateDirect((int) entry.size), zip);
+            return content.asReadOnlyBuffer();
+        }
+    }
+}
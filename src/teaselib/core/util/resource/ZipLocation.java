@@ -1,27 +1,100 @@
 package teaselib.core.util.resource;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 
+/**
+ * The zip file system is opened on first access, so that archives listed in a manifest don't have to be opened until
+ * a resource is actually read.
+ * <p>
+ * Stored entries are read directly into direct buffers, bypassing the zip file system.
+ */
 public class ZipLocation extends FileSystemLocation {
-    private final FileSystem fileSystem;
+    private FileSystem fileSystem = null;
+    private List<Path> rootDirectories = null;
+    private ZipDirectory directory = null;
+    private boolean directoryRead = false;
 
-    public ZipLocation(Path zip) throws IOException {
+    public ZipLocation(Path zip) {
         this(zip, null);
     }
 
-    ZipLocation(Path zip, Path project) throws IOException {
+    ZipLocation(Path zip, Path project) {
         super(zip, project);
-        this.fileSystem = FileSystems.newFileSystem(zip, null);
-        for (Path root : fileSystem.getRootDirectories()) {
-            addRootDirectory(root);
+    }
+
+    @Override
+    synchronized List<Path> rootDirectories() throws IOException {
+        if (fileSystem == null) {
+            fileSystem = FileSystems.newFileSystem(root, null);
+            rootDirectories = new ArrayList<>();
+            for (Path directory : fileSystem.getRootDirectories()) {
+                rootDirectories.add(directory);
+            }
+        }
+        return rootDirectories;
+    }
+
+    @Override
+    public ByteBuffer buffer(String resource) throws IOException {
+        ZipDirectory zipDirectory = directory();
+        if (zipDirectory != null) {
+            String name = resource.substring(1);
+            ByteBuffer stored = zipDirectory.stored(name);
+            if (stored != null) {
+                return stored;
+            }
+
+            ZipDirectory.Entry entry = zipDirectory.get(name);
+            if (entry != null) {
+                try (InputStream inputStream = get(resource)) {
+                    return read(inputStream, entry.size);
+                }
+            }
+        }
+        return super.buffer(resource);
+    }
+
+    /**
+     * Entries are identified by size and CRC as stored in the central directory.
+     */
+    @Override
+    public String fingerprint(String resource) throws IOException {
+        ZipDirectory zipDirectory = directory();
+        if (zipDirectory != null) {
+            ZipDirectory.Entry entry = zipDirectory.get(resource.substring(1));
+            if (entry != null) {
+                return entry.size + ":" + Long.toHexString(entry.crc);
+            }
         }
+        return super.fingerprint(resource);
+    }
+
+    private synchronized ZipDirectory directory() throws IOException {
+        if (!directoryRead) {
+            directory = root.getFileSystem() == FileSystems.getDefault() ? ZipDirectory.of(root) : null;
+            directoryRead = true;
+        }
+        return directory;
+    }
+
+    synchronized boolean isOpen() {
+        return fileSystem != null;
     }
 
     @Override
-    public void close() throws IOException {
-        fileSystem.close();
+    public synchronized void close() throws IOException {
+        if (fileSystem != null) {
+            fileSystem.close();
+            fileSystem = null;
+        }
+        directory = null;
+        directoryRead = false;
     }
 }
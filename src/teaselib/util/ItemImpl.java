@@ -15,6 +15,7 @@ import teaselib.core.StateImpl;
 import teaselib.core.StateMaps;
 import teaselib.core.TeaseLib;
 import teaselib.core.state.AbstractProxy;
+import teaselib.core.util.AttributeSet;
 import teaselib.core.util.Persist;
 import teaselib.core.util.Persist.Persistable;
 import teaselib.core.util.QualifiedItem;
@@ -35,6 +36,12 @@ public class ItemImpl implements Item, StateMaps.Attributes, Persistable {
     public final Object[] defaultPeers;
     public final Set<Object> attributes;
 
+    /**
+     * Bit sets of the indexed attributes, or null if the attributes have to be compared one by one.
+     */
+    private final AttributeSet indexedAttributes;
+    private final AttributeSet indexedAttributesAndPeers;
+
     public static String createDisplayName(Object item) {
         return item.toString().replace("_", " ");
     }
@@ -53,6 +60,10 @@ public class ItemImpl implements Item, StateMaps.Attributes, Persistable {
         this.available = teaseLib.new PersistentBoolean(domain, QualifiedItem.namespaceOf(item), guid.name());
         this.defaultPeers = defaultPeers;
         this.attributes = attributes(item, attributes);
+        this.indexedAttributes = AttributeSet.of(this.attributes);
+        this.indexedAttributesAndPeers = this.indexedAttributes != null
+                ? AttributeSet.of(attributesAndPeers(this.attributes, defaultPeers))
+                : null;
     }
 
     public static ItemImpl restoreFromUserItems(TeaseLib teaseLib, String domain, Storage storage) {
@@ -94,8 +105,30 @@ public class ItemImpl implements Item, StateMaps.Attributes, Persistable {
     }
 
     boolean has(Object... desired) {
-        Stream<Object> attributesAndPeers = Stream.concat(attributes.stream(), Arrays.stream(defaultPeers));
-        return has(attributesAndPeers, desired);
+        return has(AttributeSet.of(desired), desired);
+    }
+
+    /**
+     * @param indexedDesired
+     *            The bit set of the desired attributes, to query many items with the same attributes.
+     */
+    boolean has(AttributeSet indexedDesired, Object... desired) {
+        if (indexedAttributesAndPeers != null && indexedDesired != null) {
+            return indexedAttributesAndPeers.containsAll(indexedDesired);
+        } else {
+            Stream<Object> attributesAndPeers = Stream.concat(attributes.stream(), Arrays.stream(defaultPeers));
+            return has(attributesAndPeers, desired);
+        }
+    }
+
+    private boolean hasAttributes(Object... desired) {
+        if (indexedAttributes != null) {
+            AttributeSet indexedDesired = AttributeSet.of(desired);
+            if (indexedDesired != null) {
+                return indexedAttributes.containsAll(indexedDesired);
+            }
+        }
+        return has(attributes.stream(), desired);
     }
 
     private static boolean has(Stream<Object> available, Object... desired) {
@@ -117,7 +150,7 @@ public class ItemImpl implements Item, StateMaps.Attributes, Persistable {
             // attributes2[0] == this -> ItemIdentityTest.testThatItemIsNotOtherItem
             // state(value).is(attributes2[0]) -> ItemsTest.testItemAppliedToItems
             return attributes2[0] == this || state(value).is(attributes2[0]);
-        } else if (has(this.attributes.stream(), attributes2))
+        } else if (hasAttributes(attributes2))
             return true;
         else {
             if (StateMaps.hasAllAttributes((state(value)).getAttributes(), attributes2)) {
@@ -225,6 +258,12 @@ public class ItemImpl implements Item, StateMaps.Attributes, Persistable {
         return attributesAndPeers;
     }
 
+    private static List<Object> attributesAndPeers(Set<Object> attributes, Object[] defaultPeers) {
+        List<Object> attributesAndPeers = new ArrayList<>(attributes);
+        attributesAndPeers.addAll(Arrays.asList(defaultPeers));
+        return attributesAndPeers;
+    }
+
     @Override
     public void remove() {
         StateImpl state = state(value);
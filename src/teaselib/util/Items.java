@@ -18,9 +18,10 @@ import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import teaselib.core.state.AbstractProxy;
+import teaselib.core.util.AttributeSet;
 import teaselib.core.util.QualifiedItem;
-import teaselib.util.math.Combinations;
 import teaselib.util.math.Varieties;
+import teaselib.util.math.VarietySelector;
 
 /**
  * Represents a set of items to be used.
@@ -237,8 +238,9 @@ public class Items implements Iterable<Item> {
             matchingItems = new Items(this);
         } else {
             List<Item> matching = new ArrayList<>();
+            AttributeSet indexedAttributes = AttributeSet.of(attributes);
             for (Item item : elements) {
-                if (itemImpl(item).has(attributes)) {
+                if (itemImpl(item).has(indexedAttributes, attributes)) {
                     matching.add(item);
                 }
             }
@@ -290,18 +292,22 @@ public class Items implements Iterable<Item> {
     }
 
     private Items appliedOrPreferred(Object... attributes) {
-        Varieties<Items> varieties = varieties();
-        List<Items> applied = varieties.stream().filter(Items::anyApplied).collect(Collectors.toList());
-        if (applied.isEmpty()) {
-            return preferredItems(attributes);
+        Optional<List<Item>> applied = varietySelector().best(Item::applied, Item::isAvailable);
+        if (applied.isPresent()) {
+            return appliedItemsPlusRemainingPreferred(applied.get(), attributes);
         } else {
-            return appliedItemsPlusRemainingPreferred(applied, attributes);
+            return preferredItems(attributes);
         }
     }
 
-    private static Items appliedItemsPlusRemainingPreferred(List<Items> applied, Object... attributes) {
+    /**
+     * @param applied
+     *            The variety with the most available items, among those that contain applied items - the same as
+     *            reducing these varieties with {@link Items#best}.
+     */
+    private static Items appliedItemsPlusRemainingPreferred(List<Item> applied, Object... attributes) {
         // TODO select best set based on attributes of applied items as well as requested items
-        return applied.stream().reduce(Items::best).orElse(Items.None);
+        return new Items(applied);
     }
 
     private Items preferredItems(Object... attributes) {
@@ -343,24 +349,11 @@ public class Items implements Iterable<Item> {
      * @return
      */
     Varieties<Items> varieties() {
-        int variety = getVariety();
-        Combinations<Item[]> combinations = Combinations.combinationsK(variety, toArray());
-        return combinations.stream().map(Arrays::asList).filter(this::isVariety).map(Items::new)
-                .collect(Varieties.toVarieties());
+        return varietySelector().varieties().stream().map(Items::new).collect(Varieties.toVarieties());
     }
 
-    private boolean isVariety(List<Item> combination) {
-        return Varieties.isVariety(
-                combination.stream().map(QualifiedItem::of).map(QualifiedItem::toString).collect(Collectors.toList()));
-    }
-
-    private int getVariety() {
-        Set<String> types = new HashSet<>();
-        for (Item item : elements) {
-            types.add(QualifiedItem.of(item).toString());
-        }
-
-        return types.size();
+    private VarietySelector<Item> varietySelector() {
+        return new VarietySelector<>(elements, item -> QualifiedItem.of(item).toString());
     }
 
     public Item[] toArray() {
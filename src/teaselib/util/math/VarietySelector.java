@@ -0,0 +1,208 @@
+package teaselib.util.math;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+
+/**
+ * Selects varieties - sets that contain exactly one element of each kind - without enumerating all combinations of
+ * the elements.
+ * <p>
+ * Varieties are ordered like the matching combinations of {@link Combinations#combinationsK}, that is by the indices
+ * of their elements.
+ *
+ * @author Citizen-Cane
+ *
+ */
+public final class VarietySelector<T> {
+    private static final int Infeasible = Integer.MIN_VALUE;
+
+    private final List<T> elements;
+    private final int[] kinds;
+    private final int variety;
+    /**
+     * Index of the last element of each kind.
+     */
+    private final int[] last;
+
+    public VarietySelector(List<T> elements, Function<? super T, ?> kind) {
+        this.elements = elements;
+        this.kinds = new int[elements.size()];
+        Map<Object, Integer> kind2index = new HashMap<>();
+        for (int i = 0; i < kinds.length; i++) {
+            Object key = kind.apply(elements.get(i));
+            Integer index = kind2index.get(key);
+            if (index == null) {
+                index = kind2index.size();
+                kind2index.put(key, index);
+            }
+            kinds[i] = index;
+        }
+        this.variety = kind2index.size();
+        this.last = lastOfEachKind(i -> true);
+    }
+
+    /**
+     * @return The number of kinds.
+     */
+    public int variety() {
+        return variety;
+    }
+
+    private int[] lastOfEachKind(IntPredicate predicate) {
+        int[] lastOfEachKind = new int[variety];
+        Arrays.fill(lastOfEachKind, -1);
+        for (int i = 0; i < kinds.length; i++) {
+            if (predicate.test(i)) {
+                lastOfEachKind[kinds[i]] = i;
+            }
+        }
+        return lastOfEachKind;
+    }
+
+    /**
+     * @return All varieties. The time to produce each variety is linear in the number of elements, but the number of
+     *         varieties is the product of the number of elements of each kind.
+     */
+    public List<List<T>> varieties() {
+        List<List<T>> varieties = new ArrayList<>();
+        if (variety > 0) {
+            varieties(new int[variety], 0, -1, new boolean[variety], varieties);
+        }
+        return varieties;
+    }
+
+    private void varieties(int[] selected, int size, int previous, boolean[] used, List<List<T>> varieties) {
+        if (size == variety) {
+            varieties.add(elements(selected));
+        } else {
+            for (int i = previous + 1; i < kinds.length; i++) {
+                int kind = kinds[i];
+                if (!used[kind] && remainingKindsFollow(i, used)) {
+                    selected[size] = i;
+                    used[kind] = true;
+                    varieties(selected, size + 1, i, used, varieties);
+                    used[kind] = false;
+                }
+            }
+        }
+    }
+
+    private boolean remainingKindsFollow(int index, boolean[] used) {
+        for (int kind = 0; kind < variety; kind++) {
+            if (!used[kind] && kind != kinds[index] && last[kind] <= index) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Selects the variety with the most preferred elements among the varieties that contain at least one required
+     * element. Of multiple varieties with the same number of preferred elements, the first is selected.
+     * <p>
+     * The variety is built element by element in ascending order, by choosing the first element that still allows to
+     * complete a best variety. Whether a variety can be completed depends only on the last required, preferred and
+     * other element of each kind, so selecting takes O(n*k*k) time for n elements of k kinds.
+     *
+     * @return The first best variety, or {@link Optional#empty()} if no variety contains a required element.
+     */
+    public Optional<List<T>> best(Predicate<? super T> required, Predicate<? super T> preferred) {
+        if (variety == 0) {
+            return Optional.empty();
+        }
+
+        boolean[] isRequired = new boolean[kinds.length];
+        boolean[] isPreferred = new boolean[kinds.length];
+        for (int i = 0; i < kinds.length; i++) {
+            isRequired[i] = required.test(elements.get(i));
+            isPreferred[i] = preferred.test(elements.get(i));
+        }
+        Completion completion = new Completion(isRequired, isPreferred);
+
+        boolean[] used = new boolean[variety];
+        int best = completion.score(used, -1, false);
+        if (best == Infeasible) {
+            return Optional.empty();
+        }
+
+        int[] selected = new int[variety];
+        int score = 0;
+        boolean containsRequired = false;
+        int previous = -1;
+        for (int size = 0; size < variety; size++) {
+            for (int i = previous + 1;; i++) {
+                int kind = kinds[i];
+                if (!used[kind]) {
+                    int elementScore = isPreferred[i] ? 1 : 0;
+                    used[kind] = true;
+                    if (score + elementScore + completion.score(used, i, containsRequired || isRequired[i]) == best) {
+                        selected[size] = i;
+                        score += elementScore;
+                        containsRequired |= isRequired[i];
+                        previous = i;
+                        break;
+                    }
+                    used[kind] = false;
+                }
+            }
+        }
+        return Optional.of(elements(selected));
+    }
+
+    private final class Completion {
+        final int[] lastRequired;
+        final int[] lastPreferred;
+        final int[] lastRequiredAndPreferred;
+
+        Completion(boolean[] isRequired, boolean[] isPreferred) {
+            this.lastRequired = lastOfEachKind(i -> isRequired[i]);
+            this.lastPreferred = lastOfEachKind(i -> isPreferred[i]);
+            this.lastRequiredAndPreferred = lastOfEachKind(i -> isRequired[i] && isPreferred[i]);
+        }
+
+        /**
+         * @return The highest number of preferred elements that can be added by selecting an element with an index
+         *         greater than {@code previous} for each unused kind, or {@link VarietySelector#Infeasible}.
+         */
+        int score(boolean[] used, int previous, boolean containsRequired) {
+            int score = 0;
+            int leastLoss = Integer.MAX_VALUE;
+            for (int kind = 0; kind < variety; kind++) {
+                if (!used[kind]) {
+                    if (last[kind] <= previous) {
+                        return Infeasible;
+                    }
+                    int preferred = lastPreferred[kind] > previous ? 1 : 0;
+                    score += preferred;
+                    if (lastRequired[kind] > previous) {
+                        int requiredAndPreferred = lastRequiredAndPreferred[kind] > previous ? 1 : 0;
+                        leastLoss = Math.min(leastLoss, preferred - requiredAndPreferred);
+                    }
+                }
+            }
+
+            if (containsRequired) {
+                return score;
+            } else if (leastLoss == Integer.MAX_VALUE) {
+                return Infeasible;
+            } else {
+                return score - leastLoss;
+            }
+        }
+    }
+
+    private List<T> elements(int[] selected) {
+        List<T> variety = new ArrayList<>(selected.length);
+        for (int index : selected) {
+            variety.add(elements.get(index));
+        }
+        return variety;
+    }
+}